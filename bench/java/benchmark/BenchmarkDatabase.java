@@ -0,0 +1,246 @@
+// ==================== 20. BenchmarkDatabase.java ====================
+/**
+ * 效能測試用資料庫
+ * 建立記憶體內嵌Derby，執行 database/CourseDB.sql 建立資料表與測試資料，
+ * 再依參數放大到接近實際規模 (預設 5000 門課程、40000 位學生)，
+ * 並設定系統屬性讓 DatabaseManager 連到這個資料庫
+ */
+package benchmark;
+
+import entity.Student;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public final class BenchmarkDatabase {
+
+    // ============ 常數定義 ============
+    private static final String DB_NAME = "CourseBench";
+    private static final String DB_URL = "jdbc:derby:memory:" + DB_NAME;
+    private static final String SCRIPT_PATH = System.getProperty("bench.script", "database/CourseDB.sql");
+
+    static final String[] DEPARTMENTS = {
+        "資訊工程學系", "電機工程學系", "數學系", "通識教育中心", "體育室",
+        "機械工程學系", "化學系", "物理學系", "經濟學系", "外國語文學系"
+    };
+    private static final String[] TYPES = { "必修", "選修", "通識" };
+    private static final String[] SUBJECTS = {
+        "計算機", "資料結構", "演算法", "網頁", "軟體", "資料庫", "微積分", "線性代數",
+        "電路", "電子", "英文", "哲學", "心理", "體育", "物理", "化學", "經濟", "統計"
+    };
+    private static final String[] SUFFIXES = { "概論", "導論", "實務", "專題", "設計", "分析", "(一)", "(二)" };
+    private static final String[] SURNAMES = { "王", "李", "張", "陳", "林", "黃", "吳", "劉", "蔡", "楊" };
+    private static final String[] TITLES = { "教授", "副教授", "助理教授", "講師" };
+    private static final String[] WEEKDAYS = { "週一", "週二", "週三", "週四", "週五" };
+    private static final String[] SLOTS = { "8:10-10:00", "10:10-12:00", "13:10-15:00", "15:10-17:00" };
+
+    private static final int BATCH_SIZE = 1000;
+    private static final long SEED = 20240601L;
+
+    private static boolean created;
+
+    private BenchmarkDatabase() {
+    }
+
+    // ============ 建立資料庫 ============
+
+    /**
+     * 建立並放大測試資料庫 (同一個JVM只建立一次)
+     * 必須在第一次使用 DatabaseManager 之前呼叫
+     *
+     * @param courses 課程總數
+     * @param students 學生總數
+     * @param enrollmentsPerStudent 每位學生的選課數
+     * @throws SQLException 如果建立失敗
+     * @throws IOException 如果讀取SQL腳本失敗
+     */
+    public static synchronized void create(int courses, int students, int enrollmentsPerStudent)
+            throws SQLException, IOException {
+        if (created) {
+            return;
+        }
+        // 效能測試時不輸出每次操作的INFO日誌
+        Logger.getLogger("").setLevel(Level.WARNING);
+        for (Handler handler : Logger.getLogger("").getHandlers()) {
+            handler.setLevel(Level.WARNING);
+        }
+
+        System.setProperty("derby.stream.error.file", "build/bench/derby.log");
+        System.setProperty("coursedb.url", DB_URL);
+        System.setProperty("coursedb.auditLog.file", "build/bench/course_operations.log");
+        Files.createDirectories(Paths.get("build", "bench"));
+
+        try (Connection conn = DriverManager.getConnection(DB_URL + ";create=true", "app", "app")) {
+            runScript(conn, Paths.get(SCRIPT_PATH));
+            conn.setAutoCommit(false);
+            insertCourses(conn, courses);
+            insertStudents(conn, students);
+            insertEnrollments(conn, courses, students, enrollmentsPerStudent);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("UPDATE courses SET current_students = "
+                    + "(SELECT COUNT(*) FROM enrollments e WHERE e.course_id = courses.course_id "
+                    + "AND e.status = 'ENROLLED')");
+            }
+            conn.commit();
+        }
+        created = true;
+    }
+
+    /**
+     * 建立效能測試用的學生物件 (ID依序由1開始，密碼皆為123456)
+     * @param studentId 學生ID
+     * @return 學生物件
+     */
+    public static Student student(int studentId) {
+        Student student = new Student(studentCode(studentId), "測試學生" + studentId,
+                                      DEPARTMENTS[studentId % DEPARTMENTS.length], "123456");
+        student.setStudentId(studentId);
+        return student;
+    }
+
+    /**
+     * 學號：前5位沿用 CourseDB.sql 的測試資料，其餘依序編號
+     */
+    public static String studentCode(int studentId) {
+        return studentId <= 5 ? "4104300" + studentId : String.format("5%07d", studentId);
+    }
+
+    // ============ 私有輔助方法 ============
+
+    /**
+     * 執行SQL腳本中的DDL與INSERT (略過結尾的測試查詢)
+     */
+    private static void runScript(Connection conn, Path script) throws SQLException, IOException {
+        StringBuilder sql = new StringBuilder();
+        for (String line : Files.readAllLines(script, StandardCharsets.UTF_8)) {
+            int comment = line.indexOf("--");
+            String code = comment >= 0 ? line.substring(0, comment) : line;
+            sql.append(code).append('\n');
+        }
+        try (Statement stmt = conn.createStatement()) {
+            for (String statement : sql.toString().split(";")) {
+                String trimmed = statement.trim();
+                if (trimmed.isEmpty() || trimmed.toUpperCase().startsWith("SELECT")) {
+                    continue;
+                }
+                stmt.execute(trimmed);
+            }
+        }
+    }
+
+    private static void insertCourses(Connection conn, int total) throws SQLException {
+        String sql = "INSERT INTO courses (course_code, name, credits, department, type, teacher, "
+                   + "max_students, current_students, time_schedule, classroom) VALUES (?, ?, ?, ?, ?, ?, ?, 0, ?, ?)";
+        Random random = new Random(SEED);
+        int existing = count(conn, "courses");
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (int i = existing + 1; i <= total; i++) {
+                pstmt.setString(1, String.format("B%05d", i));
+                pstmt.setString(2, pick(random, SUBJECTS) + pick(random, SUFFIXES));
+                pstmt.setInt(3, 1 + random.nextInt(4));
+                pstmt.setString(4, pick(random, DEPARTMENTS));
+                pstmt.setString(5, pick(random, TYPES));
+                pstmt.setString(6, pick(random, SURNAMES) + pick(random, SURNAMES) + pick(random, TITLES));
+                pstmt.setInt(7, 40 + random.nextInt(81));
+                pstmt.setString(8, pick(random, WEEKDAYS) + " " + pick(random, SLOTS));
+                pstmt.setString(9, "R" + (100 + random.nextInt(500)));
+                pstmt.addBatch();
+                if (i % BATCH_SIZE == 0) {
+                    pstmt.executeBatch();
+                }
+            }
+            pstmt.executeBatch();
+        }
+        conn.commit();
+    }
+
+    private static void insertStudents(Connection conn, int total) throws SQLException {
+        String sql = "INSERT INTO students (student_code, name, department, password, total_credits) "
+                   + "VALUES (?, ?, ?, '123456', 0)";
+        int existing = count(conn, "students");
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (int i = existing + 1; i <= total; i++) {
+                pstmt.setString(1, studentCode(i));
+                pstmt.setString(2, "測試學生" + i);
+                pstmt.setString(3, DEPARTMENTS[i % DEPARTMENTS.length]);
+                pstmt.addBatch();
+                if (i % BATCH_SIZE == 0) {
+                    pstmt.executeBatch();
+                }
+            }
+            pstmt.executeBatch();
+        }
+        conn.commit();
+    }
+
+    /**
+     * 為放大的學生隨機選課 (不超過課程人數上限，課程ID沿用建立順序)
+     */
+    private static void insertEnrollments(Connection conn, int courses, int students, int perStudent)
+            throws SQLException {
+        List<Integer> remaining = new ArrayList<>(courses + 1);
+        remaining.add(0);
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(
+                 "SELECT course_id, max_students - current_students FROM courses ORDER BY course_id")) {
+            while (rs.next()) {
+                while (remaining.size() < rs.getInt(1)) {
+                    remaining.add(0);
+                }
+                remaining.add(rs.getInt(2));
+            }
+        }
+
+        String sql = "INSERT INTO enrollments (student_id, course_id, status) VALUES (?, ?, 'ENROLLED')";
+        Random random = new Random(SEED + 1);
+        int pending = 0;
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            // CourseDB.sql 的5位學生已有選課記錄，從第6位開始
+            for (int studentId = 6; studentId <= students; studentId++) {
+                List<Integer> chosen = new ArrayList<>(perStudent);
+                for (int attempt = 0; attempt < perStudent * 4 && chosen.size() < perStudent; attempt++) {
+                    int courseId = 1 + random.nextInt(remaining.size() - 1);
+                    if (remaining.get(courseId) <= 1 || chosen.contains(courseId)) {
+                        continue;
+                    }
+                    chosen.add(courseId);
+                    remaining.set(courseId, remaining.get(courseId) - 1);
+                    pstmt.setInt(1, studentId);
+                    pstmt.setInt(2, courseId);
+                    pstmt.addBatch();
+                    if (++pending % BATCH_SIZE == 0) {
+                        pstmt.executeBatch();
+                    }
+                }
+            }
+            pstmt.executeBatch();
+        }
+        conn.commit();
+    }
+
+    private static int count(Connection conn, String table) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
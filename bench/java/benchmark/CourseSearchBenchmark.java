@@ -0,0 +1,93 @@
+// ==================== 21. CourseSearchBenchmark.java ====================
+/**
+ * 課程查詢效能測試
+ * 比較 Course.matches 逐門比對與 CourseService 的搜尋、學系篩選、選課報告
+ */
+package benchmark;
+
+import entity.Course;
+import entity.Student;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import service.CourseService;
+
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(value = 1, jvmArgsAppend = "-Dcoursedb.admission.enabled=false")
+@State(Scope.Benchmark)
+public class CourseSearchBenchmark {
+
+    @Param({ "5000" })
+    public int courses;
+
+    @Param({ "40000" })
+    public int students;
+
+    @Param({ "資料", "B012", "陳" })
+    public String keyword;
+
+    private CourseService courseService;
+    private List<Course> allCourses;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        BenchmarkDatabase.create(courses, students, 5);
+        courseService = CourseService.getInstance();
+        allCourses = courseService.getAllCourses();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        CourseService.shutdownInstance();
+    }
+
+    // ============ 效能測試 ============
+
+    /**
+     * 基準：對整份課程清單逐門呼叫 Course.matches
+     */
+    @Benchmark
+    public int courseMatches() {
+        int count = 0;
+        for (Course course : allCourses) {
+            if (course.matches(keyword)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Benchmark
+    public List<Course> searchCourses() {
+        return courseService.searchCourses(keyword);
+    }
+
+    @Benchmark
+    public List<Course> getCoursesByDepartment() {
+        String department = BenchmarkDatabase.DEPARTMENTS[
+            ThreadLocalRandom.current().nextInt(BenchmarkDatabase.DEPARTMENTS.length)];
+        return courseService.getCoursesByDepartment(department);
+    }
+
+    @Benchmark
+    public String generateCourseReport() {
+        Student student = BenchmarkDatabase.student(1 + ThreadLocalRandom.current().nextInt(students));
+        return courseService.generateCourseReport(student);
+    }
+}
@@ -0,0 +1,127 @@
+// ==================== 22. EnrollmentBenchmark.java ====================
+/**
+ * 選課競爭效能測試
+ * 多個執行緒同時對少數熱門課程選課再退選，量測 CourseService 與 DatabaseManager 在競爭下的吞吐量與延遲
+ */
+package benchmark;
+
+import entity.Course;
+import entity.Student;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import service.CourseService;
+import service.DatabaseManager;
+
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(value = 1, jvmArgsAppend = "-Dcoursedb.admission.enabled=false")
+@Threads(16)
+public class EnrollmentBenchmark {
+
+    /**
+     * 所有執行緒共用的服務與熱門課程
+     */
+    @State(Scope.Benchmark)
+    public static class Shared {
+
+        @Param({ "5000" })
+        public int courses;
+
+        @Param({ "40000" })
+        public int students;
+
+        // 競爭的熱門課程數，越少競爭越激烈
+        @Param({ "4", "64" })
+        public int hotCourses;
+
+        CourseService courseService;
+        DatabaseManager dbManager;
+        final List<Course> hot = new ArrayList<>();
+        final AtomicInteger nextStudent = new AtomicInteger();
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            BenchmarkDatabase.create(courses, students, 5);
+            courseService = CourseService.getInstance();
+            dbManager = DatabaseManager.getInstance();
+
+            // 取餘額最多的課程，避免很快額滿後只量到拒絕路徑
+            List<Course> all = courseService.getAllCourses();
+            all.sort((a, b) -> Integer.compare(b.getAvailableSlots(), a.getAvailableSlots()));
+            hot.addAll(all.subList(0, Math.min(hotCourses, all.size())));
+            // 由最後一位學生往前分配，避開查詢效能測試常用的前段學生
+            nextStudent.set(students);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            CourseService.shutdownInstance();
+        }
+    }
+
+    /**
+     * 每個執行緒各自使用一位學生
+     */
+    @State(Scope.Thread)
+    public static class Caller {
+        Student student;
+
+        @Setup(Level.Trial)
+        public void setUp(Shared shared) {
+            student = BenchmarkDatabase.student(shared.nextStudent.getAndDecrement());
+        }
+    }
+
+    // ============ 效能測試 ============
+
+    /**
+     * 經由 CourseService 選課再退選 (含業務規則檢查與課程目錄更新)
+     */
+    @Benchmark
+    public String serviceEnrollAndDrop(Shared shared, Caller caller) {
+        // CourseService 會更新傳入課程的人數，每次使用複本避免執行緒共用同一物件
+        Course course = new Course(pickHot(shared));
+        String result = shared.courseService.enrollCourse(caller.student, course);
+        if (result.startsWith("選課成功")) {
+            return shared.courseService.dropCourse(caller.student, course);
+        }
+        return result;
+    }
+
+    /**
+     * 直接經由 DatabaseManager 選課再退選 (只有資料庫交易)
+     */
+    @Benchmark
+    public String databaseEnrollAndDrop(Shared shared, Caller caller) {
+        Course course = pickHot(shared);
+        int studentId = caller.student.getStudentId();
+        String result = shared.dbManager.enrollCourse(studentId, course.getCourseId());
+        if ("選課成功".equals(result)) {
+            return shared.dbManager.dropCourse(studentId, course.getCourseId());
+        }
+        return result;
+    }
+
+    private static Course pickHot(Shared shared) {
+        return shared.hot.get(ThreadLocalRandom.current().nextInt(shared.hot.size()));
+    }
+}
@@ -0,0 +1,291 @@
+// ==================== 23. RegistrationStampede.java ====================
+/**
+ * 開放選課尖峰壓力測試
+ * 模擬數千位學生在開放選課的同一時刻登入、搜尋並搶選熱門課程，
+ * 依 LoginController.login 與 CourseController.enrollCourse 的流程呼叫服務層，
+ * 結束後回報吞吐量、各操作的 p50/p99/p999 延遲、錯誤率與被准入控制擋下的次數，並檢查資料庫是否超收
+ *
+ * 執行：ant stampede -Dstampede.students=5000 -Dstampede.concurrency=1000
+ */
+package benchmark;
+
+import entity.Course;
+import entity.Student;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import service.AdmissionRejectedException;
+import service.CourseService;
+import service.DatabaseManager;
+
+public class RegistrationStampede {
+
+    // ============ 常數定義 ============
+
+    // 以下設定皆可用系統屬性覆寫
+    private static final int STUDENTS = Integer.getInteger("stampede.students", 5000);
+    private static final int CONCURRENCY = Integer.getInteger("stampede.concurrency", 1000);
+    private static final int COURSES_PER_STUDENT = Integer.getInteger("stampede.coursesPerStudent", 5);
+    private static final int HOT_COURSES = Integer.getInteger("stampede.hotCourses", 20);
+    private static final double HOT_RATIO = Double.parseDouble(System.getProperty("stampede.hotRatio", "0.8"));
+    // true：建立並放大內嵌Derby；false：使用 coursedb.url 指定的本機Derby (需已有足夠的學生資料)
+    private static final boolean EMBEDDED = Boolean.parseBoolean(System.getProperty("stampede.embedded", "true"));
+    private static final int DB_COURSES = Integer.getInteger("stampede.dbCourses", 5000);
+    private static final int DB_STUDENTS = Integer.getInteger("stampede.dbStudents", 40000);
+
+    private static final String[] KEYWORDS = { "資料", "程式", "微積分", "英文", "B01", "陳", "概論" };
+
+    // 選課結果分類：成功、業務規則拒絕 (額滿/已選/學分)、限流、系統錯誤
+    private static final String RESULT_SUCCESS = "選課成功";
+    private static final String RESULT_SYSTEM_ERROR = "系統錯誤";
+    private static final String RESULT_SHED = "請於";
+
+    private RegistrationStampede() {
+    }
+
+    // ============ 主程式 ============
+
+    public static void main(String[] args) throws Exception {
+        if (EMBEDDED) {
+            System.out.println("建立測試資料庫：" + DB_COURSES + " 門課程、" + DB_STUDENTS + " 位學生");
+            BenchmarkDatabase.create(DB_COURSES, DB_STUDENTS, 5);
+        }
+
+        CourseService courseService = CourseService.getInstance();
+        List<Course> catalog = courseService.getAllCourses();
+        List<Course> hot = new ArrayList<>(catalog);
+        // 熱門課程：剩餘名額少的課程，最容易發生超收
+        Collections.sort(hot, (a, b) -> Integer.compare(a.getAvailableSlots(), b.getAvailableSlots()));
+        hot = new ArrayList<>(hot.subList(0, Math.min(HOT_COURSES, hot.size())));
+        hot.removeIf(course -> !course.hasAvailableSlots());
+        if (hot.isEmpty()) {
+            hot.addAll(catalog.subList(0, Math.min(HOT_COURSES, catalog.size())));
+        }
+
+        Stats login = new Stats("登入");
+        Stats search = new Stats("搜尋");
+        Stats enroll = new Stats("選課");
+        AtomicLong enrollSuccess = new AtomicLong();
+        AtomicLong enrollRejected = new AtomicLong();
+
+        ExecutorService pool = Executors.newFixedThreadPool(CONCURRENCY);
+        // 執行緒數少於學生數時，只等第一波學生就緒
+        CountDownLatch ready = new CountDownLatch(Math.min(STUDENTS, CONCURRENCY));
+        CountDownLatch open = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(STUDENTS);
+        final List<Course> hotCourses = hot;
+
+        System.out.println(String.format("模擬 %d 位學生 (同時 %d 個連線)，每人選 %d 門，%d 門熱門課程",
+            STUDENTS, CONCURRENCY, COURSES_PER_STUDENT, hotCourses.size()));
+
+        for (int i = 0; i < STUDENTS; i++) {
+            // 跳過 CourseDB.sql 的5位示範學生
+            final int studentId = 6 + i;
+            pool.execute(() -> {
+                try {
+                    ready.countDown();
+                    open.await();
+                    runStudent(studentId, courseService, catalog, hotCourses,
+                               login, search, enroll, enrollSuccess, enrollRejected);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+
+        ready.await();
+        long start = System.nanoTime();
+        open.countDown();
+        done.await();
+        long elapsedNanos = System.nanoTime() - start;
+        pool.shutdown();
+
+        report(elapsedNanos, login, search, enroll, enrollSuccess.get(), enrollRejected.get());
+        checkOverbooking();
+
+        CourseService.shutdownInstance();
+        DatabaseManager.getInstance().shutdown();
+        System.exit(0);
+    }
+
+    // ============ 模擬單一學生 ============
+
+    /**
+     * 依控制器的流程：登入 → 搜尋 → 逐門選課
+     */
+    private static void runStudent(int studentId, CourseService courseService,
+                                   List<Course> catalog, List<Course> hot,
+                                   Stats login, Stats search, Stats enroll,
+                                   AtomicLong enrollSuccess, AtomicLong enrollRejected) {
+        Random random = new Random(studentId);
+
+        // 登入 (LoginController.login：格式檢查後驗證帳密)
+        String studentCode = BenchmarkDatabase.studentCode(studentId);
+        long t0 = System.nanoTime();
+        Student student = null;
+        boolean loginError = false;
+        try {
+            if (studentCode.matches("\\d{8}")) {
+                student = DatabaseManager.getInstance().authenticateStudent(studentCode, "123456");
+            }
+            loginError = student == null;
+        } catch (RuntimeException e) {
+            loginError = true;
+        }
+        login.record(System.nanoTime() - t0, loginError, false);
+        if (student == null) {
+            return;
+        }
+
+        // 搜尋 (CourseController.searchCourses)
+        t0 = System.nanoTime();
+        boolean searchError = false;
+        boolean searchShed = false;
+        try {
+            courseService.searchCourses(KEYWORDS[random.nextInt(KEYWORDS.length)]);
+        } catch (AdmissionRejectedException e) {
+            searchShed = true;
+        } catch (RuntimeException e) {
+            searchError = true;
+        }
+        search.record(System.nanoTime() - t0, searchError, searchShed);
+
+        // 選課 (CourseController.enrollCourse，每次使用畫面上的課程複本)
+        for (int i = 0; i < COURSES_PER_STUDENT; i++) {
+            List<Course> source = random.nextDouble() < HOT_RATIO ? hot : catalog;
+            Course course = new Course(source.get(random.nextInt(source.size())));
+
+            t0 = System.nanoTime();
+            String result;
+            try {
+                result = courseService.enrollCourse(student, course);
+            } catch (RuntimeException e) {
+                result = RESULT_SYSTEM_ERROR;
+            }
+            boolean error = result.contains(RESULT_SYSTEM_ERROR);
+            boolean shed = result.contains(RESULT_SHED);
+            enroll.record(System.nanoTime() - t0, error, shed);
+
+            if (RESULT_SUCCESS.equals(result)) {
+                enrollSuccess.incrementAndGet();
+            } else if (!error && !shed) {
+                enrollRejected.incrementAndGet();
+            }
+        }
+    }
+
+    // ============ 結果報告 ============
+
+    private static void report(long elapsedNanos, Stats login, Stats search, Stats enroll,
+                               long enrollSuccess, long enrollRejected) {
+        double seconds = elapsedNanos / 1e9;
+        long totalOps = login.count() + search.count() + enroll.count();
+
+        System.out.println();
+        System.out.println("==================== 壓力測試結果 ====================");
+        System.out.println(String.format("總時間：%.2f 秒，總操作：%d，吞吐量：%.1f ops/s",
+            seconds, totalOps, totalOps / seconds));
+        System.out.println(String.format("%-6s %8s %8s %8s %8s %10s %10s %10s %10s",
+            "操作", "次數", "錯誤", "錯誤率", "限流", "p50(ms)", "p99(ms)", "p999(ms)", "max(ms)"));
+        for (Stats stats : Arrays.asList(login, search, enroll)) {
+            System.out.println(stats.summary());
+        }
+        System.out.println(String.format("選課成功：%d，規則拒絕 (額滿/已選/學分)：%d", enrollSuccess, enrollRejected));
+    }
+
+    /**
+     * 檢查超收：選課人數超過上限，或記錄的人數與實際選課記錄不符
+     */
+    private static void checkOverbooking() throws SQLException {
+        String sql = "SELECT c.course_code, c.max_students, c.current_students, COUNT(e.enrollment_id) "
+                   + "FROM courses c LEFT JOIN enrollments e "
+                   + "ON c.course_id = e.course_id AND e.status = 'ENROLLED' "
+                   + "GROUP BY c.course_id, c.course_code, c.max_students, c.current_students";
+        int overbooked = 0;
+        int mismatched = 0;
+        try (Connection conn = DatabaseManager.getInstance().getConnectionProvider().getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                int max = rs.getInt(2);
+                int recorded = rs.getInt(3);
+                int actual = rs.getInt(4);
+                if (actual > max || recorded > max) {
+                    overbooked++;
+                    System.out.println(String.format("  超收：%s 上限 %d，記錄 %d，實際 %d",
+                        rs.getString(1), max, recorded, actual));
+                }
+                if (recorded != actual) {
+                    mismatched++;
+                }
+            }
+        }
+        System.out.println(String.format("超收課程：%d，人數與選課記錄不符：%d", overbooked, mismatched));
+    }
+
+    // ============ 延遲統計 ============
+
+    /**
+     * 單一操作的延遲樣本 (結束後排序求百分位數)
+     */
+    private static final class Stats {
+        private final String name;
+        private final List<Long> samples = Collections.synchronizedList(new ArrayList<>());
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong shed = new AtomicLong();
+
+        Stats(String name) {
+            this.name = name;
+        }
+
+        void record(long nanos, boolean error, boolean rejected) {
+            samples.add(nanos);
+            if (error) {
+                errors.incrementAndGet();
+            }
+            if (rejected) {
+                shed.incrementAndGet();
+            }
+        }
+
+        long count() {
+            return samples.size();
+        }
+
+        String summary() {
+            long[] sorted;
+            synchronized (samples) {
+                sorted = new long[samples.size()];
+                for (int i = 0; i < sorted.length; i++) {
+                    sorted[i] = samples.get(i);
+                }
+            }
+            Arrays.sort(sorted);
+            double errorRate = sorted.length > 0 ? 100.0 * errors.get() / sorted.length : 0;
+            return String.format("%-6s %8d %8d %7.2f%% %8d %10.2f %10.2f %10.2f %10.2f",
+                name, sorted.length, errors.get(), errorRate, shed.get(),
+                percentile(sorted, 0.50), percentile(sorted, 0.99),
+                percentile(sorted, 0.999), percentile(sorted, 1.0));
+        }
+
+        private static double percentile(long[] sorted, double p) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(p * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+        }
+    }
+}
@@ -67,17 +67,51 @@ CREATE INDEX idx_enrollments_student ON enrollments(student_id);
 CREATE INDEX idx_enrollments_course ON enrollments(course_id);
 CREATE INDEX idx_enrollments_status ON enrollments(status);
 
+-- 4. 先修課程表 (修 course_id 之前必須先修畢 prerequisite_id)
+CREATE TABLE prerequisites (
+    course_id INTEGER NOT NULL,
+    prerequisite_id INTEGER NOT NULL,
+    
+    PRIMARY KEY (course_id, prerequisite_id),
+    FOREIGN KEY (course_id) REFERENCES courses(course_id) ON DELETE CASCADE,
+    FOREIGN KEY (prerequisite_id) REFERENCES courses(course_id) ON DELETE CASCADE,
+    CONSTRAINT chk_not_self CHECK (course_id <> prerequisite_id)
+);
+
+-- 5. 已修課程表 (以前學期修畢的課程)
+CREATE TABLE completed_courses (
+    student_id INTEGER NOT NULL,
+    course_id INTEGER NOT NULL,
+    completed_at DATE DEFAULT CURRENT_DATE,
+    
+    PRIMARY KEY (student_id, course_id),
+    FOREIGN KEY (student_id) REFERENCES students(student_id) ON DELETE CASCADE,
+    FOREIGN KEY (course_id) REFERENCES courses(course_id) ON DELETE CASCADE
+);
+
+-- 6. 候補名單 (課程額滿時加入，依 waitlist_id 先後順序遞補)
+CREATE TABLE waitlist (
+    waitlist_id INTEGER NOT NULL GENERATED ALWAYS AS IDENTITY (START WITH 1, INCREMENT BY 1),
+    course_id INTEGER NOT NULL,
+    student_id INTEGER NOT NULL,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    
+    PRIMARY KEY (waitlist_id),
+    FOREIGN KEY (course_id) REFERENCES courses(course_id) ON DELETE CASCADE,
+    FOREIGN KEY (student_id) REFERENCES students(student_id) ON DELETE CASCADE,
+    CONSTRAINT uk_waitlist UNIQUE (course_id, student_id)
+);
+
+CREATE INDEX idx_waitlist_course ON waitlist(course_id, waitlist_id);
+
 -- ==================== 觸發器建立 (Derby版本) ====================
 
 -- Derby 的觸發器語法與 MySQL 不同
--- 選課時自動更新課程人數
-CREATE TRIGGER tr_enrollment_insert
-    AFTER INSERT ON enrollments
-    REFERENCING NEW AS newrow
-    FOR EACH ROW
-    UPDATE courses 
-    SET current_students = current_students + 1
-    WHERE course_id = newrow.course_id AND newrow.status = 'ENROLLED';
+-- 選課人數的增加由應用程式以條件式 UPDATE 原子性地檢查名額並佔位
+-- (UPDATE courses SET current_students = current_students + 1
+--  WHERE course_id = ? AND current_students < max_students)，
+-- 因此不再使用 INSERT 觸發器，避免重複計數。
+-- 既有資料庫請執行：DROP TRIGGER tr_enrollment_insert;
 
 -- 退選時自動更新課程人數  
 CREATE TRIGGER tr_enrollment_update
@@ -171,6 +205,24 @@ INSERT INTO enrollments (student_id, course_id, status) VALUES
 (5, 11, 'ENROLLED'), -- 英文(一)
 (5, 15, 'ENROLLED'); -- 體育(一)
 
+-- 插入先修課程測試資料
+INSERT INTO prerequisites (course_id, prerequisite_id) VALUES
+(2, 1),   -- 資料結構與演算法 ← 計算機概論
+(4, 2),   -- 軟體工程 ← 資料結構與演算法
+(5, 2),   -- 資料庫系統 ← 資料結構與演算法
+(7, 6),   -- 微積分(二) ← 微積分(一)
+(8, 6),   -- 線性代數 ← 微積分(一)
+(10, 9);  -- 電子學 ← 電路學(一)
+
+-- 插入已修課程測試資料
+INSERT INTO completed_courses (student_id, course_id) VALUES
+(1, 6),   -- 王小明：微積分(一)
+(3, 6),   -- 張小美：微積分(一)
+(3, 9),   -- 張小美：電路學(一)
+(4, 6),   -- 陳小強：微積分(一)
+(5, 1),   -- 林小雅：計算機概論
+(5, 2);   -- 林小雅：資料結構與演算法
+
 -- ==================== 檢視建立 (Derby版本) ====================
 
 -- 學生選課狀況檢視
@@ -0,0 +1,47 @@
+// ==================== 24. ApplicationLifecycleListener.java ====================
+/**
+ * 應用程式生命週期監聽器
+ * 應用程式啟動時將效能統計註冊到JMX；
+ * 應用程式卸載時依序關閉共用的服務：CourseService (執行緒池、座位帳本、操作日誌) 與資料庫連接池，
+ * 避免重新部署後舊的執行緒與連接仍留在伺服器中
+ */
+package controller;
+
+import service.CourseService;
+import service.DatabaseManager;
+import service.OperationMetrics;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+import java.util.logging.Logger;
+
+@WebListener
+public class ApplicationLifecycleListener implements ServletContextListener {
+    
+    // ============ 屬性定義 ============
+    private static final Logger LOGGER = Logger.getLogger(ApplicationLifecycleListener.class.getName());
+    
+    // ============ 生命週期方法 ============
+    
+    /**
+     * 應用程式啟動
+     * @param event 事件
+     */
+    @Override
+    public void contextInitialized(ServletContextEvent event) {
+        OperationMetrics.getInstance().registerMBean();
+        LOGGER.info("選課系統啟動");
+    }
+    
+    /**
+     * 應用程式卸載：移除JMX註冊，先停止服務層，最後關閉資料庫連接池
+     * @param event 事件
+     */
+    @Override
+    public void contextDestroyed(ServletContextEvent event) {
+        OperationMetrics.getInstance().unregisterMBean();
+        CourseService.shutdownInstance();
+        DatabaseManager.getInstance().shutdown();
+        LOGGER.info("選課系統已關閉");
+    }
+}
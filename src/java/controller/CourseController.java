@@ -7,7 +7,13 @@ package controller;
 
 import entity.Student;
 import entity.Course;
+import entity.CourseSet;
+import entity.WeeklySlots;
+import service.AdmissionRejectedException;
+import service.CourseFilter;
+import service.CoursePage;
 import service.CourseService;
+import javax.annotation.PreDestroy;
 import javax.faces.bean.ManagedBean;
 import javax.faces.bean.ViewScoped;
 import javax.faces.application.FacesMessage;
@@ -16,9 +22,9 @@ import javax.servlet.http.HttpSession;
 import javax.servlet.http.HttpServletResponse;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.concurrent.Future;
 import java.io.Serializable;
 import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
@@ -29,12 +35,15 @@ public class CourseController implements Serializable {
     // ============ 屬性定義 ============
     private static final Logger LOGGER = Logger.getLogger(CourseController.class.getName());
     
-    // 服務物件
-    private CourseService courseService;
+    // 課程列表每頁顯示的課程數 (可用系統屬性覆寫)
+    private static final int PAGE_SIZE = Integer.getInteger("coursedb.page.size", 24);
+    
+    // 服務物件 (整個應用程式共用，不隨畫面序列化)
+    private transient CourseService courseService;
     
     // 頁面資料
-    private List<Course> allCourses;         // 所有課程
-    private List<Course> filteredCourses;    // 篩選後的課程
+    private CoursePage coursePage;           // 目前顯示的一頁課程
+    private CourseFilter activeFilter;       // 目前這一頁所用的篩選條件 (翻頁時沿用)
     private List<Course> myCourses;          // 我的選課
     private Course selectedCourse;           // 目前選中的課程
     
@@ -42,6 +51,9 @@ public class CourseController implements Serializable {
     private String searchKeyword;            // 搜尋關鍵字
     private String selectedDepartment;       // 選中的系所
     private String selectedType;             // 選中的課程類型
+    private boolean availableOnly;           // 只顯示還有名額的課程
+    private Integer minCredits;              // 最少學分
+    private Integer maxCredits;              // 最多學分
     
     // ============ 建構子和初始化 ============
     
@@ -49,9 +61,9 @@ public class CourseController implements Serializable {
      * 建構子
      */
     public CourseController() {
-        courseService = new CourseService();
-        allCourses = new ArrayList<>();
-        filteredCourses = new ArrayList<>();
+        courseService = CourseService.getInstance();
+        coursePage = CoursePage.empty();
+        activeFilter = new CourseFilter();
         myCourses = new ArrayList<>();
         selectedCourse = new Course();
         
@@ -63,14 +75,13 @@ public class CourseController implements Serializable {
     // ============ 頁面操作方法 ============
     
     /**
-     * 載入所有課程
+     * 以目前的篩選條件重新載入課程列表第一頁 (不載入整份課程目錄)
      */
     public void loadCourses() {
         try {
-            allCourses = courseService.getAllCourses();
-            filteredCourses = new ArrayList<>(allCourses);
+            firstPage();
             
-            LOGGER.info("成功載入 " + allCourses.size() + " 門課程");
+            LOGGER.fine("載入課程列表第一頁，共 " + coursePage.getTotalCount() + " 門課程");
             
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "載入課程失敗", e);
@@ -80,25 +91,15 @@ public class CourseController implements Serializable {
     
     /**
      * 搜尋課程 (支援即時搜尋)
+     * 關鍵字、系所、類型、名額與學分範圍一起交給資料庫，以一個查詢篩選後分頁顯示
      */
     public void searchCourses() {
         try {
-            if (searchKeyword == null || searchKeyword.trim().isEmpty()) {
-                // 如果搜尋關鍵字為空，顯示所有課程
-                filteredCourses = new ArrayList<>(allCourses);
-            } else {
-                // 使用非同步搜尋
-                Future<List<Course>> searchFuture = courseService.searchCoursesAsync(searchKeyword.trim());
-                filteredCourses = searchFuture.get();  // 等待搜尋結果
-            }
-            
-            // 如果有系所篩選，進一步篩選
-            if (selectedDepartment != null && !selectedDepartment.isEmpty()) {
-                filterByDepartment();
+            activeFilter = new CourseFilter(searchKeyword, selectedDepartment, selectedType,
+                                            availableOnly, minCredits, maxCredits);
+            if (showPage(null, true)) {
+                addInfoMessage("搜尋到 " + coursePage.getTotalCount() + " 門課程");
             }
-            
-            addInfoMessage("搜尋到 " + filteredCourses.size() + " 門課程");
-            
         } catch (Exception e) {
             LOGGER.log(Level.WARNING, "搜尋課程失敗", e);
             addErrorMessage("搜尋失敗，請稍後再試");
@@ -112,19 +113,46 @@ public class CourseController implements Serializable {
         searchKeyword = "";
         selectedDepartment = "";
         selectedType = "";
-        filteredCourses = new ArrayList<>(allCourses);
+        availableOnly = false;
+        minCredits = null;
+        maxCredits = null;
+        activeFilter = new CourseFilter();
+        firstPage();
         
         addInfoMessage("已清除搜尋條件");
     }
     
+    // ============ 分頁方法 ============
+    
     /**
-     * 依系所篩選
+     * 顯示第一頁
      */
-    public void filterByDepartment() {
-        if (selectedDepartment == null || selectedDepartment.isEmpty()) {
-            filteredCourses = new ArrayList<>(allCourses);
-        } else {
-            filteredCourses = courseService.getCoursesByDepartment(selectedDepartment);
+    public void firstPage() {
+        showPage(null, true);
+    }
+    
+    /**
+     * 顯示最後一頁
+     */
+    public void lastPage() {
+        showPage(null, false);
+    }
+    
+    /**
+     * 顯示下一頁 (以目前這一頁最後一門課程的代碼為鍵值)
+     */
+    public void nextPage() {
+        if (coursePage.hasNext()) {
+            showPage(coursePage.getLastCode(), true);
+        }
+    }
+    
+    /**
+     * 顯示上一頁 (以目前這一頁第一門課程的代碼為鍵值)
+     */
+    public void previousPage() {
+        if (coursePage.hasPrevious()) {
+            showPage(coursePage.getFirstCode(), false);
         }
     }
     
@@ -149,12 +177,18 @@ public class CourseController implements Serializable {
             if ("選課成功".equals(result)) {
                 addSuccessMessage("選課成功：" + course.getName());
                 
-                // 重新載入資料
-                loadCourses();
-                loadMyCourses();
+                // 只更新這門課的人數與我的選課，保留目前的搜尋與篩選
+                applyEnrollmentChange(currentStudent, course, true);
                 
             } else {
-                addErrorMessage(result);
+                // 保存已載入的時段與已修課程，下次選課不必重新查詢
+                updateStudentSession(currentStudent);
+                if (courseService.getWaitlistPosition(currentStudent, course) > 0) {
+                    // 已加入 (或已在) 候補名單：不是錯誤，以資訊訊息顯示順位
+                    addInfoMessage(result);
+                } else {
+                    addErrorMessage(result);
+                }
             }
             
         } catch (Exception e) {
@@ -182,11 +216,11 @@ public class CourseController implements Serializable {
             if ("退選成功".equals(result)) {
                 addSuccessMessage("退選成功：" + course.getName());
                 
-                // 重新載入資料
-                loadCourses();
-                loadMyCourses();
+                // 只更新這門課的人數與我的選課，保留目前的搜尋與篩選
+                applyEnrollmentChange(currentStudent, course, false);
                 
             } else {
+                updateStudentSession(currentStudent);
                 addErrorMessage(result);
             }
             
@@ -229,6 +263,28 @@ public class CourseController implements Serializable {
         return false;
     }
     
+    /**
+     * 取得目前學生在課程候補名單中的順位
+     * @param course 課程物件
+     * @return 順位 (由1開始)，不在候補名單中時返回0
+     */
+    public int waitlistPosition(Course course) {
+        return courseService.getWaitlistPosition(getCurrentStudent(), course);
+    }
+    
+    /**
+     * 取消候補
+     * @param course 課程物件
+     */
+    public void leaveWaitlist(Course course) {
+        String result = courseService.leaveWaitlist(getCurrentStudent(), course);
+        if ("已取消候補".equals(result)) {
+            addSuccessMessage("已取消候補：" + course.getName());
+        } else {
+            addErrorMessage(result);
+        }
+    }
+    
     /**
      * 計算已選學分總數
      * @return 已選學分數
@@ -276,32 +332,14 @@ public class CourseController implements Serializable {
             response.setHeader("Content-Disposition", "attachment; filename=\"" + fileName + "\"");
             response.setCharacterEncoding("UTF-8");
             
-            // 產生CSV內容
-            StringBuilder csvContent = new StringBuilder();
-            csvContent.append('\uFEFF');  // BOM for Excel
-            csvContent.append("課程代碼,課程名稱,學分數,開課系所,課程類型,授課教師,上課時間,教室\n");
-            
-            for (Course course : myCourses) {
-                csvContent.append(String.format("\"%s\",\"%s\",%d,\"%s\",\"%s\",\"%s\",\"%s\",\"%s\"\n",
-                    course.getCourseCode(),
-                    course.getName(),
-                    course.getCredits(),
-                    course.getDepartment(),
-                    course.getType(),
-                    course.getTeacher(),
-                    course.getTimeSchedule() != null ? course.getTimeSchedule() : "",
-                    course.getClassroom() != null ? course.getClassroom() : ""
-                ));
-            }
-            
-            // 寫入回應
-            response.getWriter().write(csvContent.toString());
-            response.getWriter().flush();
+            // 由資料庫游標直接寫到回應串流
+            long rows = courseService.exportStudentCoursesToCSV(currentStudent, response.getOutputStream());
+            response.flushBuffer();
             
             // 完成回應
             context.responseComplete();
             
-            LOGGER.info("學生 " + currentStudent.getStudentCode() + " 匯出選課記錄");
+            LOGGER.info("學生 " + currentStudent.getStudentCode() + " 匯出選課記錄 " + rows + " 筆");
             
         } catch (IOException e) {
             LOGGER.log(Level.SEVERE, "匯出CSV失敗", e);
@@ -311,6 +349,82 @@ public class CourseController implements Serializable {
     
     // ============ 輔助方法 ============
     
+    /**
+     * 選課或退選成功後，以操作結果就地更新畫面資料，不重新查詢整份課程與選課記錄
+     * @param student 目前的學生 (學分已由CourseService更新)
+     * @param course 選課或退選的課程
+     * @param enrolled true 為選課，false 為退選
+     */
+    private void applyEnrollmentChange(Student student, Course course, boolean enrolled) {
+        int courseId = course.getCourseId();
+        
+        // 以課程目錄中的最新人數為準 (已包含這次的異動)
+        Course latest = courseService.getCourse(courseId);
+        int currentStudents = latest != null ? latest.getCurrentStudents() : course.getCurrentStudents();
+        
+        patchSeats(coursePage.getCourses(), courseId, currentStudents);
+        patchSeats(myCourses, courseId, currentStudents);
+        
+        if (enrolled) {
+            if (!isAlreadyEnrolled(course)) {
+                myCourses.add(latest != null ? latest : new Course(course));
+            }
+        } else {
+            myCourses.removeIf(myCourse -> myCourse.getCourseId() == courseId);
+        }
+        
+        updateStudentSession(student);
+    }
+    
+    /**
+     * 更新列表中指定課程的選課人數
+     */
+    private static void patchSeats(List<Course> courses, int courseId, int currentStudents) {
+        if (courses == null) {
+            return;
+        }
+        for (Course course : courses) {
+            if (course.getCourseId() == courseId) {
+                course.setCurrentStudents(currentStudents);
+            }
+        }
+    }
+    
+    /**
+     * 以目前的篩選條件依鍵值查詢一頁課程
+     * 鍵值之後 (或之前) 已經沒有課程時 (例如課程剛停開)，改顯示最後一頁 (或第一頁)
+     * @return 是否成功取得 (關鍵字搜尋被限流時保留目前這一頁)
+     */
+    private boolean showPage(String keyCode, boolean forward) {
+        try {
+            Object requesterKey = searchRequesterKey();
+            CoursePage page = courseService.findCourses(requesterKey, activeFilter, keyCode, forward, PAGE_SIZE);
+            if (page.isEmpty() && keyCode != null) {
+                page = courseService.findCourses(requesterKey, activeFilter, null, !forward, PAGE_SIZE);
+            }
+            coursePage = page;
+            return true;
+        } catch (AdmissionRejectedException e) {
+            // 超出流量限制：訊息已包含建議的重試秒數
+            addErrorMessage(e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * 搜尋的呼叫者識別 (限流用)：已登入時為學生ID，與選課、退選共用同一個個人令牌桶；
+     * 未登入時以Session區分
+     * @return 學生ID或Session ID，沒有Session時返回null
+     */
+    private Object searchRequesterKey() {
+        HttpSession session = (HttpSession) FacesContext.getCurrentInstance().getExternalContext().getSession(false);
+        if (session == null) {
+            return null;
+        }
+        Object studentId = session.getAttribute("studentId");
+        return session.getAttribute("isLoggedIn") != null && studentId != null ? studentId : session.getId();
+    }
+    
     /**
      * 取得目前登入的學生
      * @return 學生物件，如果未登入則返回null
@@ -326,6 +440,8 @@ public class CourseController implements Serializable {
             student.setName((String) session.getAttribute("studentName"));
             student.setDepartment((String) session.getAttribute("department"));
             student.setTotalCredits((Integer) session.getAttribute("totalCredits"));
+            student.setOccupiedSlots((WeeklySlots) session.getAttribute("occupiedSlots"));
+            student.setCompletedCourses((CourseSet) session.getAttribute("completedCourses"));
             return student;
         }
         
@@ -342,6 +458,8 @@ public class CourseController implements Serializable {
         
         if (session != null) {
             session.setAttribute("totalCredits", student.getTotalCredits());
+            session.setAttribute("occupiedSlots", student.getOccupiedSlots());
+            session.setAttribute("completedCourses", student.getCompletedCourses());
         }
     }
     
@@ -376,20 +494,8 @@ public class CourseController implements Serializable {
     
     // ============ Getter 和 Setter 方法 ============
     
-    public List<Course> getAllCourses() {
-        return allCourses;
-    }
-    
-    public void setAllCourses(List<Course> allCourses) {
-        this.allCourses = allCourses;
-    }
-    
-    public List<Course> getFilteredCourses() {
-        return filteredCourses;
-    }
-    
-    public void setFilteredCourses(List<Course> filteredCourses) {
-        this.filteredCourses = filteredCourses;
+    public CoursePage getCoursePage() {
+        return coursePage;
     }
     
     public List<Course> getMyCourses() {
@@ -432,15 +538,46 @@ public class CourseController implements Serializable {
         this.selectedType = selectedType;
     }
     
+    public boolean isAvailableOnly() {
+        return availableOnly;
+    }
+    
+    public void setAvailableOnly(boolean availableOnly) {
+        this.availableOnly = availableOnly;
+    }
+    
+    public Integer getMinCredits() {
+        return minCredits;
+    }
+    
+    public void setMinCredits(Integer minCredits) {
+        this.minCredits = minCredits;
+    }
+    
+    public Integer getMaxCredits() {
+        return maxCredits;
+    }
+    
+    public void setMaxCredits(Integer maxCredits) {
+        this.maxCredits = maxCredits;
+    }
+    
     // ============ JSF生命週期方法 ============
     
     /**
-     * 銷毀時清理資源
+     * 畫面結束時呼叫
+     * CourseService 由整個應用程式共用，於應用程式卸載時才關閉
      */
+    @PreDestroy
     public void destroy() {
-        if (courseService != null) {
-            courseService.shutdown();
-        }
-        LOGGER.info("CourseController 資源清理完成");
+        LOGGER.fine("CourseController 畫面結束");
+    }
+    
+    /**
+     * 畫面狀態還原後重新取得共用的服務物件
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        courseService = CourseService.getInstance();
     }
 }
\ No newline at end of file
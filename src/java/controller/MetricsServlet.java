@@ -0,0 +1,70 @@
+// ==================== 37. MetricsServlet.java ====================
+/**
+ * 效能統計文字端點 (管理用)
+ * 以純文字輸出 OperationMetrics 的各操作次數、錯誤數、p50/p99/max 延遲，
+ * 以及執行緒池與連接池的即時數值，可直接給 Prometheus 或 curl 讀取
+ *
+ * 需以系統屬性 coursedb.metrics.token 設定存取權杖才會啟用，
+ * 呼叫時以 X-Metrics-Token 標頭 (或 token 參數) 帶入：
+ *   GET /metrics
+ */
+package controller;
+
+import service.OperationMetrics;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.logging.Logger;
+
+@WebServlet(name = "MetricsServlet", urlPatterns = {"/metrics"})
+public class MetricsServlet extends HttpServlet {
+    
+    private static final long serialVersionUID = 1L;
+    
+    // ============ 屬性定義 ============
+    private static final Logger LOGGER = Logger.getLogger(MetricsServlet.class.getName());
+    
+    private static final String METRICS_TOKEN = System.getProperty("coursedb.metrics.token");
+    
+    // ============ 請求處理 ============
+    
+    /**
+     * 輸出目前的效能統計
+     * @param request 請求
+     * @param response 回應
+     */
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (METRICS_TOKEN == null || METRICS_TOKEN.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        if (!isAuthorized(request)) {
+            LOGGER.warning("效能統計權杖錯誤，來源：" + request.getRemoteAddr());
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+        
+        response.setContentType("text/plain; version=0.0.4; charset=UTF-8");
+        response.setHeader("Cache-Control", "no-store");
+        response.getOutputStream().write(OperationMetrics.getInstance().getText().getBytes(StandardCharsets.UTF_8));
+    }
+    
+    // ============ 私有輔助方法 ============
+    
+    /**
+     * 比對存取權杖 (固定時間比較)
+     */
+    private boolean isAuthorized(HttpServletRequest request) {
+        String token = request.getHeader("X-Metrics-Token");
+        if (token == null) {
+            token = request.getParameter("token");
+        }
+        return token != null && MessageDigest.isEqual(
+            token.getBytes(StandardCharsets.UTF_8), METRICS_TOKEN.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,93 @@
+// ==================== 25. RosterExportServlet.java ====================
+/**
+ * 選課名單匯出Servlet (管理用)
+ * 依學生系所或課程代碼匯出 student_course_view，
+ * 由資料庫游標逐列寫到回應串流，數十萬列也只佔用固定的記憶體
+ *
+ * 需以系統屬性 coursedb.export.token 設定存取權杖才會啟用，
+ * 呼叫時以 X-Export-Token 標頭 (或 token 參數) 帶入：
+ *   GET /export/roster?department=資訊工程學系
+ *   GET /export/roster?course=CS101
+ */
+package controller;
+
+import service.CourseService;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+@WebServlet(name = "RosterExportServlet", urlPatterns = {"/export/roster"})
+public class RosterExportServlet extends HttpServlet {
+    
+    private static final long serialVersionUID = 1L;
+    
+    // ============ 屬性定義 ============
+    private static final Logger LOGGER = Logger.getLogger(RosterExportServlet.class.getName());
+    
+    private static final String EXPORT_TOKEN = System.getProperty("coursedb.export.token");
+    
+    // ============ 請求處理 ============
+    
+    /**
+     * 匯出選課名單CSV
+     * @param request 請求 (參數 department、course 皆可省略)
+     * @param response 回應
+     */
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (EXPORT_TOKEN == null || EXPORT_TOKEN.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        if (!isAuthorized(request)) {
+            LOGGER.warning("選課名單匯出權杖錯誤，來源：" + request.getRemoteAddr());
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+        
+        String department = request.getParameter("department");
+        String courseCode = request.getParameter("course");
+        
+        String fileName = "選課名單"
+            + (department != null && !department.isEmpty() ? "_" + department : "")
+            + (courseCode != null && !courseCode.isEmpty() ? "_" + courseCode : "") + ".csv";
+        response.setContentType("text/csv; charset=UTF-8");
+        response.setHeader("Content-Disposition", "attachment; filename*=UTF-8''"
+            + URLEncoder.encode(fileName, "UTF-8").replace("+", "%20"));
+        
+        try {
+            CourseService.getInstance().exportRosterToCSV(department, courseCode, response.getOutputStream());
+            response.flushBuffer();
+        } catch (IOException e) {
+            // 已開始寫出時無法再改變狀態碼，只能中斷連線
+            LOGGER.log(Level.SEVERE, "匯出選課名單失敗", e);
+            if (!response.isCommitted()) {
+                response.reset();
+                response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            } else {
+                throw e;
+            }
+        }
+    }
+    
+    // ============ 私有輔助方法 ============
+    
+    /**
+     * 比對存取權杖 (固定時間比較)
+     */
+    private boolean isAuthorized(HttpServletRequest request) {
+        String token = request.getHeader("X-Export-Token");
+        if (token == null) {
+            token = request.getParameter("token");
+        }
+        return token != null && MessageDigest.isEqual(
+            token.getBytes(StandardCharsets.UTF_8), EXPORT_TOKEN.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -22,6 +22,7 @@ public class Course implements Serializable {
     private int maxStudents;        // 最大選課人數
     private int currentStudents;    // 目前選課人數
     private String timeSchedule;    // 上課時間
+    private WeeklySlots timeSlots = WeeklySlots.EMPTY;  // 上課時間解析後的時段遮罩
     private String classroom;       // 教室
     
     // ============ 建構子 ============
@@ -54,6 +55,25 @@ public class Course implements Serializable {
         this.teacher = teacher;
     }
     
+    /**
+     * 複製建構子
+     * @param other 要複製的課程
+     */
+    public Course(Course other) {
+        this.courseId = other.courseId;
+        this.courseCode = other.courseCode;
+        this.name = other.name;
+        this.credits = other.credits;
+        this.department = other.department;
+        this.type = other.type;
+        this.teacher = other.teacher;
+        this.maxStudents = other.maxStudents;
+        this.currentStudents = other.currentStudents;
+        this.timeSchedule = other.timeSchedule;
+        this.timeSlots = other.timeSlots;
+        this.classroom = other.classroom;
+    }
+    
     // ============ 業務方法 ============
     
     /**
@@ -151,7 +171,12 @@ public class Course implements Serializable {
     public void setCurrentStudents(int currentStudents) { this.currentStudents = currentStudents; }
     
     public String getTimeSchedule() { return timeSchedule; }
-    public void setTimeSchedule(String timeSchedule) { this.timeSchedule = timeSchedule; }
+    public void setTimeSchedule(String timeSchedule) {
+        this.timeSchedule = timeSchedule;
+        this.timeSlots = WeeklySlots.parse(timeSchedule);
+    }
+    
+    public WeeklySlots getTimeSlots() { return timeSlots; }
     
     public String getClassroom() { return classroom; }
     public void setClassroom(String classroom) { this.classroom = classroom; }
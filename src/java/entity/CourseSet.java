@@ -0,0 +1,158 @@
+// ==================== 29. CourseSet.java ====================
+/**
+ * 課程ID集合 (不可變的位元集合)
+ * 第 N 個位元代表 course_id = N，用於先修課程與已修課程的比對，
+ * 「是否修畢所有先修課程」只需逐字做一次 AND NOT 運算
+ */
+package entity;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+
+public final class CourseSet implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** 空集合 */
+    public static final CourseSet EMPTY = new CourseSet(new long[0]);
+
+    private final long[] words;
+
+    private CourseSet(long[] words) {
+        this.words = words;
+    }
+
+    // ============ 建立方法 ============
+
+    /**
+     * 由課程ID建立集合
+     * @param courseIds 課程ID (小於0的ID會被略過)
+     * @return 課程集合
+     */
+    public static CourseSet of(Collection<Integer> courseIds) {
+        int max = -1;
+        for (int courseId : courseIds) {
+            max = Math.max(max, courseId);
+        }
+        if (max < 0) {
+            return EMPTY;
+        }
+        long[] words = new long[(max >>> 6) + 1];
+        for (int courseId : courseIds) {
+            if (courseId >= 0) {
+                words[courseId >>> 6] |= 1L << (courseId & 63);
+            }
+        }
+        return new CourseSet(words);
+    }
+
+    // ============ 集合運算 ============
+
+    /**
+     * 是否包含某門課程
+     * @param courseId 課程ID
+     * @return 包含時返回true
+     */
+    public boolean contains(int courseId) {
+        int index = courseId >>> 6;
+        return courseId >= 0 && index < words.length && (words[index] & (1L << (courseId & 63))) != 0;
+    }
+
+    /**
+     * 是否包含另一個集合的所有課程 (子集合檢查)
+     * @param other 另一個集合
+     * @return other 是本集合的子集合時返回true
+     */
+    public boolean containsAll(CourseSet other) {
+        long[] theirs = other.words;
+        for (int i = 0; i < theirs.length; i++) {
+            long mine = i < words.length ? words[i] : 0L;
+            if ((theirs[i] & ~mine) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 聯集
+     * @param other 另一個集合
+     * @return 新的集合
+     */
+    public CourseSet union(CourseSet other) {
+        long[] longer = words.length >= other.words.length ? words : other.words;
+        long[] shorter = longer == words ? other.words : words;
+        long[] result = longer.clone();
+        for (int i = 0; i < shorter.length; i++) {
+            result[i] |= shorter[i];
+        }
+        return new CourseSet(result);
+    }
+
+    /**
+     * 差集 (本集合有、另一個集合沒有的課程)
+     * @param other 另一個集合
+     * @return 新的集合
+     */
+    public CourseSet minus(CourseSet other) {
+        long[] result = words.clone();
+        for (int i = 0; i < result.length && i < other.words.length; i++) {
+            result[i] &= ~other.words[i];
+        }
+        return new CourseSet(result);
+    }
+
+    /**
+     * 依序取得所有課程ID
+     * @return 課程ID陣列 (由小到大)
+     */
+    public int[] toArray() {
+        int[] ids = new int[size()];
+        int n = 0;
+        for (int i = 0; i < words.length; i++) {
+            long word = words[i];
+            while (word != 0) {
+                ids[n++] = (i << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return ids;
+    }
+
+    public int size() {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    public boolean isEmpty() {
+        for (long word : words) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ============ 覆寫方法 ============
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof CourseSet)) return false;
+        return Arrays.equals(toArray(), ((CourseSet) obj).toArray());
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(toArray());
+    }
+
+    @Override
+    public String toString() {
+        return "CourseSet" + Arrays.toString(toArray());
+    }
+}
@@ -17,6 +17,8 @@ public class Student implements Serializable {
     private String department;      // 系所
     private String password;        // 密碼
     private int totalCredits;       // 已選學分
+    private WeeklySlots occupiedSlots;  // 已選課程佔用的時段 (null表示尚未計算)
+    private CourseSet completedCourses; // 已修畢的課程 (null表示尚未載入)
     
     // ============ 建構子 ============
     
@@ -99,6 +101,12 @@ public class Student implements Serializable {
     public int getTotalCredits() { return totalCredits; }
     public void setTotalCredits(int totalCredits) { this.totalCredits = totalCredits; }
     
+    public WeeklySlots getOccupiedSlots() { return occupiedSlots; }
+    public void setOccupiedSlots(WeeklySlots occupiedSlots) { this.occupiedSlots = occupiedSlots; }
+    
+    public CourseSet getCompletedCourses() { return completedCourses; }
+    public void setCompletedCourses(CourseSet completedCourses) { this.completedCourses = completedCourses; }
+    
     // ============ 覆寫方法 ============
     
     @Override
@@ -0,0 +1,131 @@
+// ==================== 28. WeeklySlots.java ====================
+/**
+ * 每週上課時段位元遮罩
+ * 一週7天、每天24節 (以整點為一節，8:10-10:00 佔第8、9節)，共168個位元存放在3個long；
+ * 課程的上課時間只在設定時解析一次，衝堂檢查只需要一次AND運算
+ */
+package entity;
+
+import java.io.Serializable;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public final class WeeklySlots implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // ============ 常數定義 ============
+    public static final int DAYS = 7;
+    public static final int PERIODS_PER_DAY = 24;
+
+    /** 沒有任何上課時段 */
+    public static final WeeklySlots EMPTY = new WeeklySlots(0L, 0L, 0L);
+
+    // 例如「週二 8:10-10:00」，星期可寫成 週二 或 星期二
+    private static final Pattern SEGMENT = Pattern.compile(
+        "(?:週|星期)([一二三四五六日天])\\s*(\\d{1,2}):(\\d{2})\\s*[-~～－]\\s*(\\d{1,2}):(\\d{2})");
+    private static final String WEEKDAYS = "一二三四五六日";
+
+    // 第 (星期 * 24 + 節) 個位元；星期一為0
+    private final long low;
+    private final long middle;
+    private final long high;
+
+    private WeeklySlots(long low, long middle, long high) {
+        this.low = low;
+        this.middle = middle;
+        this.high = high;
+    }
+
+    // ============ 建立方法 ============
+
+    /**
+     * 解析上課時間文字，例如「週二 8:10-10:00, 週四 8:10-10:00」
+     * 無法辨識的片段會被略過 (不參與衝堂檢查)
+     *
+     * @param schedule 上課時間
+     * @return 時段遮罩，沒有可辨識的時段時返回 EMPTY
+     */
+    public static WeeklySlots parse(String schedule) {
+        if (schedule == null || schedule.isEmpty()) {
+            return EMPTY;
+        }
+        long[] words = new long[3];
+        Matcher matcher = SEGMENT.matcher(schedule);
+        while (matcher.find()) {
+            int day = WEEKDAYS.indexOf(matcher.group(1).replace('天', '日'));
+            int start = Integer.parseInt(matcher.group(2)) * 60 + Integer.parseInt(matcher.group(3));
+            int end = Integer.parseInt(matcher.group(4)) * 60 + Integer.parseInt(matcher.group(5));
+            if (end <= start || end > PERIODS_PER_DAY * 60) {
+                continue;
+            }
+            // 與時段有任何重疊的整點節次都算佔用
+            for (int period = start / 60; period * 60 < end; period++) {
+                int bit = day * PERIODS_PER_DAY + period;
+                words[bit >>> 6] |= 1L << (bit & 63);
+            }
+        }
+        if ((words[0] | words[1] | words[2]) == 0) {
+            return EMPTY;
+        }
+        return new WeeklySlots(words[0], words[1], words[2]);
+    }
+
+    // ============ 集合運算 ============
+
+    /**
+     * 是否與另一組時段重疊 (衝堂)
+     * @param other 另一組時段
+     * @return 有任何共同節次時返回true
+     */
+    public boolean intersects(WeeklySlots other) {
+        return ((low & other.low) | (middle & other.middle) | (high & other.high)) != 0;
+    }
+
+    /**
+     * 聯集
+     * @param other 另一組時段
+     * @return 新的時段遮罩
+     */
+    public WeeklySlots union(WeeklySlots other) {
+        return new WeeklySlots(low | other.low, middle | other.middle, high | other.high);
+    }
+
+    /**
+     * 是否沒有任何時段
+     * @return 沒有時段時返回true
+     */
+    public boolean isEmpty() {
+        return (low | middle | high) == 0;
+    }
+
+    // ============ 覆寫方法 ============
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof WeeklySlots)) return false;
+        WeeklySlots other = (WeeklySlots) obj;
+        return low == other.low && middle == other.middle && high == other.high;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(low) * 961 + Long.hashCode(middle) * 31 + Long.hashCode(high);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("WeeklySlots{");
+        for (int day = 0; day < DAYS; day++) {
+            for (int period = 0; period < PERIODS_PER_DAY; period++) {
+                int bit = day * PERIODS_PER_DAY + period;
+                long word = bit < 64 ? low : bit < 128 ? middle : high;
+                if ((word & (1L << (bit & 63))) != 0) {
+                    text.append('週').append(WEEKDAYS.charAt(day)).append(period).append(' ');
+                }
+            }
+        }
+        return text.toString().trim() + "}";
+    }
+}
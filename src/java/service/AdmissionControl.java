@@ -0,0 +1,289 @@
+// ==================== 34. AdmissionControl.java ====================
+/**
+ * 准入控制 (令牌桶限流)
+ * 在選課、退選與搜尋進入資料庫之前，依操作類型檢查整體流量與每位學生的流量；
+ * 超出時立即回覆「請於 N 秒後再試」，讓過載時的請求不會在連接池前堆積
+ */
+package service;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+public class AdmissionControl {
+
+    // ============ 常數定義 ============
+    private static final Logger LOGGER = Logger.getLogger(AdmissionControl.class.getName());
+
+    private static final boolean ENABLED = Boolean.parseBoolean(
+        System.getProperty("coursedb.admission.enabled", "true"));
+
+    // 每位學生的速率與突發量，選課、退選與搜尋共用 (以學生ID區分，未登入的搜尋以Session區分)
+    private static final double STUDENT_RATE = doubleProperty("coursedb.admission.student.rate", 5);
+    private static final int STUDENT_BURST = Integer.getInteger("coursedb.admission.student.burst", 20);
+
+    // 每處理這麼多次請求清理一次已經補滿的個人令牌桶
+    private static final int SWEEP_INTERVAL = 10000;
+
+    /**
+     * 受限流保護的操作
+     */
+    public enum Operation {
+        ENROLL("選課", 200, 400),
+        DROP("退選", 100, 200),
+        SEARCH("搜尋", 500, 1000);
+
+        private final String label;
+        private final double defaultRate;
+        private final int defaultBurst;
+
+        Operation(String label, double defaultRate, int defaultBurst) {
+            this.label = label;
+            this.defaultRate = defaultRate;
+            this.defaultBurst = defaultBurst;
+        }
+
+        public String getLabel() { return label; }
+
+        private String propertyPrefix() {
+            return "coursedb.admission." + name().toLowerCase() + ".";
+        }
+    }
+
+    // ============ 單例模式實作 ============
+    private static AdmissionControl instance;
+
+    private final Map<Operation, TokenBucket> globalBuckets = new EnumMap<>(Operation.class);
+    private final ConcurrentHashMap<Object, TokenBucket> studentBuckets = new ConcurrentHashMap<>();
+
+    // 統計：通過 / 整體限流拒絕 / 個人限流拒絕
+    private final Map<Operation, LongAdder[]> counters = new EnumMap<>(Operation.class);
+    private final AtomicLong requests = new AtomicLong();
+
+    /**
+     * 私有建構子 - 依系統屬性建立各操作的整體令牌桶
+     */
+    private AdmissionControl() {
+        long now = System.nanoTime();
+        for (Operation op : Operation.values()) {
+            double rate = doubleProperty(op.propertyPrefix() + "globalRate", op.defaultRate);
+            int burst = Integer.getInteger(op.propertyPrefix() + "globalBurst", op.defaultBurst);
+            globalBuckets.put(op, new TokenBucket(rate, burst, now));
+            counters.put(op, new LongAdder[] { new LongAdder(), new LongAdder(), new LongAdder() });
+        }
+        LOGGER.info(ENABLED ? "准入控制已啟用：" + describeLimits() : "准入控制已停用");
+    }
+
+    /**
+     * 取得AdmissionControl的唯一實例
+     * @return AdmissionControl實例
+     */
+    public static synchronized AdmissionControl getInstance() {
+        if (instance == null) {
+            instance = new AdmissionControl();
+        }
+        return instance;
+    }
+
+    // ============ 准入檢查 ============
+
+    /**
+     * 嘗試取得執行權
+     * 先檢查個人流量 (擋下重複狂按的使用者)，再檢查整體流量；
+     * 整體流量不足時退回個人令牌，不讓學生因為系統忙碌而被多扣額度
+     *
+     * @param op 操作類型
+     * @param studentKey 學生識別 (已登入時一律為學生ID，未登入的搜尋為Session ID)，null 表示只檢查整體流量
+     * @return null 表示通過，否則為顯示給使用者的拒絕訊息
+     */
+    public String tryAdmit(Operation op, Object studentKey) {
+        AdmissionRejectedException rejection = check(op, studentKey);
+        return rejection != null ? rejection.getMessage() : null;
+    }
+
+    /**
+     * 與 tryAdmit 相同，但以例外表示拒絕 (用於回傳課程列表的操作)
+     * @param op 操作類型
+     * @param studentKey 學生識別，可為null
+     * @throws AdmissionRejectedException 超出流量限制
+     */
+    public void admitOrThrow(Operation op, Object studentKey) {
+        AdmissionRejectedException rejection = check(op, studentKey);
+        if (rejection != null) {
+            throw rejection;
+        }
+    }
+
+    private AdmissionRejectedException check(Operation op, Object studentKey) {
+        if (!ENABLED) {
+            return null;
+        }
+        long now = System.nanoTime();
+        LongAdder[] counter = counters.get(op);
+        sweepIfDue(now);
+
+        TokenBucket personal = null;
+        if (studentKey != null) {
+            personal = studentBuckets.computeIfAbsent(studentKey,
+                key -> new TokenBucket(STUDENT_RATE, STUDENT_BURST, now));
+            long wait = personal.tryAcquire(now);
+            if (wait > 0) {
+                counter[2].increment();
+                int seconds = toSeconds(wait);
+                return new AdmissionRejectedException("操作過於頻繁，請於 " + seconds + " 秒後再試", seconds);
+            }
+        }
+
+        long wait = globalBuckets.get(op).tryAcquire(now);
+        if (wait > 0) {
+            if (personal != null) {
+                personal.refund();
+            }
+            counter[1].increment();
+            int seconds = toSeconds(wait);
+            return new AdmissionRejectedException("系統忙碌中，" + op.getLabel() + "請於 " + seconds + " 秒後再試", seconds);
+        }
+
+        counter[0].increment();
+        return null;
+    }
+
+    // ============ 統計 ============
+
+    /**
+     * 取得各操作被拒絕的次數
+     * @return 操作 → {整體限流拒絕, 個人限流拒絕}
+     */
+    public Map<Operation, long[]> getRejectionCounts() {
+        Map<Operation, long[]> result = new EnumMap<>(Operation.class);
+        for (Map.Entry<Operation, LongAdder[]> entry : counters.entrySet()) {
+            result.put(entry.getKey(), new long[] { entry.getValue()[1].sum(), entry.getValue()[2].sum() });
+        }
+        return result;
+    }
+
+    /**
+     * 取得准入控制狀態 (用於監控)
+     * @return 狀態描述
+     */
+    public String getStatus() {
+        if (!ENABLED) {
+            return "准入控制已停用";
+        }
+        StringBuilder status = new StringBuilder("准入控制 (");
+        for (Operation op : Operation.values()) {
+            LongAdder[] counter = counters.get(op);
+            status.append(String.format("%s: 通過 %d, 整體限流 %d, 個人限流 %d; ",
+                op.getLabel(), counter[0].sum(), counter[1].sum(), counter[2].sum()));
+        }
+        status.append("追蹤中的學生: ").append(studentBuckets.size()).append(')');
+        return status.toString();
+    }
+
+    // ============ 內部方法 ============
+
+    /**
+     * 定期移除已經補滿的個人令牌桶 (補滿的桶與新建的桶沒有差別)
+     */
+    private void sweepIfDue(long now) {
+        if (requests.incrementAndGet() % SWEEP_INTERVAL != 0) {
+            return;
+        }
+        int before = studentBuckets.size();
+        studentBuckets.values().removeIf(bucket -> bucket.isFull(now));
+        LOGGER.fine("清理個人令牌桶：" + before + " → " + studentBuckets.size());
+    }
+
+    private String describeLimits() {
+        StringBuilder limits = new StringBuilder();
+        for (Operation op : Operation.values()) {
+            TokenBucket bucket = globalBuckets.get(op);
+            limits.append(String.format("%s %.0f/秒 (突發 %d)，", op.getLabel(), bucket.ratePerSecond, bucket.capacity));
+        }
+        limits.append(String.format("每位學生 %.1f/秒 (突發 %d)", STUDENT_RATE, STUDENT_BURST));
+        return limits.toString();
+    }
+
+    private static int toSeconds(long nanos) {
+        long seconds = (nanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1);
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, seconds));
+    }
+
+    /**
+     * 讀取速率設定 (每秒令牌數)，不是正數時使用預設值
+     */
+    private static double doubleProperty(String name, double defaultValue) {
+        String value = System.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            double rate = Double.parseDouble(value);
+            if (rate > 0) {
+                return rate;
+            }
+            LOGGER.warning("系統屬性 " + name + " 必須大於0，使用預設值 " + defaultValue);
+        } catch (NumberFormatException e) {
+            LOGGER.warning("系統屬性 " + name + " 不是數字，使用預設值 " + defaultValue);
+        }
+        return defaultValue;
+    }
+
+    // ============ 內部類別 ============
+
+    /**
+     * 令牌桶：以固定速率補充令牌，最多累積 capacity 個
+     */
+    private static final class TokenBucket {
+        final double ratePerSecond;
+        final int capacity;
+        private final double tokensPerNano;
+        private double tokens;        // 目前令牌數 (this 保護)
+        private long lastRefill;      // 上次補充的時間 (this 保護)
+
+        TokenBucket(double ratePerSecond, int capacity, long now) {
+            this.ratePerSecond = ratePerSecond;
+            this.capacity = Math.max(1, capacity);
+            this.tokensPerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.tokens = this.capacity;
+            this.lastRefill = now;
+        }
+
+        /**
+         * 取一個令牌
+         * @return 0 表示取得，否則為下一個令牌還需要等待的奈秒數
+         */
+        synchronized long tryAcquire(long now) {
+            refill(now);
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return waitNanos();
+        }
+
+        synchronized void refund() {
+            tokens = Math.min(capacity, tokens + 1);
+        }
+
+        synchronized boolean isFull(long now) {
+            refill(now);
+            return tokens >= capacity;
+        }
+
+        private void refill(long now) {
+            if (now > lastRefill) {
+                tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+                lastRefill = now;
+            }
+        }
+
+        private long waitNanos() {
+            return tokensPerNano > 0 ? (long) Math.ceil((1 - tokens) / tokensPerNano) : Long.MAX_VALUE / 2;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+// ==================== 33. AdmissionRejectedException.java ====================
+/**
+ * 准入控制拒絕例外
+ * 搜尋等以回傳值表示結果的操作被限流時丟出，訊息可直接顯示給使用者
+ */
+package service;
+
+public class AdmissionRejectedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int retryAfterSeconds;  // 建議的重試等待秒數
+
+    /**
+     * 建構子
+     * @param message 顯示給使用者的訊息
+     * @param retryAfterSeconds 建議的重試等待秒數
+     */
+    public AdmissionRejectedException(String message, int retryAfterSeconds) {
+        // 過載時會大量產生，不需要堆疊追蹤
+        super(message, null, false, false);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public int getRetryAfterSeconds() { return retryAfterSeconds; }
+}
@@ -0,0 +1,339 @@
+// ==================== 19. AuditLogWriter.java ====================
+/**
+ * 選課操作日誌寫入器 (course_operations.log，整個應用程式共用)
+ * 請求執行緒只把日誌放入有界佇列，由背景執行緒批次寫入同一個檔案通道；
+ * 檔案超過大小上限或跨日時輪替，關閉服務時寫出所有尚未寫入的日誌
+ */
+package service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class AuditLogWriter {
+
+    // ============ 常數定義 ============
+    private static final Logger LOGGER = Logger.getLogger(AuditLogWriter.class.getName());
+
+    // 以下設定皆可用系統屬性覆寫
+    private static final String LOG_PATH = System.getProperty("coursedb.auditLog.file", "course_operations.log");
+    private static final int QUEUE_CAPACITY = Integer.getInteger("coursedb.auditLog.queueCapacity", 10000);
+    private static final long MAX_FILE_BYTES = Long.getLong("coursedb.auditLog.maxBytes", 10L * 1024 * 1024);
+    private static final int MAX_HISTORY = Integer.getInteger("coursedb.auditLog.maxHistory", 30);
+    private static final long FLUSH_INTERVAL_MILLIS = Long.getLong("coursedb.auditLog.flushIntervalMillis", 1000L);
+    private static final int WRITE_BATCH_SIZE = 512;       // 每次寫入檔案的最大筆數
+
+    // DateTimeFormatter 為不可變物件，可由背景執行緒重複使用
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    // 喚醒背景執行緒用的空項目
+    private static final Entry WAKE_UP = new Entry(0, "");
+
+    // ============ 單例模式實作 ============
+    private static AuditLogWriter instance;
+
+    private final File logFile;
+    private final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread writer;
+    private final Thread shutdownHook;
+    private volatile boolean running = true;
+
+    // 以下只由背景執行緒存取
+    private FileChannel channel;
+    private long fileSize;
+    private LocalDate fileDate;
+    private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+    // 統計：已排入、已寫入、因佇列滿而捨棄
+    private final AtomicLong enqueuedCount = new AtomicLong();
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong rotationCount = new AtomicLong();
+
+    /**
+     * 私有建構子
+     */
+    private AuditLogWriter(File logFile) {
+        this.logFile = logFile;
+        this.writer = new Thread(this::writeLoop, "audit-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+
+        // JVM結束時的保險；應用程式卸載時會先正常關閉並移除此hook
+        this.shutdownHook = new Thread(this::close, "audit-log-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * 取得AuditLogWriter的唯一實例
+     * @return AuditLogWriter實例
+     */
+    public static synchronized AuditLogWriter getInstance() {
+        // 關閉後再次取得時重新建立 (例如應用程式重新部署)
+        if (instance == null || !instance.running) {
+            instance = new AuditLogWriter(new File(LOG_PATH));
+        }
+        return instance;
+    }
+
+    // ============ 寫入方法 ============
+
+    /**
+     * 記錄一筆操作日誌 (不會阻塞呼叫端)
+     * 佇列已滿時捨棄並計數，避免磁碟變慢拖累選課請求
+     *
+     * @param message 日誌內容 (不含時間)
+     * @return 是否成功排入佇列
+     */
+    public boolean log(String message) {
+        if (!running || !queue.offer(new Entry(System.currentTimeMillis(), message))) {
+            long dropped = droppedCount.incrementAndGet();
+            if (dropped == 1 || dropped % 1000 == 0) {
+                LOGGER.warning("操作日誌佇列已滿或已關閉，累計捨棄 " + dropped + " 筆");
+            }
+            return false;
+        }
+        enqueuedCount.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * 等待目前已排入的日誌全部寫入檔案
+     * @param timeoutMillis 最長等待時間 (毫秒)
+     * @return 是否在時限內寫完
+     */
+    public boolean flush(long timeoutMillis) {
+        long target = enqueuedCount.get();
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        queue.offer(WAKE_UP);
+        synchronized (this) {
+            while (writtenCount.get() < target) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0 || !writer.isAlive()) {
+                    return false;
+                }
+                try {
+                    wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    // ============ 背景寫入 ============
+
+    /**
+     * 批次取出日誌，組成一個緩衝區後一次寫入檔案通道
+     */
+    private void writeLoop() {
+        List<Entry> batch = new ArrayList<>(WRITE_BATCH_SIZE);
+        while (running || !queue.isEmpty()) {
+            try {
+                Entry first = queue.poll(FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, WRITE_BATCH_SIZE - 1);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                // 關閉時中斷等待，迴圈條件決定是否繼續清空佇列
+                running = false;
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "寫入操作日誌失敗，捨棄 " + batch.size() + " 筆", e);
+                closeChannel();
+            } finally {
+                int written = 0;
+                for (Entry entry : batch) {
+                    if (entry != WAKE_UP) {
+                        written++;
+                    }
+                }
+                batch.clear();
+                if (written > 0) {
+                    writtenCount.addAndGet(written);
+                }
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+        closeChannel();
+    }
+
+    private void writeBatch(List<Entry> batch) throws IOException {
+        for (Entry entry : batch) {
+            if (entry == WAKE_UP) {
+                continue;
+            }
+            LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(entry.time), ZONE);
+            rotateIfNeeded(time.toLocalDate());
+
+            byte[] line = ("[" + TIME_FORMAT.format(time) + "] " + entry.message + System.lineSeparator())
+                          .getBytes(StandardCharsets.UTF_8);
+            if (line.length > buffer.remaining()) {
+                drainBuffer();
+            }
+            if (line.length > buffer.capacity()) {
+                channel.write(ByteBuffer.wrap(line));
+            } else {
+                buffer.put(line);
+            }
+            fileSize += line.length;
+        }
+        drainBuffer();
+    }
+
+    private void drainBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * 跨日或超過大小上限時，將目前檔案改名為 course_operations.log.yyyy-MM-dd[.n]
+     */
+    private void rotateIfNeeded(LocalDate date) throws IOException {
+        if (channel == null) {
+            openChannel(date);
+        }
+        if (date.equals(fileDate) && fileSize < MAX_FILE_BYTES) {
+            return;
+        }
+        drainBuffer();
+        closeChannel();
+
+        File rotated = new File(logFile.getPath() + "." + fileDate);
+        for (int i = 1; rotated.exists(); i++) {
+            rotated = new File(logFile.getPath() + "." + fileDate + "." + i);
+        }
+        if (logFile.exists()) {
+            Files.move(logFile.toPath(), rotated.toPath());
+            rotationCount.incrementAndGet();
+            LOGGER.info("操作日誌已輪替：" + rotated.getName());
+        }
+
+        deleteOldHistory();
+        openChannel(date);
+    }
+
+    private void openChannel(LocalDate date) throws IOException {
+        channel = FileChannel.open(logFile.toPath(),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        fileSize = channel.size();
+        // 沿用既有檔案時以最後修改日期判斷是否需要輪替
+        fileDate = fileSize > 0
+            ? LocalDate.ofInstant(Instant.ofEpochMilli(logFile.lastModified()), ZONE)
+            : date;
+    }
+
+    private void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.force(false);
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "關閉操作日誌失敗", e);
+        }
+        channel = null;
+        buffer.clear();
+    }
+
+    /**
+     * 只保留最近 MAX_HISTORY 個輪替檔案
+     */
+    private void deleteOldHistory() {
+        File dir = logFile.getAbsoluteFile().getParentFile();
+        String prefix = logFile.getName() + ".";
+        File[] history = dir != null ? dir.listFiles((d, name) -> name.startsWith(prefix)) : null;
+        if (history == null || history.length <= MAX_HISTORY) {
+            return;
+        }
+        Arrays.sort(history, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (int i = 0; i < history.length - MAX_HISTORY; i++) {
+            if (!history[i].delete()) {
+                LOGGER.warning("無法刪除舊的操作日誌：" + history[i].getName());
+            }
+        }
+    }
+
+    // ============ 資源管理方法 ============
+
+    /**
+     * 停止接受日誌，寫出佇列中剩餘的日誌後關閉檔案
+     */
+    public void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // JVM正在結束 (本方法即由shutdown hook呼叫)
+        }
+        // 不中斷背景執行緒：寫入中的FileChannel被中斷會直接關閉，改以空項目喚醒
+        queue.offer(WAKE_UP);
+        try {
+            writer.join(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        LOGGER.info("操作日誌已關閉，" + getStatus());
+    }
+
+    /**
+     * 取得日誌寫入器狀態 (用於監控)
+     * @return 狀態描述
+     */
+    public String getStatus() {
+        return String.format("待寫入: %d, 已寫入: %d, 捨棄: %d, 輪替: %d",
+            queue.size(), writtenCount.get(), droppedCount.get(), rotationCount.get());
+    }
+
+    public int getPendingCount() { return queue.size(); }
+    public long getWrittenCount() { return writtenCount.get(); }
+    public long getDroppedCount() { return droppedCount.get(); }
+    public long getRotationCount() { return rotationCount.get(); }
+
+    // ============ 內部類別 ============
+
+    /**
+     * 一筆日誌 (時間於請求執行緒記錄，格式化由背景執行緒處理)
+     */
+    private static final class Entry {
+        final long time;
+        final String message;
+
+        Entry(long time, String message) {
+            this.time = time;
+            this.message = message;
+        }
+    }
+}
@@ -0,0 +1,461 @@
+// ==================== 27. BulkImporter.java ====================
+/**
+ * 大量匯入課程、學生與選課記錄 (每學期開課與轉學生選課)
+ * 以串流方式逐筆解析CSV，使用 PreparedStatement.addBatch 批次寫入並定期提交；
+ * 某一批失敗時回到該批開頭改為逐筆寫入，只略過有問題的資料列並記錄原因；
+ * 選課記錄匯入後以一道 UPDATE 重新計算所有課程的選課人數，並在報告中列出超過人數上限的課程
+ *
+ * 命令列：java service.BulkImporter courses|students|enrollments 檔案.csv
+ * (以 -Dcoursedb.url 指定資料庫，匯入選課記錄時請勿同時啟用座位帳本)
+ */
+package service;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Logger;
+
+public class BulkImporter {
+
+    // ============ 常數定義 ============
+    private static final Logger LOGGER = Logger.getLogger(BulkImporter.class.getName());
+
+    // 每批筆數與提交間隔 (可用系統屬性覆寫)
+    private static final int BATCH_SIZE = Integer.getInteger("coursedb.import.batchSize", 500);
+    private static final int COMMIT_INTERVAL = Integer.getInteger("coursedb.import.commitInterval", 5000);
+    // 報告中最多保留的錯誤明細筆數 (錯誤總數仍完整計算)
+    private static final int MAX_REPORTED_ERRORS = 1000;
+
+    private static final String INSERT_COURSE =
+        "INSERT INTO courses (course_code, name, credits, department, type, teacher, " +
+        "max_students, current_students, time_schedule, classroom) VALUES (?, ?, ?, ?, ?, ?, ?, 0, ?, ?)";
+
+    private static final String INSERT_STUDENT =
+        "INSERT INTO students (student_code, name, department, password, total_credits) VALUES (?, ?, ?, ?, ?)";
+
+    // 以學號與課程代碼對應ID，找不到時不會新增任何資料列
+    private static final String INSERT_ENROLLMENT_BY_CODE =
+        "INSERT INTO enrollments (student_id, course_id, status) " +
+        "SELECT s.student_id, c.course_id, ? FROM students s, courses c " +
+        "WHERE s.student_code = ? AND c.course_code = ?";
+
+    private final DatabaseManager dbManager;
+
+    // ============ 建構子 ============
+
+    /**
+     * 建構子
+     * @param dbManager 資料庫管理物件
+     */
+    public BulkImporter(DatabaseManager dbManager) {
+        this.dbManager = dbManager;
+    }
+
+    // ============ 匯入方法 ============
+
+    /**
+     * 匯入課程
+     * 欄位 (依標題列名稱對應)：course_code, name, credits, department, type, teacher,
+     * max_students, time_schedule, classroom (teacher 之後皆可省略)
+     *
+     * @param input CSV來源
+     * @return 匯入報告
+     * @throws IOException 讀取失敗
+     * @throws SQLException 資料庫連線或提交失敗
+     */
+    public ImportReport importCourses(Reader input) throws IOException, SQLException {
+        ImportReport report = runImport("courses", input, INSERT_COURSE,
+            new String[] { "course_code", "name", "credits", "department" },
+            (row, pstmt) -> {
+                String type = row.optional("type", "選修");
+                if (!"必修".equals(type) && !"選修".equals(type) && !"通識".equals(type)) {
+                    throw new IllegalArgumentException("課程類型必須是 必修、選修 或 通識：" + type);
+                }
+                pstmt.setString(1, row.required("course_code"));
+                pstmt.setString(2, row.required("name"));
+                pstmt.setInt(3, row.intValue("credits", 3));
+                pstmt.setString(4, row.required("department"));
+                pstmt.setString(5, type);
+                pstmt.setString(6, row.optional("teacher", null));
+                pstmt.setInt(7, row.intValue("max_students", 50));
+                pstmt.setString(8, row.optional("time_schedule", null));
+                pstmt.setString(9, row.optional("classroom", null));
+            });
+
+        // 執行中的應用程式重新載入課程目錄
+        CourseCatalog catalog = CourseCatalog.getInstance();
+        if (catalog.isLoaded()) {
+            catalog.reload();
+        }
+        return report;
+    }
+
+    /**
+     * 匯入學生
+     * 欄位：student_code, name, department, password, total_credits (可省略)
+     *
+     * @param input CSV來源
+     * @return 匯入報告
+     * @throws IOException 讀取失敗
+     * @throws SQLException 資料庫連線或提交失敗
+     */
+    public ImportReport importStudents(Reader input) throws IOException, SQLException {
+        return runImport("students", input, INSERT_STUDENT,
+            new String[] { "student_code", "name", "department", "password" },
+            (row, pstmt) -> {
+                String studentCode = row.required("student_code");
+                if (!studentCode.matches("\\d{8}")) {
+                    throw new IllegalArgumentException("學號格式不正確 (應為8位數字)：" + studentCode);
+                }
+                pstmt.setString(1, studentCode);
+                pstmt.setString(2, row.required("name"));
+                pstmt.setString(3, row.required("department"));
+                pstmt.setString(4, row.required("password"));
+                pstmt.setInt(5, row.intValue("total_credits", 0));
+            });
+    }
+
+    /**
+     * 匯入選課記錄，完成後重新計算所有課程的選課人數並捨棄已選課程快取
+     * 匯入不檢查人數上限 (例如加簽)，重新計算後超過上限的課程列在報告中
+     * 欄位：student_code, course_code, status (只接受 ENROLLED，可省略)
+     * 系統以刪除選課記錄表示退選，DROPPED 的資料列不會被當成退選，因此列為錯誤
+     *
+     * @param input CSV來源
+     * @return 匯入報告
+     * @throws IOException 讀取失敗
+     * @throws SQLException 資料庫連線或提交失敗
+     */
+    public ImportReport importEnrollments(Reader input) throws IOException, SQLException {
+        ImportReport report = runImport("enrollments", input, INSERT_ENROLLMENT_BY_CODE,
+            new String[] { "student_code", "course_code" },
+            (row, pstmt) -> {
+                String status = row.optional("status", "ENROLLED").toUpperCase(Locale.ROOT);
+                if ("DROPPED".equals(status)) {
+                    throw new IllegalArgumentException("不匯入已退選的記錄 (退選以刪除選課記錄表示)：" + status);
+                }
+                if (!"ENROLLED".equals(status)) {
+                    throw new IllegalArgumentException("選課狀態必須是 ENROLLED：" + status);
+                }
+                pstmt.setString(1, status);
+                pstmt.setString(2, row.required("student_code"));
+                pstmt.setString(3, row.required("course_code"));
+            });
+
+        // 取代逐筆觸發器：一次以選課記錄重新計算人數
+        long start = System.currentTimeMillis();
+        int courses = dbManager.recountCourseStudents();
+        LOGGER.info("重新計算 " + courses + " 門課程的選課人數，" + (System.currentTimeMillis() - start) + " 毫秒");
+        report.overbooked.addAll(dbManager.getOverbookedCourses());
+        if (!report.overbooked.isEmpty()) {
+            LOGGER.warning("匯入後有 " + report.overbooked.size() + " 門課程超過人數上限：" + report.overbooked);
+        }
+        CourseCatalog.getInstance().invalidateSeats();
+        dbManager.invalidateStudentRosters();
+        return report;
+    }
+
+    // ============ 批次寫入 ============
+
+    /**
+     * 設定一筆資料列的參數，格式錯誤時丟出 IllegalArgumentException
+     */
+    private interface RowBinder {
+        void bind(CsvRow row, PreparedStatement pstmt) throws SQLException;
+    }
+
+    private ImportReport runImport(String table, Reader input, String sql, String[] requiredColumns,
+                                   RowBinder binder) throws IOException, SQLException {
+        ImportReport report = new ImportReport(table);
+        long start = System.currentTimeMillis();
+
+        try (CsvReader csv = new CsvReader(input);
+             Connection conn = dbManager.getConnectionProvider().getConnection()) {
+
+            Map<String, Integer> header = readHeader(csv, requiredColumns);
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                List<PendingRow> batch = new ArrayList<>(BATCH_SIZE);
+                long sinceCommit = 0;
+                String[] fields;
+
+                while ((fields = csv.next()) != null) {
+                    report.rowsRead++;
+                    CsvRow row = new CsvRow(header, fields);
+                    try {
+                        binder.bind(row, pstmt);
+                    } catch (IllegalArgumentException e) {
+                        pstmt.clearParameters();
+                        report.addError(csv.getRecordLine(), e.getMessage());
+                        continue;
+                    }
+                    pstmt.addBatch();
+                    batch.add(new PendingRow(csv.getRecordLine(), row));
+
+                    if (batch.size() >= BATCH_SIZE) {
+                        sinceCommit += flushBatch(conn, pstmt, batch, binder, report);
+                        if (sinceCommit >= COMMIT_INTERVAL) {
+                            conn.commit();
+                            sinceCommit = 0;
+                            LOGGER.fine(table + " 已提交 " + report.rowsImported + " 筆");
+                        }
+                    }
+                }
+                flushBatch(conn, pstmt, batch, binder, report);
+                conn.commit();
+
+            } catch (SQLException | IOException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+
+        report.elapsedMillis = System.currentTimeMillis() - start;
+        LOGGER.info(report.getSummary());
+        return report;
+    }
+
+    /**
+     * 執行一批；失敗時回到該批開頭，逐筆重新寫入並記錄失敗的資料列
+     * @return 成功寫入的筆數
+     */
+    private long flushBatch(Connection conn, PreparedStatement pstmt, List<PendingRow> batch,
+                            RowBinder binder, ImportReport report) throws SQLException {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        long imported = 0;
+        Savepoint batchStart = conn.setSavepoint();
+        try {
+            int[] counts = pstmt.executeBatch();
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 0) {
+                    report.addError(batch.get(i).line, "找不到對應的學號或課程代碼");
+                } else {
+                    imported++;
+                }
+            }
+            conn.releaseSavepoint(batchStart);
+        } catch (BatchUpdateException e) {
+            conn.rollback(batchStart);
+            pstmt.clearBatch();
+            imported = retryRowByRow(conn, pstmt, batch, binder, report);
+        }
+        report.rowsImported += imported;
+        batch.clear();
+        return imported;
+    }
+
+    private long retryRowByRow(Connection conn, PreparedStatement pstmt, List<PendingRow> batch,
+                               RowBinder binder, ImportReport report) throws SQLException {
+        long imported = 0;
+        for (PendingRow pending : batch) {
+            Savepoint rowStart = conn.setSavepoint();
+            try {
+                binder.bind(pending.row, pstmt);
+                if (pstmt.executeUpdate() == 0) {
+                    report.addError(pending.line, "找不到對應的學號或課程代碼");
+                } else {
+                    imported++;
+                }
+                conn.releaseSavepoint(rowStart);
+            } catch (SQLException e) {
+                conn.rollback(rowStart);
+                report.addError(pending.line, describe(e));
+            }
+        }
+        return imported;
+    }
+
+    private static Map<String, Integer> readHeader(CsvReader csv, String[] requiredColumns) throws IOException {
+        String[] names = csv.next();
+        if (names == null) {
+            throw new IOException("CSV檔案是空的");
+        }
+        Map<String, Integer> header = new HashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            header.put(names[i].trim().toLowerCase(Locale.ROOT), i);
+        }
+        for (String column : requiredColumns) {
+            if (!header.containsKey(column)) {
+                throw new IOException("CSV標題列缺少欄位：" + column);
+            }
+        }
+        return header;
+    }
+
+    private static String describe(SQLException e) {
+        String state = e.getSQLState();
+        if ("23505".equals(state)) {
+            return "資料重複 (代碼已存在)";
+        }
+        if ("23513".equals(state)) {
+            return "不符合資料表檢查條件";
+        }
+        return e.getMessage();
+    }
+
+    // ============ 內部類別 ============
+
+    /**
+     * 一筆CSV資料 (依標題列名稱取值)
+     */
+    private static final class CsvRow {
+        private final Map<String, Integer> header;
+        private final String[] fields;
+
+        CsvRow(Map<String, Integer> header, String[] fields) {
+            this.header = header;
+            this.fields = fields;
+        }
+
+        String optional(String column, String defaultValue) {
+            Integer index = header.get(column);
+            if (index == null || index >= fields.length || fields[index].trim().isEmpty()) {
+                return defaultValue;
+            }
+            return fields[index].trim();
+        }
+
+        String required(String column) {
+            String value = optional(column, null);
+            if (value == null) {
+                throw new IllegalArgumentException("欄位 " + column + " 不可空白");
+            }
+            return value;
+        }
+
+        int intValue(String column, int defaultValue) {
+            String value = optional(column, null);
+            if (value == null) {
+                return defaultValue;
+            }
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("欄位 " + column + " 必須是整數：" + value);
+            }
+        }
+    }
+
+    /**
+     * 已加入批次、尚未確認結果的資料列
+     */
+    private static final class PendingRow {
+        final long line;
+        final CsvRow row;
+
+        PendingRow(long line, CsvRow row) {
+            this.line = line;
+            this.row = row;
+        }
+    }
+
+    /**
+     * 匯入結果報告
+     */
+    public static final class ImportReport {
+        private final String table;
+        private long rowsRead;
+        private long rowsImported;
+        private long errorCount;
+        private long elapsedMillis;
+        private final List<String> errors = new ArrayList<>();
+        private final List<String> overbooked = new ArrayList<>();  // 匯入後超過人數上限的課程
+
+        ImportReport(String table) {
+            this.table = table;
+        }
+
+        void addError(long line, String message) {
+            errorCount++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add("第 " + line + " 行：" + message);
+            }
+        }
+
+        public String getTable() { return table; }
+        public long getRowsRead() { return rowsRead; }
+        public long getRowsImported() { return rowsImported; }
+        public long getErrorCount() { return errorCount; }
+        public long getElapsedMillis() { return elapsedMillis; }
+
+        /** 錯誤明細 (最多保留 MAX_REPORTED_ERRORS 筆) */
+        public List<String> getErrors() { return Collections.unmodifiableList(errors); }
+
+        /** 匯入選課記錄後選課人數超過上限的課程 (課程代碼 (人數/上限)) */
+        public List<String> getOverbookedCourses() { return Collections.unmodifiableList(overbooked); }
+
+        public double getRowsPerSecond() {
+            return elapsedMillis > 0 ? rowsImported * 1000.0 / elapsedMillis : rowsImported;
+        }
+
+        public String getSummary() {
+            String summary = String.format("匯入 %s：讀取 %d 筆，成功 %d 筆，錯誤 %d 筆，%.1f 秒 (%.0f 筆/秒)",
+                table, rowsRead, rowsImported, errorCount, elapsedMillis / 1000.0, getRowsPerSecond());
+            return overbooked.isEmpty() ? summary : summary + "，超過人數上限 " + overbooked.size() + " 門課程";
+        }
+    }
+
+    // ============ 命令列 ============
+
+    /**
+     * 命令列匯入
+     * @param args 資料類型 (courses、students、enrollments) 與CSV檔案路徑
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("用法：java service.BulkImporter courses|students|enrollments 檔案.csv");
+            System.exit(2);
+        }
+        BulkImporter importer = new BulkImporter(DatabaseManager.getInstance());
+        ImportReport report;
+        try (Reader reader = new InputStreamReader(new FileInputStream(args[1]), StandardCharsets.UTF_8)) {
+            switch (args[0]) {
+                case "courses":
+                    report = importer.importCourses(reader);
+                    break;
+                case "students":
+                    report = importer.importStudents(reader);
+                    break;
+                case "enrollments":
+                    report = importer.importEnrollments(reader);
+                    break;
+                default:
+                    System.err.println("未知的資料類型：" + args[0]);
+                    System.exit(2);
+                    return;
+            }
+        } finally {
+            DatabaseManager.getInstance().shutdown();
+        }
+
+        System.out.println(report.getSummary());
+        for (String error : report.getErrors()) {
+            System.out.println("  " + error);
+        }
+        if (report.getErrorCount() > report.getErrors().size()) {
+            System.out.println("  ... 另有 " + (report.getErrorCount() - report.getErrors().size()) + " 筆錯誤未列出");
+        }
+        for (String course : report.getOverbookedCourses()) {
+            System.out.println("  超過人數上限：" + course);
+        }
+    }
+}
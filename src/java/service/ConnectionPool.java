@@ -0,0 +1,461 @@
+// ==================== 11. ConnectionPool.java ====================
+/**
+ * 內建資料庫連接池
+ * 以有上限的連接數重複使用Derby連接，避免每次操作都重新建立網路連線
+ * 提供連接驗證、閒置回收、等待逾時、PreparedStatement快取與統計資訊
+ */
+package service;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class ConnectionPool implements ConnectionProvider {
+
+    // ============ 常數定義 ============
+    private static final Logger LOGGER = Logger.getLogger(ConnectionPool.class.getName());
+
+    // 閒置超過此時間的連接在借出前才需要驗證 (毫秒)
+    private static final long VALIDATION_INTERVAL_MILLIS = 5000;
+    // Connection.isValid 的逾時秒數
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+
+    // ============ 連接參數 ============
+    private final String url;
+    private final String user;
+    private final String password;
+
+    // ============ 連接池設定 ============
+    private final int maxSize;            // 最大連接數
+    private final int minIdle;            // 最少保留的閒置連接數
+    private final long maxWaitMillis;     // 取得連接的最長等待時間
+    private final long idleTimeoutMillis; // 閒置連接的回收時間
+    private final int statementCacheSize; // 每個連接快取的PreparedStatement數量 (0為停用)
+
+    // ============ 連接池狀態 ============
+    private final Semaphore permits;                       // 限制同時借出的連接數
+    private final LinkedBlockingDeque<PooledConnection> idle; // 閒置連接 (LIFO，讓熱連接保持使用)
+    private final ScheduledExecutorService evictor;        // 閒置回收排程
+    private volatile boolean closed;
+
+    // ============ 統計資訊 ============
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicInteger totalCount = new AtomicInteger();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong borrowedCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong validationFailureCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong statementCacheHits = new AtomicLong();
+    private final AtomicLong statementCacheMisses = new AtomicLong();
+    private final AtomicLong statementCacheEvictions = new AtomicLong();
+
+    // ============ 建構子 ============
+
+    /**
+     * 建構子
+     * @param url 資料庫連線URL
+     * @param user 使用者名稱
+     * @param password 密碼
+     * @param maxSize 最大連接數
+     * @param minIdle 最少保留的閒置連接數
+     * @param maxWaitMillis 取得連接的最長等待時間 (毫秒)
+     * @param idleTimeoutMillis 閒置連接的回收時間 (毫秒)
+     * @param statementCacheSize 每個連接快取的PreparedStatement數量，0表示停用
+     */
+    public ConnectionPool(String url, String user, String password,
+                          int maxSize, int minIdle, long maxWaitMillis, long idleTimeoutMillis,
+                          int statementCacheSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("連接池大小必須大於0");
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.minIdle = Math.min(Math.max(0, minIdle), maxSize);
+        this.maxWaitMillis = maxWaitMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.statementCacheSize = Math.max(0, statementCacheSize);
+
+        this.permits = new Semaphore(maxSize, true);
+        this.idle = new LinkedBlockingDeque<>();
+
+        // 背景執行緒定期回收閒置過久的連接
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "coursedb-pool-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, idleTimeoutMillis / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdleConnections, period, period, TimeUnit.MILLISECONDS);
+
+        LOGGER.info(String.format("連接池初始化完成，最大連接數：%d，最少閒置：%d，等待逾時：%dms，Statement快取：%d",
+                                  maxSize, this.minIdle, maxWaitMillis, this.statementCacheSize));
+    }
+
+    // ============ 連接借用與歸還 ============
+
+    /**
+     * 從連接池借出連接，若已達上限則最多等待 maxWaitMillis
+     * @return 包裝後的連接，close() 時歸還連接池
+     * @throws SQLException 如果等待逾時或無法建立連接
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("連接池已關閉");
+        }
+
+        long waitStart = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+                timeoutCount.incrementAndGet();
+                throw new SQLTimeoutException("等待資料庫連接逾時 (" + maxWaitMillis + "ms)，使用中：" + activeCount.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("等待資料庫連接時被中斷", e);
+        }
+        totalWaitNanos.addAndGet(System.nanoTime() - waitStart);
+
+        try {
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (validate(pooled)) {
+                    break;
+                }
+                validationFailureCount.incrementAndGet();
+                discard(pooled);
+            }
+            if (pooled == null) {
+                pooled = createConnection();
+            }
+
+            activeCount.incrementAndGet();
+            borrowedCount.incrementAndGet();
+            return pooled.borrow();
+
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * 歸還連接 (由連接代理物件的close()呼叫)
+     * @param pooled 實體連接
+     * @param broken 連接是否已發生連線層級錯誤
+     */
+    void release(PooledConnection pooled, boolean broken) {
+        activeCount.decrementAndGet();
+        try {
+            if (!broken && !closed) {
+                try {
+                    // 確保未完成的交易不會被下一個使用者繼承
+                    if (!pooled.physical.getAutoCommit()) {
+                        pooled.physical.rollback();
+                        pooled.physical.setAutoCommit(true);
+                    }
+                } catch (SQLException e) {
+                    LOGGER.log(Level.WARNING, "重設連接狀態失敗，丟棄此連接", e);
+                    broken = true;
+                }
+            }
+
+            if (broken || closed) {
+                discard(pooled);
+            } else {
+                pooled.lastUsedAt = System.currentTimeMillis();
+                idle.offerFirst(pooled);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    // ============ 私有輔助方法 ============
+
+    /**
+     * 建立新的實體連接
+     */
+    private PooledConnection createConnection() throws SQLException {
+        Connection physical = DriverManager.getConnection(url, user, password);
+        totalCount.incrementAndGet();
+        createdCount.incrementAndGet();
+        LOGGER.fine("連接池建立新連接，目前總數：" + totalCount.get());
+        StatementCache cache = statementCacheSize > 0
+            ? new StatementCache(physical, statementCacheSize,
+                                 statementCacheHits, statementCacheMisses, statementCacheEvictions)
+            : null;
+        return new PooledConnection(this, physical, cache);
+    }
+
+    /**
+     * 驗證閒置連接是否仍可使用
+     */
+    private boolean validate(PooledConnection pooled) {
+        try {
+            if (pooled.physical.isClosed()) {
+                return false;
+            }
+            // 最近才使用過的連接直接視為有效，減少驗證往返
+            if (System.currentTimeMillis() - pooled.lastUsedAt < VALIDATION_INTERVAL_MILLIS) {
+                return true;
+            }
+            return pooled.physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 關閉並丟棄實體連接
+     */
+    private void discard(PooledConnection pooled) {
+        totalCount.decrementAndGet();
+        pooled.closePhysical();
+    }
+
+    /**
+     * 回收閒置過久的連接，保留 minIdle 個
+     */
+    private void evictIdleConnections() {
+        try {
+            long now = System.currentTimeMillis();
+            Iterator<PooledConnection> it = idle.descendingIterator();
+            while (it.hasNext() && idle.size() > minIdle) {
+                PooledConnection pooled = it.next();
+                // remove() 成功才代表沒有被同時借出
+                if (now - pooled.lastUsedAt > idleTimeoutMillis && idle.remove(pooled)) {
+                    evictedCount.incrementAndGet();
+                    discard(pooled);
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "回收閒置連接時發生錯誤", e);
+        }
+    }
+
+    // ============ 資源管理方法 ============
+
+    /**
+     * 關閉連接池，閒置連接立即關閉，借出中的連接於歸還時關閉
+     */
+    @Override
+    public void shutdown() {
+        closed = true;
+        evictor.shutdownNow();
+
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            discard(pooled);
+        }
+        LOGGER.info("連接池已關閉，" + getStatus());
+    }
+
+    /**
+     * 取得連接池狀態資訊 (用於監控)
+     * @return 狀態描述
+     */
+    @Override
+    public String getStatus() {
+        long borrowed = borrowedCount.get();
+        return String.format("連接池%s：使用中 %d / 閒置 %d / 上限 %d，已建立 %d，借出 %d，" +
+                             "等待逾時 %d，驗證失敗 %d，閒置回收 %d，平均等待 %.2fms，" +
+                             "Statement快取 命中 %d / 未命中 %d / 淘汰 %d",
+            closed ? "已關閉" : "運行中",
+            activeCount.get(), idle.size(), maxSize,
+            createdCount.get(), borrowed,
+            timeoutCount.get(), validationFailureCount.get(), evictedCount.get(),
+            borrowed == 0 ? 0.0 : totalWaitNanos.get() / 1_000_000.0 / borrowed,
+            statementCacheHits.get(), statementCacheMisses.get(), statementCacheEvictions.get());
+    }
+
+    // ============ 統計資訊 Getter ============
+
+    public int getActiveCount() { return activeCount.get(); }
+    public int getIdleCount() { return idle.size(); }
+    public int getTotalCount() { return totalCount.get(); }
+    public int getMaxSize() { return maxSize; }
+    public long getCreatedCount() { return createdCount.get(); }
+    public long getBorrowedCount() { return borrowedCount.get(); }
+    public long getTimeoutCount() { return timeoutCount.get(); }
+    public long getEvictedCount() { return evictedCount.get(); }
+    public long getStatementCacheHits() { return statementCacheHits.get(); }
+    public long getStatementCacheMisses() { return statementCacheMisses.get(); }
+    public long getStatementCacheEvictions() { return statementCacheEvictions.get(); }
+
+    // ============ 連接包裝類別 ============
+
+    /**
+     * 連接池中的實體連接
+     */
+    static final class PooledConnection {
+        final ConnectionPool pool;
+        final Connection physical;
+        final StatementCache statementCache;  // 可能為null (停用快取)
+        volatile long lastUsedAt;
+
+        PooledConnection(ConnectionPool pool, Connection physical, StatementCache statementCache) {
+            this.pool = pool;
+            this.physical = physical;
+            this.statementCache = statementCache;
+            this.lastUsedAt = System.currentTimeMillis();
+        }
+
+        /**
+         * 每次借出都產生新的代理物件，歸還後舊的代理物件即失效
+         */
+        Connection borrow() {
+            return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[] { Connection.class },
+                new Handle(this));
+        }
+
+        void closePhysical() {
+            if (statementCache != null) {
+                statementCache.clear();
+            }
+            try {
+                physical.close();
+            } catch (SQLException e) {
+                LOGGER.log(Level.FINE, "關閉實體連接失敗", e);
+            }
+        }
+    }
+
+    /**
+     * 連接代理：攔截close()改為歸還連接池，prepareStatement()改走Statement快取；
+     * 借出的Statement與ResultSet也經過代理，執行或讀取時斷線同樣標記連接損壞
+     */
+    private static final class Handle implements InvocationHandler {
+        private final PooledConnection pooled;
+        private boolean returned;
+        private boolean broken;
+
+        Handle(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+
+            if ("close".equals(name)) {
+                if (!returned) {
+                    returned = true;
+                    pooled.pool.release(pooled, broken);
+                }
+                return null;
+            }
+            if ("isClosed".equals(name)) {
+                return returned || pooled.physical.isClosed();
+            }
+            if ("equals".equals(name)) {
+                return proxy == args[0];
+            }
+            if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            }
+            if ("toString".equals(name)) {
+                return "PooledConnection[" + pooled.physical + "]";
+            }
+            if (returned) {
+                throw new SQLException("連接已歸還連接池");
+            }
+            // 單一SQL參數的prepareStatement走Statement快取
+            if ("prepareStatement".equals(name) && args.length == 1 && pooled.statementCache != null) {
+                return guard(pooled.statementCache.prepare((String) args[0], (Connection) proxy));
+            }
+
+            return guard(call(pooled.physical, method, args));
+        }
+
+        /**
+         * 呼叫實際物件；SQLState 08xxx 代表連線層級錯誤，歸還時丟棄此連接
+         */
+        Object call(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof SQLException) {
+                    String state = ((SQLException) cause).getSQLState();
+                    if (state != null && state.startsWith("08")) {
+                        broken = true;
+                    }
+                }
+                throw cause;
+            }
+        }
+
+        /**
+         * Statement 與 ResultSet 包一層代理，其他回傳值原樣返回
+         */
+        Object guard(Object result) {
+            Class<?> type;
+            if (result instanceof CallableStatement) {
+                type = CallableStatement.class;
+            } else if (result instanceof PreparedStatement) {
+                type = PreparedStatement.class;
+            } else if (result instanceof Statement) {
+                type = Statement.class;
+            } else if (result instanceof ResultSet) {
+                type = ResultSet.class;
+            } else {
+                return result;
+            }
+            return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, new Guard(this, result));
+        }
+    }
+
+    /**
+     * Statement / ResultSet 代理：轉呼叫實際物件，連線層級錯誤交給所屬的連接代理標記
+     */
+    private static final class Guard implements InvocationHandler {
+        private final Handle owner;
+        private final Object target;
+
+        Guard(Handle owner, Object target) {
+            this.owner = owner;
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("equals".equals(name)) {
+                return proxy == args[0];
+            }
+            if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            }
+            if ("toString".equals(name)) {
+                return target.toString();
+            }
+            return owner.guard(owner.call(target, method, args));
+        }
+    }
+}
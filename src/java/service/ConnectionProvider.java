@@ -0,0 +1,30 @@
+// ==================== 10. ConnectionProvider.java ====================
+/**
+ * 資料庫連接來源介面
+ * 讓DatabaseManager可以切換內建連接池或容器提供的JNDI DataSource
+ */
+package service;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+public interface ConnectionProvider {
+
+    /**
+     * 取得資料庫連接，使用完畢呼叫close()即歸還
+     * @return 資料庫連接物件
+     * @throws SQLException 如果無法取得連接
+     */
+    Connection getConnection() throws SQLException;
+
+    /**
+     * 取得連接來源狀態資訊 (用於監控)
+     * @return 狀態描述
+     */
+    String getStatus();
+
+    /**
+     * 關閉連接來源並釋放資源
+     */
+    void shutdown();
+}
@@ -0,0 +1,303 @@
+// ==================== 16. CourseCatalog.java ====================
+/**
+ * 課程目錄快取 (整個應用程式共用)
+ * 課程的靜態資料以不可變的版本快照保存，課程異動時整份原子性替換；
+ * 選課人數另外以計數器疊加，選課/退選不需要重新載入整份目錄；
+ * 每份快照附帶關鍵字倒排索引，重新載入時一併重建
+ */
+package service;
+
+import entity.Course;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+public class CourseCatalog {
+
+    // ============ 常數定義 ============
+    private static final Logger LOGGER = Logger.getLogger(CourseCatalog.class.getName());
+
+    // 選課人數與資料庫對帳的間隔 (毫秒，可用系統屬性覆寫)
+    private static final long SEAT_REFRESH_MILLIS = Long.getLong("coursedb.catalog.seatRefreshMillis", 5000L);
+
+    // ============ 單例模式實作 ============
+    private static CourseCatalog instance;
+
+    private final DatabaseManager dbManager;
+
+    // 目前的目錄快照 (null 表示尚未載入)
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+    private final AtomicLong versionCounter = new AtomicLong();
+
+    // 選課人數疊加層：課程ID → 目前選課人數
+    private final ConcurrentHashMap<Integer, AtomicInteger> seats = new ConcurrentHashMap<>();
+    private final AtomicLong seatsRefreshedAt = new AtomicLong();
+    // 啟用座位帳本時選課人數直接取自帳本 (含尚未寫回資料庫的選課)，不與資料庫對帳
+    private volatile SeatLedger seatLedger;
+
+    /**
+     * 私有建構子
+     */
+    private CourseCatalog(DatabaseManager dbManager) {
+        this.dbManager = dbManager;
+    }
+
+    /**
+     * 取得CourseCatalog的唯一實例
+     * @return CourseCatalog實例
+     */
+    public static synchronized CourseCatalog getInstance() {
+        if (instance == null) {
+            instance = new CourseCatalog(DatabaseManager.getInstance());
+        }
+        return instance;
+    }
+
+    // ============ 查詢方法 ============
+
+    /**
+     * 取得所有可選課程 (含最新選課人數)
+     * 回傳的是複本，呼叫端可以自由修改
+     * @return 課程列表
+     */
+    public List<Course> getCourses() {
+        Snapshot current = currentSnapshot();
+        refreshSeatsIfStale();
+
+        List<Course> result = new ArrayList<>(current.courses.size());
+        for (Course course : current.courses) {
+            result.add(withSeats(course));
+        }
+        return result;
+    }
+
+    /**
+     * 關鍵字搜尋 (名稱、代碼或教師包含關鍵字，不分大小寫)
+     * 以倒排索引求得結果，不必逐門課比對字串
+     * @param keyword 搜尋關鍵字，空白時返回所有課程
+     * @return 符合的課程複本 (含最新選課人數)
+     */
+    public List<Course> search(String keyword) {
+        if (keyword == null || keyword.trim().isEmpty()) {
+            return getCourses();
+        }
+        Snapshot current = currentSnapshot();
+        refreshSeatsIfStale();
+
+        int[] courseIds = current.searchIndex.search(keyword.trim());
+        List<Course> result = new ArrayList<>(courseIds.length);
+        for (int courseId : courseIds) {
+            result.add(withSeats(current.byId.get(courseId)));
+        }
+        return result;
+    }
+    
+    /**
+     * 依ID取得課程 (含最新選課人數)
+     * @param courseId 課程ID
+     * @return 課程複本，不存在時返回null
+     */
+    public Course getCourse(int courseId) {
+        Course course = currentSnapshot().byId.get(courseId);
+        return course != null ? withSeats(course) : null;
+    }
+
+    /**
+     * 將課程的靜態資料複製一份並疊加目前選課人數
+     * @param course 快照中的課程
+     * @return 課程複本
+     */
+    public Course withSeats(Course course) {
+        Course copy = new Course(course);
+        SeatLedger ledger = seatLedger;
+        if (ledger != null) {
+            int current = ledger.getCurrentStudents(course.getCourseId());
+            if (current >= 0) {
+                copy.setCurrentStudents(current);
+                return copy;
+            }
+        }
+        AtomicInteger seat = seats.get(course.getCourseId());
+        if (seat != null) {
+            copy.setCurrentStudents(seat.get());
+        }
+        return copy;
+    }
+
+    /**
+     * 取得目前的不可變快照 (必要時從資料庫載入)
+     * @return 目錄快照
+     */
+    public Snapshot currentSnapshot() {
+        Snapshot current = snapshot.get();
+        if (current == null) {
+            synchronized (this) {
+                current = snapshot.get();
+                if (current == null) {
+                    current = reload();
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 目錄是否已經載入過 (尚未載入時不需要重新載入)
+     * @return true表示已載入
+     */
+    public boolean isLoaded() {
+        return snapshot.get() != null;
+    }
+
+    /**
+     * 取得目前目錄版本 (每次課程異動加一)
+     * @return 版本號
+     */
+    public long getVersion() {
+        return currentSnapshot().version;
+    }
+
+    // ============ 異動方法 ============
+
+    /**
+     * 從資料庫重新載入整份課程目錄並原子性替換
+     * @return 新的快照
+     */
+    public synchronized Snapshot reload() {
+        List<Course> courses = dbManager.getAllCourses();
+        if (courses.isEmpty()) {
+            // 資料庫暫時無法讀取時保留舊快照，尚未載入過則下次讀取再試
+            Snapshot current = snapshot.get();
+            LOGGER.warning("課程目錄載入結果為空，" + (current != null ? "保留版本 " + current.version : "稍後重試"));
+            return current != null ? current
+                                   : new Snapshot(versionCounter.get(), courses, CourseSearchIndex.build(courses));
+        }
+        Snapshot next = new Snapshot(versionCounter.incrementAndGet(), courses, CourseSearchIndex.build(courses));
+        for (Course course : courses) {
+            setSeats(course.getCourseId(), course.getCurrentStudents());
+        }
+        seats.keySet().retainAll(next.byId.keySet());
+        // 課程資料可能來自唯讀資料來源，選課人數在下次讀取時再以主資料庫對帳
+        seatsRefreshedAt.set(0);
+        snapshot.set(next);
+
+        LOGGER.info("課程目錄已載入，版本 " + next.version + "，共 " + courses.size() + " 門課程");
+        return next;
+    }
+
+    /**
+     * 選課或退選成功後調整選課人數 (不影響目錄版本)
+     * @param courseId 課程ID
+     * @param delta 人數變化 (+1 選課 / -1 退選)
+     */
+    public void applySeatDelta(int courseId, int delta) {
+        AtomicInteger seat = seats.get(courseId);
+        if (seat != null) {
+            seat.addAndGet(delta);
+        }
+    }
+
+    /**
+     * 選課人數改由座位帳本提供 (CourseService 啟用帳本時呼叫)
+     * @param ledger 座位帳本
+     */
+    public void useSeatLedger(SeatLedger ledger) {
+        this.seatLedger = ledger;
+    }
+
+    /**
+     * 強制下次讀取時與資料庫對帳選課人數
+     */
+    public void invalidateSeats() {
+        seatsRefreshedAt.set(0);
+    }
+
+    // ============ 私有輔助方法 ============
+
+    private void setSeats(int courseId, int current) {
+        AtomicInteger seat = seats.get(courseId);
+        if (seat == null) {
+            seat = seats.putIfAbsent(courseId, new AtomicInteger(current));
+        }
+        if (seat != null) {
+            seat.set(current);
+        }
+    }
+
+    /**
+     * 選課人數超過對帳間隔時，由一個執行緒以輕量查詢 (主資料庫) 更新；
+     * 啟用座位帳本時人數直接取自帳本，不查詢資料庫
+     */
+    private void refreshSeatsIfStale() {
+        if (seatLedger != null) {
+            return;
+        }
+        long last = seatsRefreshedAt.get();
+        long now = System.currentTimeMillis();
+        if (now - last < SEAT_REFRESH_MILLIS || !seatsRefreshedAt.compareAndSet(last, now)) {
+            return;
+        }
+        Map<Integer, Integer> counts = dbManager.getCourseSeatCounts();
+        for (Map.Entry<Integer, Integer> entry : counts.entrySet()) {
+            AtomicInteger seat = seats.get(entry.getKey());
+            if (seat != null) {
+                seat.set(entry.getValue());
+            }
+        }
+    }
+
+    // ============ 目錄快照 ============
+
+    /**
+     * 不可變的課程目錄快照
+     */
+    public static final class Snapshot {
+        private final long version;
+        private final List<Course> courses;
+        private final Map<Integer, Course> byId;
+        private final CourseSearchIndex searchIndex;
+
+        Snapshot(long version, List<Course> courses, CourseSearchIndex searchIndex) {
+            this.version = version;
+            this.searchIndex = searchIndex;
+            this.courses = Collections.unmodifiableList(new ArrayList<>(courses));
+            Map<Integer, Course> map = new HashMap<>();
+            for (Course course : courses) {
+                map.put(course.getCourseId(), course);
+            }
+            this.byId = Collections.unmodifiableMap(map);
+        }
+
+        public long getVersion() { return version; }
+
+        /**
+         * 快照中的課程 (複本，選課人數為載入時的值)
+         * 快照在所有Session間共用，呼叫端修改複本不會影響快照
+         * @return 課程列表
+         */
+        public List<Course> getCourses() {
+            List<Course> result = new ArrayList<>(courses.size());
+            for (Course course : courses) {
+                result.add(new Course(course));
+            }
+            return result;
+        }
+
+        /**
+         * 依ID取得快照中的課程
+         * @param courseId 課程ID
+         * @return 課程複本，不存在時返回null
+         */
+        public Course getCourse(int courseId) {
+            Course course = byId.get(courseId);
+            return course != null ? new Course(course) : null;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+// ==================== 42. CourseFilter.java ====================
+/**
+ * 課程篩選條件
+ * 關鍵字、系所、類型、只顯示有名額與學分範圍，由 DatabaseManager 組成一個參數化查詢；
+ * 未設定的條件不加入 WHERE，系所與類型以等值條件使用 idx_course_department / idx_course_type
+ */
+package service;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+public class CourseFilter implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // ============ 屬性定義 ============
+    private String keyword;         // 名稱、代碼或教師包含的關鍵字 (不分大小寫)
+    private String department;      // 開課系所
+    private String type;            // 課程類型 (必修/選修/通識)
+    private boolean availableOnly;  // 只顯示還有名額的課程
+    private Integer minCredits;     // 最少學分 (含)
+    private Integer maxCredits;     // 最多學分 (含)
+
+    // ============ 建構子 ============
+
+    /**
+     * 預設建構子 (不篩選)
+     */
+    public CourseFilter() {
+    }
+
+    /**
+     * 建構子
+     * @param keyword 關鍵字，空白表示不限
+     * @param department 開課系所，空白表示不限
+     * @param type 課程類型，空白表示不限
+     * @param availableOnly 只顯示還有名額的課程
+     * @param minCredits 最少學分，null表示不限
+     * @param maxCredits 最多學分，null表示不限
+     */
+    public CourseFilter(String keyword, String department, String type,
+                        boolean availableOnly, Integer minCredits, Integer maxCredits) {
+        setKeyword(keyword);
+        setDepartment(department);
+        setType(type);
+        setAvailableOnly(availableOnly);
+        setMinCredits(minCredits);
+        setMaxCredits(maxCredits);
+    }
+
+    /**
+     * 複製建構子
+     * @param other 要複製的篩選條件
+     */
+    public CourseFilter(CourseFilter other) {
+        this(other.keyword, other.department, other.type,
+             other.availableOnly, other.minCredits, other.maxCredits);
+    }
+
+    // ============ 業務方法 ============
+
+    /**
+     * 是否沒有任何條件
+     * @return true表示列出所有可選課程
+     */
+    public boolean isEmpty() {
+        return keyword == null && department == null && type == null
+            && !availableOnly && minCredits == null && maxCredits == null;
+    }
+
+    /**
+     * 是否有關鍵字條件 (關鍵字搜尋受准入控制限流)
+     * @return true表示有關鍵字
+     */
+    public boolean hasKeyword() {
+        return keyword != null;
+    }
+
+    // ============ Getter 和 Setter 方法 ============
+
+    public String getKeyword() { return keyword; }
+    public void setKeyword(String keyword) { this.keyword = blankToNull(keyword); }
+
+    public String getDepartment() { return department; }
+    public void setDepartment(String department) { this.department = blankToNull(department); }
+
+    public String getType() { return type; }
+    public void setType(String type) { this.type = blankToNull(type); }
+
+    public boolean isAvailableOnly() { return availableOnly; }
+    public void setAvailableOnly(boolean availableOnly) { this.availableOnly = availableOnly; }
+
+    public Integer getMinCredits() { return minCredits; }
+    public void setMinCredits(Integer minCredits) { this.minCredits = minCredits; }
+
+    public Integer getMaxCredits() { return maxCredits; }
+    public void setMaxCredits(Integer maxCredits) { this.maxCredits = maxCredits; }
+
+    private static String blankToNull(String value) {
+        return value == null || value.trim().isEmpty() ? null : value.trim();
+    }
+
+    // ============ 覆寫方法 ============
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (!(obj instanceof CourseFilter)) return false;
+        CourseFilter other = (CourseFilter) obj;
+        return availableOnly == other.availableOnly
+            && Objects.equals(keyword, other.keyword)
+            && Objects.equals(department, other.department)
+            && Objects.equals(type, other.type)
+            && Objects.equals(minCredits, other.minCredits)
+            && Objects.equals(maxCredits, other.maxCredits);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(keyword, department, type, availableOnly, minCredits, maxCredits);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CourseFilter{關鍵字=%s, 系所=%s, 類型=%s, 有名額=%s, 學分=%s~%s}",
+            keyword, department, type, availableOnly, minCredits, maxCredits);
+    }
+}
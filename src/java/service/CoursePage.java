@@ -0,0 +1,80 @@
+// ==================== 41. CoursePage.java ====================
+/**
+ * 課程列表的一頁 (依課程代碼排序)
+ * 以這一頁第一門與最後一門課程的代碼作為上一頁/下一頁的鍵值 (keyset 分頁)，
+ * 翻頁時只查詢一頁的資料，頁數多時也不必跳過前面的資料列；
+ * 畫面只保存目前這一頁，不保存整份課程目錄
+ */
+package service;
+
+import entity.Course;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class CoursePage implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // ============ 屬性定義 ============
+    private final List<Course> courses;   // 這一頁的課程 (依課程代碼遞增)
+    private final int totalCount;         // 符合條件的課程總數
+    private final boolean hasPrevious;    // 前面是否還有課程
+    private final boolean hasNext;        // 後面是否還有課程
+
+    // ============ 建構子 ============
+
+    /**
+     * 建構子
+     * @param courses 這一頁的課程 (依課程代碼遞增)
+     * @param totalCount 符合條件的課程總數
+     * @param hasPrevious 前面是否還有課程
+     * @param hasNext 後面是否還有課程
+     */
+    public CoursePage(List<Course> courses, int totalCount, boolean hasPrevious, boolean hasNext) {
+        this.courses = courses != null ? courses : new ArrayList<Course>();
+        this.totalCount = totalCount;
+        this.hasPrevious = hasPrevious;
+        this.hasNext = hasNext;
+    }
+
+    /**
+     * 空白頁
+     * @return 沒有課程的頁面
+     */
+    public static CoursePage empty() {
+        return new CoursePage(new ArrayList<Course>(), 0, false, false);
+    }
+
+    // ============ Getter 方法 ============
+
+    public List<Course> getCourses() { return Collections.unmodifiableList(courses); }
+    public int getTotalCount() { return totalCount; }
+    public boolean hasPrevious() { return hasPrevious; }
+    public boolean hasNext() { return hasNext; }
+    public boolean isEmpty() { return courses.isEmpty(); }
+
+    /**
+     * 下一頁的鍵值
+     * @return 這一頁最後一門課程的代碼，空白頁時返回null
+     */
+    public String getLastCode() {
+        return courses.isEmpty() ? null : courses.get(courses.size() - 1).getCourseCode();
+    }
+
+    /**
+     * 上一頁的鍵值
+     * @return 這一頁第一門課程的代碼，空白頁時返回null
+     */
+    public String getFirstCode() {
+        return courses.isEmpty() ? null : courses.get(0).getCourseCode();
+    }
+
+    // ============ 覆寫方法 ============
+
+    @Override
+    public String toString() {
+        return String.format("CoursePage{%s ~ %s, 共 %d 門}", getFirstCode(), getLastCode(), totalCount);
+    }
+}
@@ -0,0 +1,238 @@
+// ==================== 17. CourseSearchIndex.java ====================
+/**
+ * 課程關鍵字倒排索引
+ * 以字元unigram/bigram索引課程名稱、代碼與教師 (中文名稱不需斷詞)，
+ * 另以課程代碼前綴 (如 cs、cs2、cs20) 直接命中代碼查詢；
+ * 查詢時交集倒排串列，再以建索引時預先轉小寫的欄位確認，不必逐門課轉換字串
+ */
+package service;
+
+import entity.Course;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+final class CourseSearchIndex {
+
+    private static final int[] EMPTY = new int[0];
+
+    // 課程ID → 已轉小寫的可搜尋欄位
+    private final Map<Integer, Doc> docs;
+    // 字元gram → 依課程ID排序的倒排串列
+    private final Map<Integer, int[]> grams;
+    // 課程代碼前綴 → 依課程ID排序的倒排串列
+    private final Map<String, int[]> codePrefixes;
+
+    private CourseSearchIndex(Map<Integer, Doc> docs, Map<Integer, int[]> grams, Map<String, int[]> codePrefixes) {
+        this.docs = docs;
+        this.grams = grams;
+        this.codePrefixes = codePrefixes;
+    }
+
+    // ============ 建立索引 ============
+
+    /**
+     * 為整份課程目錄建立索引
+     * @param courses 課程集合
+     * @return 索引
+     */
+    static CourseSearchIndex build(Collection<Course> courses) {
+        List<Doc> sorted = new ArrayList<>(courses.size());
+        for (Course course : courses) {
+            sorted.add(new Doc(course));
+        }
+        // 依課程ID遞增加入，倒排串列自然有序
+        Collections.sort(sorted, Comparator.comparingInt(d -> d.courseId));
+
+        Map<Integer, Doc> docs = new HashMap<>();
+        Map<Integer, IntList> gramLists = new HashMap<>();
+        Map<String, IntList> prefixLists = new HashMap<>();
+
+        for (Doc doc : sorted) {
+            docs.put(doc.courseId, doc);
+            for (int key : doc.gramKeys()) {
+                gramLists.computeIfAbsent(key, k -> new IntList()).addIfLast(doc.courseId);
+            }
+            for (String prefix : doc.codePrefixes()) {
+                prefixLists.computeIfAbsent(prefix, k -> new IntList()).addIfLast(doc.courseId);
+            }
+        }
+
+        Map<Integer, int[]> grams = new HashMap<>(gramLists.size() * 2);
+        for (Map.Entry<Integer, IntList> entry : gramLists.entrySet()) {
+            grams.put(entry.getKey(), entry.getValue().toArray());
+        }
+        Map<String, int[]> codePrefixes = new HashMap<>(prefixLists.size() * 2);
+        for (Map.Entry<String, IntList> entry : prefixLists.entrySet()) {
+            codePrefixes.put(entry.getKey(), entry.getValue().toArray());
+        }
+        return new CourseSearchIndex(docs, grams, codePrefixes);
+    }
+
+    // ============ 查詢 ============
+
+    /**
+     * 查詢名稱、代碼或教師包含關鍵字的課程 (不分大小寫)
+     * @param keyword 已去除前後空白的關鍵字 (不可為空)
+     * @return 符合的課程ID，依課程ID遞增
+     */
+    int[] search(String keyword) {
+        String query = keyword.toLowerCase();
+
+        // 代碼前綴完全命中，不需再確認
+        int[] prefixHits = codePrefixes.getOrDefault(query, EMPTY);
+
+        if (query.length() == 1) {
+            // 單一字元的unigram串列即為精確結果
+            return grams.getOrDefault(gramKey(query.charAt(0)), EMPTY);
+        }
+
+        // 取出所有bigram串列，由短到長交集
+        int gramCount = query.length() - 1;
+        int[][] lists = new int[gramCount][];
+        for (int i = 0; i < gramCount; i++) {
+            int[] list = grams.get(gramKey(query.charAt(i), query.charAt(i + 1)));
+            if (list == null) {
+                return prefixHits;
+            }
+            lists[i] = list;
+        }
+        Arrays.sort(lists, Comparator.comparingInt(list -> list.length));
+        int[] candidates = lists[0];
+        for (int i = 1; i < lists.length && candidates.length > 0; i++) {
+            candidates = intersect(candidates, lists[i]);
+        }
+
+        // bigram全數出現不代表連續出現，逐一以預先轉小寫的欄位確認
+        int[] result = new int[candidates.length];
+        int count = 0;
+        int p = 0;
+        for (int courseId : candidates) {
+            while (p < prefixHits.length && prefixHits[p] < courseId) {
+                p++;
+            }
+            boolean verified = (p < prefixHits.length && prefixHits[p] == courseId)
+                               || docs.get(courseId).contains(query);
+            if (verified) {
+                result[count++] = courseId;
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    int size() {
+        return docs.size();
+    }
+
+    // ============ 私有輔助方法 ============
+
+    private static int gramKey(char c) {
+        return c;
+    }
+
+    private static int gramKey(char first, char second) {
+        // 兩個字元組成的鍵不會與單一字元的鍵 (0~65535) 重複
+        return (first << 16) | second;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] out = new int[Math.min(a.length, b.length)];
+        int i = 0, j = 0, n = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                out[n++] = a[i];
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    // ============ 索引文件 ============
+
+    /**
+     * 一門課程的可搜尋欄位 (建索引時轉小寫一次)
+     */
+    private static final class Doc {
+        final int courseId;
+        final String name;
+        final String code;
+        final String teacher;
+
+        Doc(Course course) {
+            this.courseId = course.getCourseId();
+            this.name = lower(course.getName());
+            this.code = lower(course.getCourseCode());
+            this.teacher = lower(course.getTeacher());
+        }
+
+        boolean contains(String query) {
+            return name.contains(query) || code.contains(query) || teacher.contains(query);
+        }
+
+        /**
+         * 各欄位分別產生unigram與bigram (不跨欄位組合)
+         */
+        Set<Integer> gramKeys() {
+            Set<Integer> keys = new HashSet<>();
+            addGrams(keys, name);
+            addGrams(keys, code);
+            addGrams(keys, teacher);
+            return keys;
+        }
+
+        Set<String> codePrefixes() {
+            Set<String> prefixes = new HashSet<>();
+            for (int i = 1; i <= code.length(); i++) {
+                prefixes.add(code.substring(0, i));
+            }
+            return prefixes;
+        }
+
+        private static void addGrams(Set<Integer> keys, String field) {
+            for (int i = 0; i < field.length(); i++) {
+                keys.add(gramKey(field.charAt(i)));
+                if (i + 1 < field.length()) {
+                    keys.add(gramKey(field.charAt(i), field.charAt(i + 1)));
+                }
+            }
+        }
+
+        private static String lower(String value) {
+            return value != null ? value.toLowerCase() : "";
+        }
+    }
+
+    /**
+     * 建索引時使用的可成長int陣列
+     */
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void addIfLast(int value) {
+            if (size > 0 && values[size - 1] == value) {
+                return;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
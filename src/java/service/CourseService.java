@@ -8,12 +8,28 @@ package service;
 
 import entity.Student;
 import entity.Course;
+import entity.CourseSet;
+import entity.WeeklySlots;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 import java.io.*;
+import java.sql.SQLException;
 import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -29,62 +45,158 @@ public class CourseService {
     private static final int MAX_CREDITS = 25;  // 每學期最大學分限制
     private static final int MIN_CREDITS = 12;  // 每學期最小學分限制
     
+    // 共用執行緒池設定 (可用系統屬性覆寫)
+    private static final int EXECUTOR_SIZE = Integer.getInteger("coursedb.executor.size",
+        Math.max(2, Runtime.getRuntime().availableProcessors()));
+    private static final int EXECUTOR_QUEUE_CAPACITY = Integer.getInteger("coursedb.executor.queueCapacity", 1000);
+    // 佇列已滿時的處理方式：CALLER_RUNS (由呼叫端執行)、ABORT (拒絕)、DISCARD_OLDEST (捨棄最舊的工作)
+    private static final String EXECUTOR_REJECTION_POLICY =
+        System.getProperty("coursedb.executor.rejectionPolicy", "CALLER_RUNS");
+    
+    // CSV匯出的寫出緩衝區大小 (字元)
+    private static final int CSV_BUFFER_SIZE = 16 * 1024;
+    
+    // 非同步搜尋的預設時限 (毫秒)
+    private static final long DEFAULT_SEARCH_TIMEOUT_MILLIS = 2000L;
+    
+    // 課程分頁：每頁筆數上限，課程數快取的存活時間 (課程目錄版本改變時也會重新計算)
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int MAX_CACHED_COUNTS = 1000;  // 快取課程數的篩選條件組合上限 (超過時整個清空)
+    private static final long PAGE_COUNT_TTL_MILLIS = Long.getLong("coursedb.page.countTtlMillis", 60000L);
+    
+    // 效能統計：各服務操作的計時器
+    private static final OperationMetrics.Timer SEARCH_TIMER = OperationMetrics.timer("service.searchCourses");
+    private static final OperationMetrics.Timer SEARCH_ASYNC_TIMER = OperationMetrics.timer("service.searchCoursesAsync");
+    private static final OperationMetrics.Timer ENROLL_TIMER = OperationMetrics.timer("service.enrollCourse");
+    private static final OperationMetrics.Timer ENROLL_BATCH_TIMER = OperationMetrics.timer("service.enrollCourses");
+    private static final OperationMetrics.Timer DROP_TIMER = OperationMetrics.timer("service.dropCourse");
+    private static final OperationMetrics.Timer LEAVE_WAITLIST_TIMER = OperationMetrics.timer("service.leaveWaitlist");
+    private static final OperationMetrics.Timer STUDENT_COURSES_TIMER = OperationMetrics.timer("service.getStudentCourses");
+    private static final OperationMetrics.Timer REPORT_TIMER = OperationMetrics.timer("service.generateCourseReport");
+    private static final OperationMetrics.Timer FIND_COURSES_TIMER = OperationMetrics.timer("service.findCourses");
+    
+    // ============ 單例模式實作 (整個應用程式共用) ============
+    private static CourseService instance;
+    
     // 服務物件
     private DatabaseManager dbManager;
-    private ExecutorService executor;  // 執行緒池，展示Concurrency技術
+    private CourseCatalog catalog;     // 應用程式共用的課程目錄快取
+    private PrerequisiteGraph prerequisites;  // 先修課程圖 (預先計算遞移先修集合)
+    private SeatLedger seatLedger;     // 記憶體座位帳本 (未啟用時為null)
+    private Waitlist waitlist;         // 課程候補名單
+    private AdmissionControl admission;  // 准入控制 (令牌桶限流)
+    private AuditLogWriter auditLog;   // 操作日誌寫入器 (背景批次寫檔)
+    private ThreadPoolExecutor executor;  // 共用執行緒池，展示Concurrency技術
+    
+    // 進行中的搜尋：關鍵字 (小寫) → 共用的計算；呼叫者 → 最新一次搜尋
+    private final ConcurrentHashMap<String, InFlightSearch> inFlightSearches = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Object, CompletableFuture<List<Course>>> latestSearches = new ConcurrentHashMap<>();
+    
+    // 符合篩選條件的課程數快取 (分頁顯示用)：篩選條件 → 課程數
+    private final ConcurrentHashMap<CourseFilter, CachedCount> courseCounts = new ConcurrentHashMap<>();
     
     // ============ 建構子 ============
     
     /**
-     * 建構子 - 初始化服務所需的物件
-     * 使用ExecutorService展示多執行緒並發處理能力
+     * 私有建構子 - 初始化服務所需的物件
+     * 整個應用程式只建立一個有界的執行緒池，不會隨畫面數量增加
      */
-    public CourseService() {
+    private CourseService() {
         this.dbManager = DatabaseManager.getInstance();
-        // 建立固定大小的執行緒池 (展示Java Concurrency)
-        this.executor = Executors.newFixedThreadPool(3);
+        this.catalog = CourseCatalog.getInstance();
+        this.prerequisites = PrerequisiteGraph.getInstance();
+        this.seatLedger = initSeatLedger();
+        if (seatLedger != null) {
+            catalog.useSeatLedger(seatLedger);
+        }
+        this.waitlist = Waitlist.getInstance();
+        this.admission = AdmissionControl.getInstance();
+        this.auditLog = AuditLogWriter.getInstance();
+        this.executor = createExecutor();
+        registerGauges();
         
-        LOGGER.info("CourseService 初始化完成，執行緒池大小：3");
+        LOGGER.info(String.format("CourseService 初始化完成，執行緒池大小：%d，佇列上限：%d，滿載處理：%s",
+                   EXECUTOR_SIZE, EXECUTOR_QUEUE_CAPACITY, EXECUTOR_REJECTION_POLICY));
+    }
+    
+    /**
+     * 取得CourseService的唯一實例
+     * @return CourseService實例
+     */
+    public static synchronized CourseService getInstance() {
+        if (instance == null) {
+            instance = new CourseService();
+        }
+        return instance;
+    }
+    
+    /**
+     * 關閉並釋放唯一實例 (應用程式卸載時呼叫)，尚未建立時不做任何事
+     */
+    public static synchronized void shutdownInstance() {
+        if (instance != null) {
+            instance.shutdown();
+            instance = null;
+        }
     }
     
     // ============ 課程搜尋方法 (展示多執行緒和Lambda) ============
     
+    /**
+     * 非同步搜尋課程 (預設時限，不追蹤呼叫者)
+     * 
+     * @param keyword 搜尋關鍵字
+     * @return 搜尋結果的Future
+     */
+    public CompletableFuture<List<Course>> searchCoursesAsync(String keyword) {
+        return searchCoursesAsync(null, keyword, DEFAULT_SEARCH_TIMEOUT_MILLIS);
+    }
+    
     /**
      * 非同步搜尋課程
-     * 展示Java Concurrency和Lambda表達式的應用
+     * 同一位呼叫者送出新的搜尋時，取消他尚未完成的舊搜尋；
+     * 同時進行中的相同關鍵字只計算一次，各呼叫者取得各自的課程複本
      * 
+     * @param requesterKey 呼叫者識別 (已登入時為學生ID，否則為Session ID)，null 表示不取消舊搜尋
      * @param keyword 搜尋關鍵字
-     * @return Future物件，可以取得搜尋結果
+     * @param timeoutMillis 時限 (毫秒)，逾時以 TimeoutException 結束
+     * @return 搜尋結果的Future，被較新的搜尋取代時會被取消，超出流量限制時以 AdmissionRejectedException 結束
      */
-    public Future<List<Course>> searchCoursesAsync(String keyword) {
-        // 使用Lambda表達式和Future進行非同步處理
-        return executor.submit(() -> {
+    public CompletableFuture<List<Course>> searchCoursesAsync(Object requesterKey, String keyword,
+                                                              long timeoutMillis) {
+        CompletableFuture<List<Course>> result;
+        if (keyword == null || keyword.trim().isEmpty()) {
+            result = CompletableFuture.completedFuture(catalog.getCourses());
+        } else {
             try {
-                // 模擬搜尋處理時間
-                Thread.sleep(100);
-                
-                List<Course> allCourses = dbManager.getAllCourses();
-                List<Course> results = new ArrayList<>();
-                
-                // 使用Stream API進行篩選 (展示Lambda和Streams)
-                for (Course course : allCourses) {
-                    if (course.matches(keyword)) {
-                        results.add(course);
+                admission.admitOrThrow(AdmissionControl.Operation.SEARCH, requesterKey);
+            } catch (AdmissionRejectedException e) {
+                // 超出流量限制：不進入執行緒池，也不取消進行中的搜尋
+                CompletableFuture<List<Course>> rejected = new CompletableFuture<>();
+                rejected.completeExceptionally(e);
+                return rejected;
+            }
+            long start = System.nanoTime();
+            result = joinSearch(keyword.trim()).orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+            result.whenComplete((courses, error) -> {
+                // 被較新的搜尋取代的不列入統計
+                if (!(error instanceof CancellationException)) {
+                    if (error != null) {
+                        SEARCH_ASYNC_TIMER.error();
                     }
+                    SEARCH_ASYNC_TIMER.stop(start);
                 }
-                
-                LOGGER.info("非同步搜尋完成：關鍵字 '" + keyword + "' 找到 " + results.size() + " 門課程");
-                return results;
-                
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                LOGGER.log(Level.WARNING, "搜尋被中斷", e);
-                return new ArrayList<>();
-            } catch (Exception e) {
-                LOGGER.log(Level.SEVERE, "搜尋過程發生錯誤", e);
-                return new ArrayList<>();
+            });
+        }
+        
+        if (requesterKey != null) {
+            CompletableFuture<List<Course>> previous = latestSearches.put(requesterKey, result);
+            if (previous != null && previous != result) {
+                previous.cancel(false);
             }
-        });
+            result.whenComplete((courses, error) -> latestSearches.remove(requesterKey, result));
+        }
+        return result;
     }
     
     /**
@@ -93,37 +205,37 @@ public class CourseService {
      * @return 課程列表
      */
     public List<Course> searchCourses(String keyword) {
+        if (keyword != null && !keyword.trim().isEmpty()) {
+            admission.admitOrThrow(AdmissionControl.Operation.SEARCH, null);
+        }
+        long start = System.nanoTime();
         try {
-            List<Course> allCourses = dbManager.getAllCourses();
-            List<Course> results = new ArrayList<>();
-            
             if (keyword == null || keyword.trim().isEmpty()) {
-                return allCourses;
+                return catalog.getCourses();
             }
             
-            // 進行關鍵字搜尋
-            for (Course course : allCourses) {
-                if (course.matches(keyword.trim())) {
-                    results.add(course);
-                }
-            }
+            // 以課程目錄的倒排索引進行關鍵字搜尋
+            List<Course> results = catalog.search(keyword.trim());
             
             LOGGER.info("同步搜尋完成：關鍵字 '" + keyword + "' 找到 " + results.size() + " 門課程");
             return results;
             
         } catch (Exception e) {
+            SEARCH_TIMER.error();
             LOGGER.log(Level.SEVERE, "搜尋課程失敗", e);
             return new ArrayList<>();
+        } finally {
+            SEARCH_TIMER.stop(start);
         }
     }
     
     /**
-     * 取得所有課程
+     * 取得所有課程 (由課程目錄快取提供，不需每次查詢資料庫)
      * @return 課程列表
      */
     public List<Course> getAllCourses() {
         try {
-            return dbManager.getAllCourses();
+            return catalog.getCourses();
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "取得課程列表失敗", e);
             return new ArrayList<>();
@@ -159,6 +271,54 @@ public class CourseService {
         return results;
     }
     
+    /**
+     * 依篩選條件取得一頁可選課程 (依課程代碼排序的 keyset 分頁)
+     * 關鍵字、系所、類型、名額與學分範圍由資料庫以一個查詢篩選，每次只查詢一頁
+     * (多讀一筆判斷是否還有下一頁)，符合條件的總數另外快取
+     * 
+     * @param requesterKey 呼叫者識別 (已登入時為學生ID，否則為Session ID)，用於關鍵字搜尋的限流，可為null
+     * @param filter 篩選條件，null 表示列出所有可選課程
+     * @param keyCode 鍵值：往後翻時為目前這一頁最後一門的代碼，往前翻時為第一門的代碼；null 表示第一頁或最後一頁
+     * @param forward true 往後翻，false 往前翻
+     * @param pageSize 每頁筆數
+     * @return 這一頁 (選課人數以課程目錄的最新人數為準)
+     * @throws AdmissionRejectedException 關鍵字搜尋超出流量限制
+     */
+    public CoursePage findCourses(Object requesterKey, CourseFilter filter, String keyCode,
+                                  boolean forward, int pageSize) {
+        if (filter != null && filter.hasKeyword()) {
+            admission.admitOrThrow(AdmissionControl.Operation.SEARCH, requesterKey);
+        }
+        long start = System.nanoTime();
+        try {
+            int size = Math.max(1, Math.min(MAX_PAGE_SIZE, pageSize));
+            List<Course> rows = dbManager.findCourses(filter, keyCode, forward, size + 1);
+            
+            // 多讀到的一筆只用來判斷另一方向是否還有課程
+            boolean more = rows.size() > size;
+            if (more) {
+                rows = forward ? rows.subList(0, size) : rows.subList(1, rows.size());
+            }
+            // 「只顯示有名額」由查詢與計數以同一個條件篩選，這裡只更新顯示的人數，
+            // 不再剔除資料列 (否則頁面筆數與總數對不上)；已額滿的課程選課時會轉入候補
+            List<Course> courses = new ArrayList<>(rows.size());
+            for (Course course : rows) {
+                courses.add(catalog.withSeats(course));
+            }
+            
+            boolean hasPrevious = forward ? keyCode != null : more;
+            boolean hasNext = forward ? more : keyCode != null;
+            return new CoursePage(courses, countCourses(filter), hasPrevious, hasNext);
+            
+        } catch (Exception e) {
+            FIND_COURSES_TIMER.error();
+            LOGGER.log(Level.SEVERE, "篩選課程失敗：" + filter, e);
+            return CoursePage.empty();
+        } finally {
+            FIND_COURSES_TIMER.stop(start);
+        }
+    }
+    
     // ============ 學生選課業務邏輯 (展示業務規則和異常處理) ============
     
     /**
@@ -170,6 +330,7 @@ public class CourseService {
      * @return 選課結果訊息
      */
     public String enrollCourse(Student student, Course course) {
+        long start = System.nanoTime();
         try {
             // 輸入驗證
             if (student == null) {
@@ -180,38 +341,62 @@ public class CourseService {
                 return "選課失敗：課程資訊不存在";
             }
             
+            // 0. 已在候補名單中：只回報目前順位，不再跑一次選課流程
+            int position = waitlist.getPosition(student.getStudentId(), course.getCourseId());
+            if (position > 0) {
+                return "課程已額滿，您目前在候補名單第 " + position + " 位";
+            }
+            
+            // 准入控制 (候補順位只查記憶體，不列入限流)：超出流量時在碰資料庫之前就回覆
+            String rejection = admission.tryAdmit(AdmissionControl.Operation.ENROLL, student.getStudentId());
+            if (rejection != null) {
+                return "選課失敗：" + rejection;
+            }
+            applyPromotions(student);
+            
             // 1. 檢查學分限制
+            String blocked = null;
             if (!student.canEnrollMoreCredits(course.getCredits())) {
-                return String.format("選課失敗：超過學分上限 (%d 學分)，目前已選 %d 學分", 
-                                   MAX_CREDITS, student.getTotalCredits());
+                blocked = String.format("選課失敗：超過學分上限 (%d 學分)，目前已選 %d 學分", 
+                                      MAX_CREDITS, student.getTotalCredits());
             }
             
-            // 2. 檢查課程是否已滿
-            if (!course.hasAvailableSlots()) {
-                return "選課失敗：課程已額滿 (" + course.getCurrentStudents() + "/" + 
-                       course.getMaxStudents() + ")";
+            // 2. 檢查衝堂 (課程與學生已佔用的時段遮罩做一次AND)
+            Course latest = catalog.getCourse(course.getCourseId());
+            WeeklySlots slots = latest != null ? latest.getTimeSlots() : course.getTimeSlots();
+            WeeklySlots occupied = occupiedSlots(student);
+            if (blocked == null && slots.intersects(occupied)) {
+                blocked = "選課失敗：上課時間與已選課程衝堂 (" + course.getTimeSchedule() + ")";
             }
             
-            // 3. 檢查是否已選過此課程
-            if (dbManager.isEnrolled(student.getStudentId(), course.getCourseId())) {
-                return "選課失敗：您已經選過此課程";
+            // 已選過的課程一定與自己的時段衝堂：未通過時先確認是否重複選課，回覆正確的原因
+            if (blocked != null) {
+                return isEnrolled(student, course) ? "選課失敗：您已經選過此課程" : blocked;
             }
             
-            // 4. 檢查必修課程的特殊規則
-            if ("必修".equals(course.getType())) {
-                String prerequisiteCheck = checkPrerequisites(student, course);
-                if (prerequisiteCheck != null) {
-                    return prerequisiteCheck;
-                }
+            // 3. 檢查先修課程 (遞移先修集合是否為已修課程的子集合)
+            String prerequisiteCheck = checkPrerequisites(student, course);
+            if (prerequisiteCheck != null) {
+                return prerequisiteCheck;
+            }
+            
+            // 4. 以目錄快取中的最新人數顯示名額 (只用於訊息，是否額滿以選課結果為準)
+            if (latest != null) {
+                course.setCurrentStudents(latest.getCurrentStudents());
             }
             
-            // 5. 執行選課操作 (使用synchronized確保執行緒安全)
+            // 5. 執行選課操作 (重複選課與名額由資料庫原子性檢查)，確定額滿才加入候補名單
             String result = performEnrollment(student, course);
+            if ("課程已額滿".equals(result)) {
+                return joinWaitlist(student, course);
+            }
             
             // 6. 如果選課成功，記錄操作並更新學生資訊
             if ("選課成功".equals(result)) {
                 student.addCredits(course.getCredits());
+                student.setOccupiedSlots(occupied.union(slots));
                 course.addStudent();
+                catalog.applySeatDelta(course.getCourseId(), 1);
                 
                 // 記錄操作日誌
                 logOperation("ENROLL", student.getStudentCode(), course.getCourseCode(), "成功");
@@ -223,18 +408,161 @@ public class CourseService {
             return result;
             
         } catch (Exception e) {
+            ENROLL_TIMER.error();
             LOGGER.log(Level.SEVERE, "選課過程發生異常", e);
             return "選課失敗：系統錯誤，請稍後再試";
+        } finally {
+            ENROLL_TIMER.stop(start);
+        }
+    }
+    
+    /**
+     * 批次選課 (盡量選課模式)
+     * @param student 學生物件
+     * @param courses 要選的課程列表
+     * @return 每門課程的選課結果
+     */
+    public List<EnrollmentResult> enrollCourses(Student student, List<Course> courses) {
+        return enrollCourses(student, courses, EnrollmentMode.BEST_EFFORT);
+    }
+    
+    /**
+     * 批次選課 - 整個購物車在同一個交易中完成
+     * 學分、名額與重複選課以集合查詢一次檢查，不必每門課各跑一次
+     * 
+     * @param student 學生物件
+     * @param courses 要選的課程列表
+     * @param mode 全部成功才提交或盡量選課
+     * @return 每門課程的選課結果 (依輸入順序)
+     */
+    public List<EnrollmentResult> enrollCourses(Student student, List<Course> courses, EnrollmentMode mode) {
+        long start = System.nanoTime();
+        List<EnrollmentResult> results = new ArrayList<>();
+        if (courses == null || courses.isEmpty()) {
+            return results;
+        }
+        
+        try {
+            if (student == null) {
+                for (Course course : courses) {
+                    results.add(new EnrollmentResult(course, false, "選課失敗：學生資訊不存在"));
+                }
+                return results;
+            }
+            
+            // 整個購物車只算一次准入
+            String rejection = admission.tryAdmit(AdmissionControl.Operation.ENROLL, student.getStudentId());
+            if (rejection != null) {
+                for (Course course : courses) {
+                    results.add(new EnrollmentResult(course, false, "選課失敗：" + rejection));
+                }
+                return results;
+            }
+            
+            applyPromotions(student);
+            
+            // 購物車中重複的課程只選一次，其餘的在結果中標示為重複
+            List<Course> cart = new ArrayList<>();
+            Set<Integer> seen = new HashSet<>();
+            for (Course course : courses) {
+                if (seen.add(course.getCourseId())) {
+                    cart.add(course);
+                }
+            }
+            
+            // 先在記憶體中檢查衝堂與先修條件，未通過的課程不送到資料庫
+            List<Integer> courseIds = new ArrayList<>();
+            Map<Integer, String> rejected = new HashMap<>();
+            WeeklySlots occupied = occupiedSlots(student);
+            WeeklySlots planned = occupied;
+            for (Course course : cart) {
+                String prerequisiteCheck = checkPrerequisites(student, course);
+                if (course.getTimeSlots().intersects(occupied)) {
+                    // 已選過的課程一定與自己的時段衝堂，只在衝堂時才確認是否重複選課
+                    rejected.put(course.getCourseId(), isEnrolled(student, course)
+                        ? "選課失敗：您已經選過此課程"
+                        : "選課失敗：上課時間與已選課程衝堂 (" + course.getTimeSchedule() + ")");
+                } else if (course.getTimeSlots().intersects(planned)) {
+                    rejected.put(course.getCourseId(), "選課失敗：上課時間與同批次其他課程衝堂 (" + course.getTimeSchedule() + ")");
+                } else if (prerequisiteCheck != null) {
+                    rejected.put(course.getCourseId(), prerequisiteCheck);
+                } else {
+                    courseIds.add(course.getCourseId());
+                    planned = planned.union(course.getTimeSlots());
+                }
+            }
+            
+            Map<Integer, String> dbResults;
+            if (!rejected.isEmpty() && mode == EnrollmentMode.ALL_OR_NOTHING) {
+                dbResults = new HashMap<>();
+            } else if (seatLedger != null) {
+                dbResults = enrollCoursesWithLedger(student, cart, courseIds, mode);
+            } else {
+                dbResults = dbManager.enrollCourses(student.getStudentId(), courseIds,
+                                                    student.getTotalCredits(), MAX_CREDITS, mode);
+            }
+            
+            Set<Integer> reported = new HashSet<>();
+            for (Course course : courses) {
+                if (!reported.add(course.getCourseId())) {
+                    results.add(new EnrollmentResult(course, false, "未選課：購物車中重複的課程"));
+                    continue;
+                }
+                String message = rejected.get(course.getCourseId());
+                boolean success = false;
+                
+                if (message == null) {
+                    String dbResult = dbResults.get(course.getCourseId());
+                    success = "選課成功".equals(dbResult);
+                    if (dbResult == null) {
+                        message = "未選課：同批次其他課程無法選課";
+                    } else if (success || dbResult.startsWith("未選課")) {
+                        message = dbResult;
+                    } else {
+                        message = "選課失敗：" + dbResult;
+                    }
+                }
+                
+                if (success) {
+                    student.addCredits(course.getCredits());
+                    occupied = occupied.union(course.getTimeSlots());
+                    student.setOccupiedSlots(occupied);
+                    course.addStudent();
+                    catalog.applySeatDelta(course.getCourseId(), 1);
+                    logOperation("ENROLL", student.getStudentCode(), course.getCourseCode(), "成功");
+                }
+                results.add(new EnrollmentResult(course, success, message));
+            }
+            
+            LOGGER.info(String.format("學生 %s 批次選課 (%s)：%d 門課程",
+                       student.getStudentCode(), mode, courses.size()));
+            
+        } catch (Exception e) {
+            ENROLL_BATCH_TIMER.error();
+            LOGGER.log(Level.SEVERE, "批次選課過程發生異常", e);
+            results.clear();
+            for (Course course : courses) {
+                results.add(new EnrollmentResult(course, false, "選課失敗：系統錯誤，請稍後再試"));
+            }
+        } finally {
+            ENROLL_BATCH_TIMER.stop(start);
         }
+        
+        return results;
     }
     
     /**
-     * 執行選課操作 (同步方法確保執行緒安全)
+     * 執行選課操作
+     * 不需要同步：資料庫的唯一約束與條件式UPDATE保證不重複選課也不超收
+     * 
      * @param student 學生物件
      * @param course 課程物件
      * @return 操作結果
      */
-    private synchronized String performEnrollment(Student student, Course course) {
+    private String performEnrollment(Student student, Course course) {
+        if (seatLedger != null) {
+            return seatLedger.enroll(student.getStudentId(), course.getCourseId());
+        }
         return dbManager.enrollCourse(student.getStudentId(), course.getCourseId());
     }
     
@@ -247,24 +575,55 @@ public class CourseService {
      * @return 退選結果訊息
      */
     public String dropCourse(Student student, Course course) {
+        long start = System.nanoTime();
         try {
             // 輸入驗證
             if (student == null || course == null) {
                 return "退選失敗：資料不完整";
             }
             
+            String rejection = admission.tryAdmit(AdmissionControl.Operation.DROP, student.getStudentId());
+            if (rejection != null) {
+                return "退選失敗：" + rejection;
+            }
+            
+            applyPromotions(student);
+            
             // 檢查是否確實有選此課程
-            if (!dbManager.isEnrolled(student.getStudentId(), course.getCourseId())) {
+            if (!isEnrolled(student, course)) {
                 return "退選失敗：您尚未選擇此課程";
             }
             
-            // 執行退選操作
-            String result = dbManager.dropCourse(student.getStudentId(), course.getCourseId());
+            // 執行退選操作；有人候補時釋出的名額直接由候補名單遞補
+            int courseId = course.getCourseId();
+            int promoted = 0;
+            String result;
+            if (seatLedger != null) {
+                DropResult drop = dropWithLedger(student.getStudentId(), courseId);
+                result = drop.getMessage();
+                promoted = drop.getPromotedStudentId();
+            } else if (waitlist.size(courseId) > 0) {
+                DropResult drop = dbManager.dropCourseAndPromote(student.getStudentId(), courseId, MAX_CREDITS);
+                waitlist.removeAll(courseId, drop.getLeftWaitlist());
+                result = drop.getMessage();
+                promoted = drop.getPromotedStudentId();
+            } else {
+                result = dbManager.dropCourse(student.getStudentId(), courseId);
+            }
             
             // 如果退選成功，更新學生和課程資訊
             if ("退選成功".equals(result)) {
                 student.removeCredits(course.getCredits());
-                course.removeStudent();
+                // 既有資料可能有重疊的課程，不直接扣除時段，下次選課時重新計算
+                student.setOccupiedSlots(null);
+                if (promoted > 0) {
+                    // 名額由候補學生遞補，選課人數不變
+                    waitlist.recordPromotion(promoted, courseId);
+                    logOperation("PROMOTE", "ID " + promoted, course.getCourseCode(), "由候補遞補");
+                } else {
+                    course.removeStudent();
+                    catalog.applySeatDelta(courseId, -1);
+                }
                 
                 // 記錄操作日誌
                 logOperation("DROP", student.getStudentCode(), course.getCourseCode(), "成功");
@@ -276,27 +635,207 @@ public class CourseService {
             return result;
             
         } catch (Exception e) {
+            DROP_TIMER.error();
             LOGGER.log(Level.SEVERE, "退選過程發生異常", e);
             return "退選失敗：系統錯誤，請稍後再試";
+        } finally {
+            DROP_TIMER.stop(start);
+        }
+    }
+    
+    // ============ 候補名單 ============
+    
+    /**
+     * 查詢學生在課程候補名單中的順位 (只讀記憶體)
+     * @param student 學生物件
+     * @param course 課程物件
+     * @return 順位 (由1開始)，不在候補名單中時返回0
+     */
+    public int getWaitlistPosition(Student student, Course course) {
+        if (student == null || course == null) {
+            return 0;
         }
+        return waitlist.getPosition(student.getStudentId(), course.getCourseId());
     }
     
     /**
-     * 取得學生已選課程
+     * 退出課程候補名單
      * @param student 學生物件
-     * @return 已選課程列表
+     * @param course 課程物件
+     * @return 結果訊息
+     */
+    public String leaveWaitlist(Student student, Course course) {
+        long start = System.nanoTime();
+        try {
+            if (student == null || course == null) {
+                return "取消候補失敗：資料不完整";
+            }
+            if (!waitlist.leave(student.getStudentId(), course.getCourseId())) {
+                return "取消候補失敗：您不在此課程的候補名單中";
+            }
+            logOperation("UNWAITLIST", student.getStudentCode(), course.getCourseCode(), "成功");
+            return "已取消候補";
+        } catch (Exception e) {
+            LEAVE_WAITLIST_TIMER.error();
+            LOGGER.log(Level.SEVERE, "取消候補過程發生異常", e);
+            return "取消候補失敗：系統錯誤，請稍後再試";
+        } finally {
+            LEAVE_WAITLIST_TIMER.stop(start);
+        }
+    }
+    
+    /**
+     * 課程額滿時加入候補名單 (學分、衝堂與先修條件都已通過)
+     */
+    private String joinWaitlist(Student student, Course course) throws SQLException {
+        String full = "選課失敗：課程已額滿 (" + course.getCurrentStudents() + "/" + course.getMaxStudents() + ")";
+        if (isEnrolled(student, course)) {
+            return "選課失敗：您已經選過此課程";
+        }
+        int position = waitlist.join(student.getStudentId(), course.getCourseId());
+        if (position < 0) {
+            return full + "，候補名單也已額滿";
+        }
+        if (position == 0) {
+            return full;
+        }
+        logOperation("WAITLIST", student.getStudentCode(), course.getCourseCode(), "第 " + position + " 位");
+        return "課程已額滿 (" + course.getCurrentStudents() + "/" + course.getMaxStudents()
+             + ")，已加入候補名單第 " + position + " 位，有人退選時將自動遞補";
+    }
+    
+    /**
+     * 座位帳本模式退選，有人候補時由釋出的座位遞補
+     * (學生退選與批次選課退回已佔用的座位都走這裡，釋出的座位不會略過候補名單)
+     * @return 退選結果與遞補的學生 (候補名單已由 promoteWithLedger 更新)
+     */
+    private DropResult dropWithLedger(int studentId, int courseId) {
+        String result = seatLedger.drop(studentId, courseId);
+        int promoted = 0;
+        if ("退選成功".equals(result) && waitlist.size(courseId) > 0) {
+            promoted = promoteWithLedger(courseId);
+        }
+        return new DropResult(result, promoted, null);
+    }
+    
+    /**
+     * 座位帳本模式：退選釋出座位後依序遞補第一位仍符合條件的候補學生
+     * (帳本不在資料庫交易中，遞補緊接在退選之後進行，釋出的座位可能先被其他選課取走)
+     * 只有學生本身的原因 (學分、衝堂、已選過) 才移出候補名單；
+     * 課程已額滿或帳本寫入失敗時停止遞補，候補名單保持不變，等下一次退選
+     * @return 遞補的學生ID，沒有人遞補時返回0
+     */
+    private int promoteWithLedger(int courseId) {
+        try {
+            int candidate;
+            while ((candidate = waitlist.peekHead(courseId)) > 0) {
+                String blocker = ledgerPromotionBlocker(candidate, courseId);
+                if (blocker == null) {
+                    String result = seatLedger.enroll(candidate, courseId);
+                    if ("選課成功".equals(result)) {
+                        waitlist.leave(candidate, courseId);
+                        return candidate;
+                    }
+                    if (!"您已經選過此課程".equals(result)) {
+                        LOGGER.info("課程 " + courseId + " 無法遞補 (" + result + ")，候補名單維持不變");
+                        return 0;
+                    }
+                    blocker = result;
+                }
+                waitlist.leave(candidate, courseId);
+                LOGGER.info("候補學生 " + candidate + " 無法遞補課程 " + courseId + "：" + blocker);
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.SEVERE, "候補遞補失敗，課程ID: " + courseId, e);
+        }
+        return 0;
+    }
+    
+    /**
+     * 座位帳本模式的遞補條件：以帳本中的已選課程檢查學分上限與衝堂
+     * (資料庫的選課記錄比帳本晚寫回，不能用來檢查)
+     * @return 不能遞補的原因，null表示符合條件
+     */
+    private String ledgerPromotionBlocker(int studentId, int courseId) throws SQLException {
+        Course course = catalog.getCourse(courseId);
+        if (course == null) {
+            return "課程不存在";
+        }
+        StudentRosterCache.Roster roster = studentRoster(studentId);
+        if (roster.getTotalCredits() + course.getCredits() > MAX_CREDITS) {
+            return "超過學分上限 (" + MAX_CREDITS + " 學分)";
+        }
+        if (course.getTimeSlots().intersects(roster.getOccupiedSlots())) {
+            return "上課時間衝堂";
+        }
+        return null;
+    }
+    
+    /**
+     * 取得學生的已選課程與學分統計
+     * 座位帳本模式下由帳本的已選課程 (含尚未寫回的操作) 對應目錄中的課程資料，不查詢資料庫
+     */
+    private StudentRosterCache.Roster studentRoster(int studentId) throws SQLException {
+        if (seatLedger == null) {
+            return dbManager.getStudentRoster(studentId);
+        }
+        List<Course> courses = new ArrayList<>();
+        for (Integer courseId : seatLedger.getEnrolledCourses(studentId)) {
+            Course course = catalog.getCourse(courseId);
+            if (course != null) {
+                courses.add(course);
+            }
+        }
+        return new StudentRosterCache.Roster(courses);
+    }
+    
+    /**
+     * 學生被候補遞補選上的課程，在他下次選課或退選時補上學分與上課時段
+     */
+    private void applyPromotions(Student student) {
+        for (Integer courseId : waitlist.takePromotions(student.getStudentId())) {
+            Course promoted = catalog.getCourse(courseId);
+            if (promoted == null) {
+                student.setOccupiedSlots(null);
+                continue;
+            }
+            student.addCredits(promoted.getCredits());
+            if (student.getOccupiedSlots() != null) {
+                student.setOccupiedSlots(student.getOccupiedSlots().union(promoted.getTimeSlots()));
+            }
+        }
+    }
+    
+    /**
+     * 取得單一課程的最新資料 (由課程目錄快取提供，不查詢資料庫)
+     * @param courseId 課程ID
+     * @return 課程複本 (含最新選課人數)，不存在時返回null
+     */
+    public Course getCourse(int courseId) {
+        return catalog.getCourse(courseId);
+    }
+    
+    /**
+     * 取得學生已選課程 (由已選課程快取提供，同一頁面多次讀取只查詢一次資料庫；
+     * 座位帳本模式下取自帳本，包含尚未寫回資料庫的選課與退選)
+     * @param student 學生物件
+     * @return 已選課程列表 (複本，可以修改)
      */
     public List<Course> getStudentCourses(Student student) {
+        long start = System.nanoTime();
         try {
             if (student == null) {
                 return new ArrayList<>();
             }
             
-            return dbManager.getStudentCourses(student.getStudentId());
+            return studentRoster(student.getStudentId()).copyCourses();
             
         } catch (Exception e) {
+            STUDENT_COURSES_TIMER.error();
             LOGGER.log(Level.SEVERE, "取得學生課程失敗", e);
             return new ArrayList<>();
+        } finally {
+            STUDENT_COURSES_TIMER.stop(start);
         }
     }
     
@@ -309,13 +848,8 @@ public class CourseService {
      */
     public int calculateTotalCredits(Student student) {
         try {
-            List<Course> courses = getStudentCourses(student);
-            int totalCredits = 0;
-            
-            // 累加所有課程的學分
-            for (Course course : courses) {
-                totalCredits += course.getCredits();
-            }
+            // 學分在載入已選課程時已經累加好
+            int totalCredits = studentRoster(student.getStudentId()).getTotalCredits();
             
             LOGGER.fine("學生 " + student.getStudentCode() + " 總學分：" + totalCredits);
             return totalCredits;
@@ -335,25 +869,29 @@ public class CourseService {
      */
     public String validateEnrollment(Student student) {
         try {
-            int totalCredits = calculateTotalCredits(student);
-            
-            if (totalCredits < MIN_CREDITS) {
-                return String.format("警告：學分不足 %d 學分 (目前：%d 學分，還需：%d 學分)", 
-                                   MIN_CREDITS, totalCredits, MIN_CREDITS - totalCredits);
-            } else if (totalCredits > MAX_CREDITS) {
-                return String.format("錯誤：超過學分上限 %d 學分 (目前：%d 學分，超出：%d 學分)", 
-                                   MAX_CREDITS, totalCredits, totalCredits - MAX_CREDITS);
-            } else {
-                return String.format("學分符合規定 (%d 學分，還可選：%d 學分)", 
-                                   totalCredits, MAX_CREDITS - totalCredits);
-            }
-            
+            return validateCredits(calculateTotalCredits(student));
         } catch (Exception e) {
             LOGGER.log(Level.WARNING, "驗證選課狀態失敗", e);
             return "無法驗證選課狀態";
         }
     }
     
+    /**
+     * 依已選學分產生選課狀態訊息
+     */
+    private static String validateCredits(int totalCredits) {
+        if (totalCredits < MIN_CREDITS) {
+            return String.format("警告：學分不足 %d 學分 (目前：%d 學分，還需：%d 學分)", 
+                               MIN_CREDITS, totalCredits, MIN_CREDITS - totalCredits);
+        } else if (totalCredits > MAX_CREDITS) {
+            return String.format("錯誤：超過學分上限 %d 學分 (目前：%d 學分，超出：%d 學分)", 
+                               MAX_CREDITS, totalCredits, totalCredits - MAX_CREDITS);
+        } else {
+            return String.format("學分符合規定 (%d 學分，還可選：%d 學分)", 
+                               totalCredits, MAX_CREDITS - totalCredits);
+        }
+    }
+    
     // ============ 檔案I/O功能 (展示Files, Input/Output Streams) ============
     
     /**
@@ -365,38 +903,11 @@ public class CourseService {
      * @return 是否匯出成功
      */
     public boolean exportStudentCoursesToCSV(Student student, String filePath) {
-        PrintWriter writer = null;
-        
-        try {
-            // 使用UTF-8編碼建立檔案寫入器
-            writer = new PrintWriter(new FileWriter(filePath, StandardCharsets.UTF_8));
-            
-            // 寫入BOM (Byte Order Mark) 讓Excel正確顯示中文
-            writer.write('\uFEFF');
+        // 使用try-with-resources確保檔案被正確關閉 (展示資源管理)
+        try (OutputStream out = new FileOutputStream(filePath)) {
+            long rows = exportStudentCoursesToCSV(student, out);
             
-            // 寫入CSV標題行
-            writer.println("課程代碼,課程名稱,學分數,開課系所,課程類型,授課教師,上課時間,教室");
-            
-            // 取得學生課程
-            List<Course> courses = getStudentCourses(student);
-            
-            // 寫入課程資料
-            for (Course course : courses) {
-                writer.printf("\"%s\",\"%s\",%d,\"%s\",\"%s\",\"%s\",\"%s\",\"%s\"%n",
-                    escapeCSVField(course.getCourseCode()),
-                    escapeCSVField(course.getName()),
-                    course.getCredits(),
-                    escapeCSVField(course.getDepartment()),
-                    escapeCSVField(course.getType()),
-                    escapeCSVField(course.getTeacher()),
-                    escapeCSVField(course.getTimeSchedule()),
-                    escapeCSVField(course.getClassroom())
-                );
-            }
-            
-            writer.flush();
-            
-            LOGGER.info("成功匯出學生 " + student.getStudentCode() + " 的選課記錄到 " + filePath);
+            LOGGER.info("成功匯出學生 " + student.getStudentCode() + " 的 " + rows + " 筆選課記錄到 " + filePath);
             return true;
             
         } catch (IOException e) {
@@ -405,15 +916,62 @@ public class CourseService {
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "匯出過程發生錯誤", e);
             return false;
-        } finally {
-            // 確保資源被正確關閉 (展示資源管理)
-            if (writer != null) {
-                try {
-                    writer.close();
-                } catch (Exception e) {
-                    LOGGER.log(Level.WARNING, "關閉檔案寫入器失敗", e);
-                }
-            }
+        }
+    }
+    
+    /**
+     * 將學生選課記錄以CSV格式寫到輸出串流 (例如HTTP回應)
+     * 由資料庫游標逐列寫出，不先組成整份內容
+     * 
+     * @param student 學生物件
+     * @param out 輸出串流 (不會被關閉)
+     * @return 匯出的列數
+     * @throws IOException 如果查詢或寫出失敗
+     */
+    public long exportStudentCoursesToCSV(Student student, OutputStream out) throws IOException {
+        Writer writer = csvWriter(out);
+        writeCsvRow(writer, "課程代碼", "課程名稱", "學分數", "開課系所", "課程類型", "授課教師", "上課時間", "教室");
+        
+        try {
+            long rows = dbManager.streamStudentCourses(student.getStudentId(), rs -> writeCsvRow(writer,
+                rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4),
+                rs.getString(5), rs.getString(6), rs.getString(7), rs.getString(8)));
+            writer.flush();
+            return rows;
+        } catch (SQLException e) {
+            throw new IOException("讀取選課記錄失敗", e);
+        }
+    }
+    
+    /**
+     * 匯出選課名單 (管理用，可達數十萬列)
+     * 由 student_course_view 以只能前進的游標逐列寫出，記憶體用量與列數無關
+     * 
+     * @param studentDepartment 學生系所，null 或空白表示全部
+     * @param courseCode 課程代碼，null 或空白表示全部
+     * @param out 輸出串流 (不會被關閉)
+     * @return 匯出的列數
+     * @throws IOException 如果查詢或寫出失敗
+     */
+    public long exportRosterToCSV(String studentDepartment, String courseCode, OutputStream out) throws IOException {
+        Writer writer = csvWriter(out);
+        writeCsvRow(writer, "學號", "姓名", "學生系所", "課程代碼", "課程名稱", "學分數",
+                    "課程類型", "授課教師", "上課時間", "教室", "選課時間");
+        
+        try {
+            long start = System.currentTimeMillis();
+            long rows = dbManager.streamRoster(trimToNull(studentDepartment), trimToNull(courseCode),
+                rs -> writeCsvRow(writer,
+                    rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4),
+                    rs.getString(5), rs.getString(6), rs.getString(7), rs.getString(8),
+                    rs.getString(9), rs.getString(10), rs.getString(11)));
+            writer.flush();
+            
+            LOGGER.info(String.format("匯出選課名單 (系所: %s, 課程: %s)：%d 列，%d 毫秒",
+                       studentDepartment, courseCode, rows, System.currentTimeMillis() - start));
+            return rows;
+        } catch (SQLException e) {
+            throw new IOException("讀取選課名單失敗", e);
         }
     }
     
@@ -425,6 +983,7 @@ public class CourseService {
      * @return 報告內容
      */
     public String generateCourseReport(Student student) {
+        long start = System.nanoTime();
         try {
             StringBuilder report = new StringBuilder();
             SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
@@ -439,14 +998,14 @@ public class CourseService {
             report.append("系    所：").append(student.getDepartment()).append("\n");
             report.append("-".repeat(60)).append("\n");
             
-            // 課程列表
-            List<Course> courses = getStudentCourses(student);
+            // 課程列表 (課程、學分統計與選課狀態都取自同一次查詢)
+            StudentRosterCache.Roster roster = studentRoster(student.getStudentId());
+            List<Course> courses = roster.copyCourses();
             report.append("已選課程 (共 ").append(courses.size()).append(" 門)：\n\n");
             
-            int totalCredits = 0;
+            int totalCredits = roster.getTotalCredits();
             for (int i = 0; i < courses.size(); i++) {
                 Course course = courses.get(i);
-                totalCredits += course.getCredits();
                 
                 report.append(String.format("%2d. %-10s %-25s %d學分 %-8s %s\n",
                     i + 1,
@@ -473,52 +1032,265 @@ public class CourseService {
             report.append("學分統計：\n");
             report.append("  總學分數：").append(totalCredits).append(" 學分\n");
             report.append("  剩餘可選：").append(MAX_CREDITS - totalCredits).append(" 學分\n");
-            report.append("  選課狀態：").append(validateEnrollment(student)).append("\n");
+            report.append("  選課狀態：").append(validateCredits(totalCredits)).append("\n");
             
             // 學分分布統計
             report.append("\n課程類型分布：\n");
-            int requiredCredits = 0, electiveCredits = 0, generalCredits = 0;
-            
-            for (Course course : courses) {
-                switch (course.getType()) {
-                    case "必修":
-                        requiredCredits += course.getCredits();
-                        break;
-                    case "選修":
-                        electiveCredits += course.getCredits();
-                        break;
-                    case "通識":
-                        generalCredits += course.getCredits();
-                        break;
-                }
-            }
-            
-            report.append("  必修課程：").append(requiredCredits).append(" 學分\n");
-            report.append("  選修課程：").append(electiveCredits).append(" 學分\n");
-            report.append("  通識課程：").append(generalCredits).append(" 學分\n");
+            report.append("  必修課程：").append(roster.getCredits("必修")).append(" 學分\n");
+            report.append("  選修課程：").append(roster.getCredits("選修")).append(" 學分\n");
+            report.append("  通識課程：").append(roster.getCredits("通識")).append(" 學分\n");
             
             report.append("=".repeat(60)).append("\n");
             
             return report.toString();
             
         } catch (Exception e) {
+            REPORT_TIMER.error();
             LOGGER.log(Level.SEVERE, "產生課程報告失敗", e);
             return "報告產生失敗：" + e.getMessage();
+        } finally {
+            REPORT_TIMER.stop(start);
         }
     }
     
     // ============ 私有輔助方法 ============
     
     /**
-     * 檢查先修課程條件
+     * 取得符合篩選條件的課程數：課程目錄版本未改變 (沒有新增、修改或停開課程)
+     * 且未超過存活時間時使用快取 (只顯示有名額時，總數可能落後存活時間內的選課)
+     */
+    private int countCourses(CourseFilter filter) {
+        CourseFilter key = filter != null ? new CourseFilter(filter) : new CourseFilter();
+        long version = catalog.isLoaded() ? catalog.getVersion() : -1;
+        long now = System.currentTimeMillis();
+        CachedCount cached = courseCounts.get(key);
+        if (cached != null && cached.catalogVersion == version && now - cached.countedAt < PAGE_COUNT_TTL_MILLIS) {
+            return cached.count;
+        }
+        int count = dbManager.countCourses(filter);
+        if (count < 0) {
+            // 查詢失敗時沿用舊的總數
+            return cached != null ? cached.count : 0;
+        }
+        if (courseCounts.size() >= MAX_CACHED_COUNTS) {
+            courseCounts.clear();
+        }
+        courseCounts.put(key, new CachedCount(version, now, count));
+        return count;
+    }
+    
+    /**
+     * 加入進行中的相同關鍵字搜尋，沒有則在共用執行緒池開始一個新的
+     * 所有等待者都放棄 (取消或逾時) 時，尚未開始執行的搜尋直接取消
+     */
+    private CompletableFuture<List<Course>> joinSearch(String keyword) {
+        String key = keyword.toLowerCase();
+        while (true) {
+            InFlightSearch search = inFlightSearches.get(key);
+            if (search == null) {
+                InFlightSearch created = new InFlightSearch();
+                search = inFlightSearches.putIfAbsent(key, created);
+                if (search == null) {
+                    search = created;
+                    created.shared.whenComplete((courses, error) -> inFlightSearches.remove(key, created));
+                    created.start(() -> catalog.search(keyword), executor);
+                }
+            }
+            
+            CompletableFuture<List<Course>> waiter = search.join();
+            if (waiter != null) {
+                return waiter;
+            }
+            // 剛好在所有等待者放棄時加入，改開始新的搜尋
+            inFlightSearches.remove(key, search);
+        }
+    }
+    
+    /**
+     * 依系統屬性建立共用執行緒池
+     */
+    private static ThreadPoolExecutor createExecutor() {
+        RejectedExecutionHandler handler;
+        switch (EXECUTOR_REJECTION_POLICY.trim().toUpperCase()) {
+            case "ABORT":
+                handler = new ThreadPoolExecutor.AbortPolicy();
+                break;
+            case "DISCARD_OLDEST":
+                handler = new ThreadPoolExecutor.DiscardOldestPolicy();
+                break;
+            case "CALLER_RUNS":
+                handler = new ThreadPoolExecutor.CallerRunsPolicy();
+                break;
+            default:
+                LOGGER.warning("未知的執行緒池滿載處理方式：" + EXECUTOR_REJECTION_POLICY + "，改用 CALLER_RUNS");
+                handler = new ThreadPoolExecutor.CallerRunsPolicy();
+        }
+        
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "course-service-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        
+        return new ThreadPoolExecutor(EXECUTOR_SIZE, EXECUTOR_SIZE, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(EXECUTOR_QUEUE_CAPACITY), threadFactory, handler);
+    }
+    
+    /**
+     * 啟用座位帳本 (系統屬性 coursedb.seatLedger.enabled=true)
+     * @return 座位帳本，未啟用或初始化失敗時返回null
+     */
+    private static SeatLedger initSeatLedger() {
+        if (!SeatLedger.isEnabled()) {
+            return null;
+        }
+        try {
+            return SeatLedger.getInstance();
+        } catch (IllegalStateException e) {
+            LOGGER.log(Level.SEVERE, "座位帳本無法啟用，改為直接寫入資料庫", e);
+            return null;
+        }
+    }
+    
+    /**
+     * 檢查學生是否已選某課程 (啟用座位帳本時不查詢資料庫)
+     */
+    private boolean isEnrolled(Student student, Course course) {
+        if (seatLedger != null) {
+            return seatLedger.isEnrolled(student.getStudentId(), course.getCourseId());
+        }
+        return dbManager.isEnrolled(student.getStudentId(), course.getCourseId());
+    }
+    
+    /**
+     * 取得學生已佔用的上課時段，尚未計算時由已選課程聯集後存回學生物件
+     * (每個Session只需查詢一次，之後隨選課成功更新、退選時清除；
+     * 尚未選課的學生同樣保存空的時段，查詢失敗時丟出例外，不保存)
+     */
+    private WeeklySlots occupiedSlots(Student student) throws SQLException {
+        WeeklySlots occupied = student.getOccupiedSlots();
+        if (occupied == null) {
+            occupied = studentRoster(student.getStudentId()).getOccupiedSlots();
+            student.setOccupiedSlots(occupied);
+        }
+        return occupied;
+    }
+    
+    /**
+     * 以座位帳本執行批次選課
+     * 全部成功模式下任一門失敗時，以退選流程退回本批已佔用的座位 (有人候補時遞補)
+     */
+    private Map<Integer, String> enrollCoursesWithLedger(Student student, List<Course> courses,
+                                                         List<Integer> courseIds, EnrollmentMode mode) {
+        Map<Integer, String> results = new HashMap<>();
+        List<Course> reserved = new ArrayList<>();
+        int credits = student.getTotalCredits();
+        
+        for (Course course : courses) {
+            if (!courseIds.contains(course.getCourseId()) || results.containsKey(course.getCourseId())) {
+                continue;
+            }
+            String result;
+            if (credits + course.getCredits() > MAX_CREDITS) {
+                result = "超過學分上限 (" + MAX_CREDITS + " 學分)";
+            } else {
+                result = seatLedger.enroll(student.getStudentId(), course.getCourseId());
+            }
+            results.put(course.getCourseId(), result);
+            
+            if ("選課成功".equals(result)) {
+                credits += course.getCredits();
+                reserved.add(course);
+            } else if (mode == EnrollmentMode.ALL_OR_NOTHING) {
+                // 退回已佔用的座位；佔用期間可能有人因此進入候補名單，和退選一樣遞補
+                for (Course undo : reserved) {
+                    DropResult drop = dropWithLedger(student.getStudentId(), undo.getCourseId());
+                    results.remove(undo.getCourseId());
+                    if (drop.hasPromotion()) {
+                        // 佔用的座位從未計入目錄人數，遞補後人數加一
+                        waitlist.recordPromotion(drop.getPromotedStudentId(), undo.getCourseId());
+                        catalog.applySeatDelta(undo.getCourseId(), 1);
+                        logOperation("PROMOTE", "ID " + drop.getPromotedStudentId(), undo.getCourseCode(), "由候補遞補");
+                    }
+                }
+                break;
+            }
+        }
+        return results;
+    }
+    
+    /**
+     * 檢查先修課程條件：課程的遞移先修集合必須是學生已修課程集合的子集合
      * @param student 學生
      * @param course 課程
      * @return 檢查結果，null表示通過
+     * @throws SQLException 無法查詢學生已修課程
      */
-    private String checkPrerequisites(Student student, Course course) {
-        // 這裡可以實作先修課程的檢查邏輯
-        // 簡化版本暫時返回通過
-        return null;
+    private String checkPrerequisites(Student student, Course course) throws SQLException {
+        CourseSet required = prerequisites.getClosure(course.getCourseId());
+        if (required.isEmpty()) {
+            return null;
+        }
+        CourseSet completed = completedCourses(student);
+        if (completed.containsAll(required)) {
+            return null;
+        }
+        
+        // 未通過時才列出缺少的課程名稱
+        StringBuilder missing = new StringBuilder();
+        CourseCatalog.Snapshot snapshot = catalog.currentSnapshot();
+        for (int courseId : required.minus(completed).toArray()) {
+            Course prerequisite = snapshot.getCourse(courseId);
+            if (missing.length() > 0) {
+                missing.append("、");
+            }
+            missing.append(prerequisite != null
+                ? prerequisite.getCourseCode() + " " + prerequisite.getName()
+                : "課程 #" + courseId);
+        }
+        return "選課失敗：尚未修畢先修課程 (" + missing + ")";
+    }
+    
+    /**
+     * 取得學生已修畢的課程集合，第一次使用時查詢後存回學生物件
+     * (已修課程在選課期間不會改變，每個Session只需查詢一次)
+     */
+    private CourseSet completedCourses(Student student) throws SQLException {
+        CourseSet completed = student.getCompletedCourses();
+        if (completed == null) {
+            completed = CourseSet.of(dbManager.getCompletedCourseIds(student.getStudentId()));
+            student.setCompletedCourses(completed);
+        }
+        return completed;
+    }
+    
+    /**
+     * 建立CSV寫出器：UTF-8、固定大小的緩衝區，開頭寫入BOM讓Excel正確顯示中文
+     */
+    private static Writer csvWriter(OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), CSV_BUFFER_SIZE);
+        writer.write('\uFEFF');
+        return writer;
+    }
+    
+    /**
+     * 寫出一列CSV，每個欄位都以引號包圍
+     */
+    private void writeCsvRow(Writer writer, String... fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            writer.write('"');
+            writer.write(escapeCSVField(fields[i]));
+            writer.write('"');
+        }
+        writer.write("\r\n");
+    }
+    
+    private static String trimToNull(String value) {
+        return value == null || value.trim().isEmpty() ? null : value.trim();
     }
     
     /**
@@ -541,7 +1313,7 @@ public class CourseService {
     
     /**
      * 記錄操作日誌
-     * 展示檔案I/O和日誌管理
+     * 只排入操作日誌寫入器的佇列，檔案I/O由背景執行緒批次處理
      * 
      * @param operation 操作類型
      * @param studentCode 學號
@@ -549,30 +1321,21 @@ public class CourseService {
      * @param status 狀態
      */
     private void logOperation(String operation, String studentCode, String courseCode, String status) {
-        try {
-            SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-            String logMessage = String.format("[%s] %s - 學生:%s, 課程:%s, 狀態:%s",
-                dateFormat.format(new Date()), operation, studentCode, courseCode, status);
-            
-            // 輸出到系統日誌
-            LOGGER.info(logMessage);
-            
-            // 同時寫入檔案日誌 (使用try-with-resources確保資源關閉)
-            try (PrintWriter logWriter = new PrintWriter(
-                    new FileWriter("course_operations.log", true))) {
-                logWriter.println(logMessage);
-            }
-            
-        } catch (IOException e) {
-            LOGGER.log(Level.WARNING, "寫入操作日誌失敗", e);
-        }
+        String logMessage = String.format("%s - 學生:%s, 課程:%s, 狀態:%s",
+            operation, studentCode, courseCode, status);
+        
+        // 輸出到系統日誌
+        LOGGER.info(logMessage);
+        
+        // 寫入檔案日誌 (不阻塞請求執行緒)
+        auditLog.log(logMessage);
     }
     
     // ============ 資源管理方法 ============
     
     /**
-     * 關閉服務並清理資源
-     * 展示資源管理和執行緒池關閉
+     * 關閉服務並清理資源 (執行緒池、座位帳本、操作日誌)
+     * 由應用程式卸載時的 ApplicationLifecycleListener 呼叫，個別畫面不應呼叫
      */
     public void shutdown() {
         try {
@@ -580,7 +1343,7 @@ public class CourseService {
                 executor.shutdown();
                 
                 // 等待執行中的任務完成
-                if (!executor.awaitTermination(5, java.util.concurrent.TimeUnit.SECONDS)) {
+                if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
                     executor.shutdownNow();
                 }
                 
@@ -591,6 +1354,14 @@ public class CourseService {
             Thread.currentThread().interrupt();
             LOGGER.log(Level.WARNING, "關閉執行緒池時被中斷", e);
         }
+        
+        // 座位帳本寫回資料庫後才關閉操作日誌
+        if (seatLedger != null) {
+            seatLedger.shutdown();
+        }
+        if (auditLog != null) {
+            auditLog.close();
+        }
     }
     
     /**
@@ -606,6 +1377,116 @@ public class CourseService {
             return "執行緒池已關閉";
         }
         
-        return "執行緒池運行中";
+        return String.format("執行緒池運行中 (執行緒: %d/%d, 執行中: %d, 佇列: %d/%d, 已完成: %d)",
+            executor.getPoolSize(), executor.getMaximumPoolSize(), executor.getActiveCount(),
+            executor.getQueue().size(), EXECUTOR_QUEUE_CAPACITY, executor.getCompletedTaskCount());
+    }
+    
+    /**
+     * 登記執行緒池、座位帳本與准入控制的即時數值 (重新建立實例時會取代舊的)
+     */
+    private void registerGauges() {
+        OperationMetrics metrics = OperationMetrics.getInstance();
+        metrics.gauge("executor.queueDepth", () -> executor.getQueue().size());
+        metrics.gauge("executor.activeThreads", () -> executor.getActiveCount());
+        metrics.gauge("executor.poolSize", () -> executor.getPoolSize());
+        metrics.gauge("executor.completedTasks", () -> executor.getCompletedTaskCount());
+        if (seatLedger != null) {
+            metrics.gauge("ledger.pendingWrites", () -> seatLedger.getPendingWrites());
+        }
+        for (AdmissionControl.Operation op : AdmissionControl.Operation.values()) {
+            String name = "admission." + op.name().toLowerCase() + ".rejected";
+            metrics.gauge(name, () -> {
+                long[] rejected = admission.getRejectionCounts().get(op);
+                return rejected[0] + rejected[1];
+            });
+        }
+    }
+    
+    /**
+     * 取得准入控制狀態 (用於監控)
+     * @return 狀態描述
+     */
+    public String getAdmissionStatus() {
+        return admission.getStatus();
+    }
+    
+    // ============ 內部類別 ============
+    
+    /**
+     * 快取的課程數與計算時的課程目錄版本
+     */
+    private static final class CachedCount {
+        final long catalogVersion;
+        final long countedAt;
+        final int count;
+        
+        CachedCount(long catalogVersion, long countedAt, int count) {
+            this.catalogVersion = catalogVersion;
+            this.countedAt = countedAt;
+            this.count = count;
+        }
+    }
+    
+    /**
+     * 一個進行中的關鍵字搜尋與它的等待者數量
+     */
+    private static final class InFlightSearch {
+        final CompletableFuture<List<Course>> shared = new CompletableFuture<>();
+        private int waiters;          // 目前的等待者數量 (this 保護)
+        private boolean abandoned;    // 所有等待者都已放棄 (this 保護)
+        
+        /**
+         * 交由執行緒池計算，輪到執行時已被取消則略過
+         */
+        void start(Supplier<List<Course>> search, Executor executor) {
+            try {
+                executor.execute(() -> {
+                    if (shared.isDone()) {
+                        return;
+                    }
+                    try {
+                        shared.complete(search.get());
+                    } catch (RuntimeException e) {
+                        shared.completeExceptionally(e);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                shared.completeExceptionally(e);
+            }
+        }
+        
+        /**
+         * 加入等待，每位等待者取得自己的課程複本
+         * @return 等待者的Future，已被放棄時返回null
+         */
+        synchronized CompletableFuture<List<Course>> join() {
+            if (abandoned) {
+                return null;
+            }
+            waiters++;
+            CompletableFuture<List<Course>> waiter = shared.thenApply(InFlightSearch::copyOf);
+            waiter.whenComplete((courses, error) -> {
+                if (waiter.isCompletedExceptionally() && !shared.isDone()) {
+                    leave();
+                }
+            });
+            return waiter;
+        }
+        
+        private synchronized void leave() {
+            if (--waiters == 0 && !shared.isDone()) {
+                abandoned = true;
+                shared.cancel(false);
+            }
+        }
+        
+        private static List<Course> copyOf(List<Course> courses) {
+            List<Course> copy = new ArrayList<>(courses.size());
+            for (Course course : courses) {
+                copy.add(new Course(course));
+            }
+            return copy;
+        }
     }
-}
\ No newline at end of file
+}
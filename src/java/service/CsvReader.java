@@ -0,0 +1,118 @@
+// ==================== 26. CsvReader.java ====================
+/**
+ * 串流CSV解析器
+ * 一次只讀取一筆記錄，支援引號欄位 (含逗號、換行與連續兩個引號)，
+ * 自動略過UTF-8 BOM；記憶體用量只與單筆記錄大小有關
+ */
+package service;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+class CsvReader implements Closeable {
+
+    private final BufferedReader reader;
+    private final StringBuilder field = new StringBuilder();
+    private long lineNumber;        // 目前讀到的實體行號 (由1開始)
+    private long recordLine;        // 最近一筆記錄的起始行號
+    private boolean started;
+
+    CsvReader(Reader reader) {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader, 64 * 1024);
+    }
+
+    /**
+     * 讀取下一筆記錄 (略過空白行)
+     * @return 欄位陣列，已無資料時返回null
+     * @throws IOException 讀取失敗或引號未結束
+     */
+    String[] next() throws IOException {
+        List<String> fields = new ArrayList<>();
+        field.setLength(0);
+        boolean quoted = false;
+        boolean any = false;
+
+        int c;
+        while ((c = read()) != -1) {
+            if (!any) {
+                any = true;
+                recordLine = lineNumber;
+            }
+            if (quoted) {
+                if (c == '"') {
+                    reader.mark(1);
+                    int nextChar = reader.read();
+                    if (nextChar == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        if (nextChar != -1) {
+                            reader.reset();
+                        }
+                    }
+                } else {
+                    if (c == '\n') {
+                        lineNumber++;
+                    }
+                    field.append((char) c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\r') {
+                // 忽略，換行以 \n 為準
+            } else if (c == '\n') {
+                lineNumber++;
+                if (fields.isEmpty() && field.length() == 0) {
+                    // 空白行
+                    any = false;
+                    continue;
+                }
+                fields.add(field.toString());
+                return fields.toArray(new String[0]);
+            } else {
+                field.append((char) c);
+            }
+        }
+
+        if (quoted) {
+            throw new IOException("第 " + recordLine + " 行的引號欄位沒有結束");
+        }
+        if (!any || (fields.isEmpty() && field.length() == 0)) {
+            return null;
+        }
+        fields.add(field.toString());
+        return fields.toArray(new String[0]);
+    }
+
+    /**
+     * 最近一筆記錄的起始行號
+     * @return 行號 (由1開始)
+     */
+    long getRecordLine() {
+        return recordLine;
+    }
+
+    private int read() throws IOException {
+        int c = reader.read();
+        if (!started) {
+            started = true;
+            lineNumber = 1;
+            if (c == '\uFEFF') {
+                c = reader.read();
+            }
+        }
+        return c;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,70 @@
+// ==================== 12. DataSourceConnectionProvider.java ====================
+/**
+ * 以DataSource作為連接來源
+ * 部署於GlassFish時可改用容器管理的JNDI連接池
+ */
+package service;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.logging.Logger;
+import javax.naming.InitialContext;
+import javax.naming.NamingException;
+import javax.sql.DataSource;
+
+public class DataSourceConnectionProvider implements ConnectionProvider {
+
+    // ============ 常數定義 ============
+    private static final Logger LOGGER = Logger.getLogger(DataSourceConnectionProvider.class.getName());
+
+    private final DataSource dataSource;
+    private final String description;
+
+    // ============ 建構子 ============
+
+    /**
+     * 建構子
+     * @param dataSource 資料來源
+     * @param description 描述 (用於狀態顯示)
+     */
+    public DataSourceConnectionProvider(DataSource dataSource, String description) {
+        if (dataSource == null) {
+            throw new IllegalArgumentException("DataSource不可為null");
+        }
+        this.dataSource = dataSource;
+        this.description = description;
+    }
+
+    /**
+     * 透過JNDI名稱查詢容器提供的DataSource
+     * @param jndiName JNDI名稱，例如 jdbc/CourseDB
+     * @return 連接來源
+     * @throws NamingException 如果查詢失敗
+     */
+    public static DataSourceConnectionProvider lookup(String jndiName) throws NamingException {
+        DataSource dataSource = (DataSource) new InitialContext().lookup(jndiName);
+        LOGGER.info("使用JNDI DataSource：" + jndiName);
+        return new DataSourceConnectionProvider(dataSource, "JNDI " + jndiName);
+    }
+
+    // ============ ConnectionProvider 實作 ============
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return dataSource.getConnection();
+    }
+
+    @Override
+    public String getStatus() {
+        return "DataSource連接來源：" + description;
+    }
+
+    @Override
+    public void shutdown() {
+        // 容器管理的DataSource由容器負責關閉
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+}
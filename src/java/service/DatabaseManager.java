@@ -7,9 +7,18 @@ package service;
 
 import entity.Student;
 import entity.Course;
+import entity.WeeklySlots;
+import java.io.IOException;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
@@ -18,10 +27,28 @@ public class DatabaseManager {
     // ============ 常數定義 ============
     private static final Logger LOGGER = Logger.getLogger(DatabaseManager.class.getName());
     
-    // 資料庫連接參數
-    private static final String DB_URL = "jdbc:derby://localhost:1527/CourseDB";
-    private static final String DB_USER = "app";
-    private static final String DB_PASSWORD = "app";
+    // 資料庫連接參數 (可用系統屬性覆寫，例如效能測試改用內嵌Derby)
+    private static final String DB_URL = System.getProperty("coursedb.url", "jdbc:derby://localhost:1527/CourseDB");
+    private static final String DB_USER = System.getProperty("coursedb.user", "app");
+    private static final String DB_PASSWORD = System.getProperty("coursedb.password", "app");
+    private static final String DB_DRIVER = DB_URL.startsWith("jdbc:derby://")
+        ? "org.apache.derby.jdbc.ClientDriver" : "org.apache.derby.jdbc.EmbeddedDriver";
+    
+    // 連接池參數 (可用系統屬性覆寫)
+    private static final String JNDI_NAME = System.getProperty("coursedb.jndiName");
+    private static final int POOL_MAX_SIZE = Integer.getInteger("coursedb.pool.maxSize", 20);
+    private static final int POOL_MIN_IDLE = Integer.getInteger("coursedb.pool.minIdle", 2);
+    private static final long POOL_MAX_WAIT_MILLIS = Long.getLong("coursedb.pool.maxWaitMillis", 5000L);
+    private static final long POOL_IDLE_TIMEOUT_MILLIS = Long.getLong("coursedb.pool.idleTimeoutMillis", 300000L);
+    private static final int POOL_STATEMENT_CACHE_SIZE = Integer.getInteger("coursedb.pool.statementCacheSize", 32);
+    
+    // 讀寫分離：唯讀資料來源 (逗號分隔，可用 URL 或 JNDI 名稱)，未設定時所有查詢走主資料庫
+    private static final String READ_URLS = System.getProperty("coursedb.read.urls");
+    private static final String READ_JNDI_NAMES = System.getProperty("coursedb.read.jndiNames");
+    private static final long READ_STICKY_MILLIS = Long.getLong("coursedb.read.stickyMillis", 5000L);
+    
+    // 學生已選課程快取的存活時間 (本機寫入會立即使快取失效，0 表示不快取)
+    private static final long ROSTER_CACHE_TTL_MILLIS = Long.getLong("coursedb.rosterCache.ttlMillis", 30000L);
     
     // SQL查詢語句
     private static final String SELECT_STUDENT_LOGIN = 
@@ -30,6 +57,23 @@ public class DatabaseManager {
     private static final String SELECT_ALL_COURSES = 
         "SELECT * FROM courses WHERE is_active = true";
     
+    private static final String SELECT_COURSE_BY_ID = 
+        "SELECT * FROM courses WHERE course_id = ? AND is_active = true";
+    
+    private static final String SELECT_COURSE_SEATS = 
+        "SELECT course_id, current_students FROM courses WHERE is_active = true";
+    
+    // 課程篩選與分頁 (keyset)：只加入有設定的條件，依課程代碼排序，每頁只讀取固定筆數
+    private static final String SELECT_COURSES_FILTERED = 
+        "SELECT * FROM courses WHERE is_active = true";
+    
+    private static final String COUNT_COURSES_FILTERED = 
+        "SELECT COUNT(*) FROM courses WHERE is_active = true";
+    
+    private static final String KEYWORD_CONDITION = 
+        " AND (LOWER(name) LIKE ? ESCAPE '\\' OR LOWER(course_code) LIKE ? ESCAPE '\\'" +
+        " OR LOWER(teacher) LIKE ? ESCAPE '\\')";
+    
     private static final String SELECT_STUDENT_COURSES = 
         "SELECT c.* FROM courses c " +
         "JOIN enrollments e ON c.course_id = e.course_id " +
@@ -44,24 +88,149 @@ public class DatabaseManager {
     private static final String UPDATE_COURSE_STUDENTS = 
         "UPDATE courses SET current_students = current_students + ? WHERE course_id = ?";
     
+    // 條件式佔位：只有在未額滿時才會更新成功，由資料庫列鎖保證不超收
+    private static final String RESERVE_COURSE_SEAT = 
+        "UPDATE courses SET current_students = current_students + 1 " +
+        "WHERE course_id = ? AND current_students < max_students";
+    
     private static final String CHECK_ENROLLMENT_EXISTS = 
         "SELECT COUNT(*) FROM enrollments WHERE student_id = ? AND course_id = ?";
     
+    private static final String SELECT_COURSE_CAPACITY = 
+        "SELECT current_students, max_students FROM courses WHERE course_id = ?";
+    
+    // 批次選課查詢 (IN 清單於執行時展開)
+    private static final String SELECT_COURSES_CAPACITY_IN = 
+        "SELECT course_id, credits, current_students, max_students FROM courses WHERE course_id IN ";
+    
+    private static final String SELECT_ENROLLED_COURSE_IDS_IN = 
+        "SELECT course_id FROM enrollments WHERE student_id = ? AND course_id IN ";
+    
+    // 座位帳本 (SeatLedger) 啟動對帳用查詢
+    private static final String SELECT_COURSE_CAPACITIES = 
+        "SELECT course_id, current_students, max_students FROM courses WHERE is_active = true";
+    
+    private static final String SELECT_ENROLLED_PAIRS = 
+        "SELECT student_id, course_id FROM enrollments WHERE status = 'ENROLLED'";
+    
+    // 以選課記錄重新計算所有課程的選課人數
+    private static final String RECOUNT_COURSE_STUDENTS = 
+        "UPDATE courses SET current_students = " +
+        "(SELECT COUNT(*) FROM enrollments e WHERE e.course_id = courses.course_id AND e.status = 'ENROLLED')";
+    
+    private static final String SELECT_OVERBOOKED_COURSES = 
+        "SELECT course_code, current_students, max_students FROM courses " +
+        "WHERE current_students > max_students ORDER BY course_code";
+    
+    // 候補名單 (依 waitlist_id 先後順序遞補)
+    private static final String SELECT_WAITLIST = 
+        "SELECT course_id, student_id FROM waitlist ORDER BY waitlist_id";
+    
+    private static final String SELECT_COURSE_WAITLIST = 
+        "SELECT student_id FROM waitlist WHERE course_id = ? ORDER BY waitlist_id";
+    
+    private static final String INSERT_WAITLIST = 
+        "INSERT INTO waitlist (course_id, student_id) VALUES (?, ?)";
+    
+    private static final String DELETE_WAITLIST = 
+        "DELETE FROM waitlist WHERE course_id = ? AND student_id = ?";
+    
+    // 遞補時重新檢查學分與衝堂
+    private static final String SELECT_COURSE_CREDITS_SCHEDULE = 
+        "SELECT credits, time_schedule FROM courses WHERE course_id = ?";
+    
+    private static final String SELECT_ENROLLED_CREDITS_SCHEDULES = 
+        "SELECT c.credits, c.time_schedule FROM courses c " +
+        "JOIN enrollments e ON c.course_id = e.course_id " +
+        "WHERE e.student_id = ? AND e.status = 'ENROLLED'";
+    
+    // 先修課程圖與學生已修課程
+    private static final String SELECT_PREREQUISITE_EDGES = 
+        "SELECT course_id, prerequisite_id FROM prerequisites";
+    
+    private static final String SELECT_COMPLETED_COURSE_IDS = 
+        "SELECT course_id FROM completed_courses WHERE student_id = ?";
+    
+    // 名單匯出 (以唯讀、只能前進的游標逐列讀取)
+    private static final String SELECT_ROSTER = 
+        "SELECT student_code, student_name, student_department, course_code, course_name, credits, " +
+        "course_type, teacher, time_schedule, classroom, enrollment_date FROM student_course_view";
+    
+    private static final String SELECT_STUDENT_COURSES_EXPORT = 
+        "SELECT c.course_code, c.name, c.credits, c.department, c.type, c.teacher, c.time_schedule, c.classroom " +
+        "FROM courses c JOIN enrollments e ON c.course_id = e.course_id " +
+        "WHERE e.student_id = ? AND e.status = 'ENROLLED' ORDER BY c.course_code";
+    
+    // 匯出時每次向資料庫取回的列數
+    private static final int EXPORT_FETCH_SIZE = Integer.getInteger("coursedb.export.fetchSize", 1000);
+    
+    // SQLState：違反唯一約束 / 違反外鍵約束
+    private static final String SQLSTATE_DUPLICATE_KEY = "23505";
+    private static final String SQLSTATE_FOREIGN_KEY = "23503";
+    
+    // 效能統計：每個公開方法一個計時器 (名稱為 db.方法名稱)
+    private static final OperationMetrics.Timer AUTHENTICATE_STUDENT_TIMER = OperationMetrics.timer("db.authenticateStudent");
+    private static final OperationMetrics.Timer GET_ALL_COURSES_TIMER = OperationMetrics.timer("db.getAllCourses");
+    private static final OperationMetrics.Timer FIND_COURSES_TIMER = OperationMetrics.timer("db.findCourses");
+    private static final OperationMetrics.Timer COUNT_COURSES_TIMER = OperationMetrics.timer("db.countCourses");
+    private static final OperationMetrics.Timer GET_COURSE_BY_ID_TIMER = OperationMetrics.timer("db.getCourseById");
+    private static final OperationMetrics.Timer GET_COURSE_SEAT_COUNTS_TIMER = OperationMetrics.timer("db.getCourseSeatCounts");
+    private static final OperationMetrics.Timer GET_STUDENT_COURSES_TIMER = OperationMetrics.timer("db.getStudentCourses");
+    private static final OperationMetrics.Timer ENROLL_COURSE_TIMER = OperationMetrics.timer("db.enrollCourse");
+    private static final OperationMetrics.Timer ENROLL_COURSES_TIMER = OperationMetrics.timer("db.enrollCourses");
+    private static final OperationMetrics.Timer DROP_COURSE_TIMER = OperationMetrics.timer("db.dropCourse");
+    private static final OperationMetrics.Timer DROP_COURSE_AND_PROMOTE_TIMER = OperationMetrics.timer("db.dropCourseAndPromote");
+    private static final OperationMetrics.Timer IS_ENROLLED_TIMER = OperationMetrics.timer("db.isEnrolled");
+    private static final OperationMetrics.Timer STREAM_ROSTER_TIMER = OperationMetrics.timer("db.streamRoster");
+    private static final OperationMetrics.Timer STREAM_STUDENT_COURSES_TIMER = OperationMetrics.timer("db.streamStudentCourses");
+    private static final OperationMetrics.Timer GET_WAITLIST_ENTRIES_TIMER = OperationMetrics.timer("db.getWaitlistEntries");
+    private static final OperationMetrics.Timer INSERT_WAITLIST_ENTRY_TIMER = OperationMetrics.timer("db.insertWaitlistEntry");
+    private static final OperationMetrics.Timer DELETE_WAITLIST_ENTRY_TIMER = OperationMetrics.timer("db.deleteWaitlistEntry");
+    private static final OperationMetrics.Timer GET_PREREQUISITE_EDGES_TIMER = OperationMetrics.timer("db.getPrerequisiteEdges");
+    private static final OperationMetrics.Timer GET_COMPLETED_COURSE_IDS_TIMER = OperationMetrics.timer("db.getCompletedCourseIds");
+    private static final OperationMetrics.Timer GET_COURSE_CAPACITIES_TIMER = OperationMetrics.timer("db.getCourseCapacities");
+    private static final OperationMetrics.Timer GET_ENROLLED_PAIRS_TIMER = OperationMetrics.timer("db.getEnrolledPairs");
+    private static final OperationMetrics.Timer RECOUNT_COURSE_STUDENTS_TIMER = OperationMetrics.timer("db.recountCourseStudents");
+    private static final OperationMetrics.Timer GET_OVERBOOKED_COURSES_TIMER = OperationMetrics.timer("db.getOverbookedCourses");
+    private static final OperationMetrics.Timer APPLY_LEDGER_WRITES_TIMER = OperationMetrics.timer("db.applyLedgerWrites");
+    
     // ============ 單例模式實作 ============
     private static DatabaseManager instance;
     
+    // 連接來源 (內建連接池或JNDI DataSource)
+    private volatile ConnectionProvider connectionProvider;
+    // 唯讀查詢的路由 (未設定唯讀資料來源時為null)
+    private volatile ReadRouter readRouter;
+    // 學生已選課程快取
+    private final StudentRosterCache rosterCache = new StudentRosterCache(ROSTER_CACHE_TTL_MILLIS);
+    
     /**
      * 私有建構子
      */
     private DatabaseManager() {
+        // 優先使用容器提供的JNDI DataSource
+        if (JNDI_NAME != null && !JNDI_NAME.trim().isEmpty()) {
+            try {
+                connectionProvider = TracingConnectionProvider.wrapIfEnabled(
+                    DataSourceConnectionProvider.lookup(JNDI_NAME.trim()));
+                return;
+            } catch (javax.naming.NamingException e) {
+                LOGGER.log(Level.WARNING, "JNDI DataSource查詢失敗，改用內建連接池：" + JNDI_NAME, e);
+            }
+        }
+        
         try {
             // 載入MySQL驅動程式
-            Class.forName("org.apache.derby.jdbc.ClientDriver");
+            Class.forName(DB_DRIVER);
             LOGGER.info("MySQL驅動程式載入成功");
         } catch (ClassNotFoundException e) {
             LOGGER.log(Level.SEVERE, "MySQL驅動程式載入失敗", e);
             throw new RuntimeException("資料庫驅動程式載入失敗", e);
         }
+        
+        connectionProvider = TracingConnectionProvider.wrapIfEnabled(new ConnectionPool(DB_URL, DB_USER, DB_PASSWORD,
+            POOL_MAX_SIZE, POOL_MIN_IDLE, POOL_MAX_WAIT_MILLIS, POOL_IDLE_TIMEOUT_MILLIS,
+            POOL_STATEMENT_CACHE_SIZE));
     }
     
     /**
@@ -71,21 +240,145 @@ public class DatabaseManager {
     public static synchronized DatabaseManager getInstance() {
         if (instance == null) {
             instance = new DatabaseManager();
+            instance.readRouter = createReadRouter();
+            instance.registerGauges();
         }
         return instance;
     }
     
+    /**
+     * 登記連接池的即時數值 (每次讀取時取目前的連接來源，更換連接來源後仍然有效)
+     */
+    private void registerGauges() {
+        OperationMetrics metrics = OperationMetrics.getInstance();
+        metrics.gauge("pool.active", () -> pool() != null ? pool().getActiveCount() : 0);
+        metrics.gauge("pool.idle", () -> pool() != null ? pool().getIdleCount() : 0);
+        metrics.gauge("pool.total", () -> pool() != null ? pool().getTotalCount() : 0);
+        metrics.gauge("pool.timeouts", () -> pool() != null ? pool().getTimeoutCount() : 0);
+        metrics.gauge("read.replicaReads", () -> readRouter != null ? readRouter.getReplicaReads() : 0);
+        metrics.gauge("read.stickyReads", () -> readRouter != null ? readRouter.getStickyReads() : 0);
+        metrics.gauge("read.fallbackReads", () -> readRouter != null ? readRouter.getFallbackReads() : 0);
+        metrics.gauge("rosterCache.hits", rosterCache::getHits);
+        metrics.gauge("rosterCache.misses", rosterCache::getMisses);
+    }
+    
+    /**
+     * 依系統屬性建立唯讀資料來源 (coursedb.read.urls 為每個URL建立一個內建連接池)
+     * @return 讀取路由，未設定時返回null
+     */
+    private static ReadRouter createReadRouter() {
+        List<ConnectionProvider> providers = new ArrayList<>();
+        if (READ_URLS != null) {
+            for (String url : READ_URLS.split(",")) {
+                if (!url.trim().isEmpty()) {
+                    providers.add(TracingConnectionProvider.wrapIfEnabled(new ConnectionPool(url.trim(),
+                        DB_USER, DB_PASSWORD, POOL_MAX_SIZE, POOL_MIN_IDLE, POOL_MAX_WAIT_MILLIS,
+                        POOL_IDLE_TIMEOUT_MILLIS, POOL_STATEMENT_CACHE_SIZE)));
+                }
+            }
+        }
+        if (READ_JNDI_NAMES != null) {
+            for (String jndiName : READ_JNDI_NAMES.split(",")) {
+                if (jndiName.trim().isEmpty()) {
+                    continue;
+                }
+                try {
+                    providers.add(TracingConnectionProvider.wrapIfEnabled(
+                        DataSourceConnectionProvider.lookup(jndiName.trim())));
+                } catch (javax.naming.NamingException e) {
+                    LOGGER.log(Level.WARNING, "唯讀DataSource查詢失敗，略過：" + jndiName, e);
+                }
+            }
+        }
+        return providers.isEmpty() ? null : new ReadRouter(providers, READ_STICKY_MILLIS);
+    }
+    
+    private ConnectionPool pool() {
+        ConnectionProvider provider = unwrap(connectionProvider);
+        return provider instanceof ConnectionPool ? (ConnectionPool) provider : null;
+    }
+    
+    private static ConnectionProvider unwrap(ConnectionProvider provider) {
+        return provider instanceof TracingConnectionProvider
+            ? ((TracingConnectionProvider) provider).getDelegate() : provider;
+    }
+    
     // ============ 資料庫連接方法 ============
     
     /**
-     * 取得資料庫連接
+     * 更換連接來源 (例如改用容器的DataSource)，舊的連接來源會被關閉
+     * 有設定慢查詢門檻時，新的連接來源同樣會被包裝追蹤
+     * @param provider 新的連接來源
+     */
+    public void setConnectionProvider(ConnectionProvider provider) {
+        if (provider == null) {
+            throw new IllegalArgumentException("連接來源不可為null");
+        }
+        provider = TracingConnectionProvider.wrapIfEnabled(provider);
+        ConnectionProvider old = this.connectionProvider;
+        this.connectionProvider = provider;
+        if (old != null && unwrap(old) != unwrap(provider)) {
+            old.shutdown();
+        }
+        LOGGER.info("已更換連接來源：" + provider.getStatus());
+    }
+    
+    /**
+     * 更換唯讀資料來源 (例如測試時指向另一個本機Derby)，舊的唯讀資料來源會被關閉
+     * @param providers 唯讀資料來源，null 或空列表表示停用讀寫分離
+     */
+    public void setReadConnectionProviders(List<ConnectionProvider> providers) {
+        List<ConnectionProvider> traced = new ArrayList<>();
+        if (providers != null) {
+            for (ConnectionProvider provider : providers) {
+                traced.add(TracingConnectionProvider.wrapIfEnabled(provider));
+            }
+        }
+        ReadRouter old = this.readRouter;
+        this.readRouter = traced.isEmpty() ? null : new ReadRouter(traced, READ_STICKY_MILLIS);
+        if (old != null) {
+            old.shutdown();
+        }
+    }
+    
+    /**
+     * 取得目前的連接來源
+     * @return 連接來源
+     */
+    public ConnectionProvider getConnectionProvider() {
+        return connectionProvider;
+    }
+    
+    /**
+     * 取得連接池狀態資訊 (用於監控)
+     * @return 狀態描述
+     */
+    public String getPoolStatus() {
+        ReadRouter router = readRouter;
+        return connectionProvider.getStatus() + (router != null ? "\n" + router.getStatus() : "")
+            + "\n" + rosterCache.getStatus();
+    }
+    
+    /**
+     * 關閉連接來源 (含唯讀資料來源) 並釋放所有連接
+     */
+    public void shutdown() {
+        ReadRouter router = readRouter;
+        if (router != null) {
+            router.shutdown();
+        }
+        connectionProvider.shutdown();
+    }
+    
+    /**
+     * 從連接池取得資料庫連接，close()時歸還連接池
      * @return 資料庫連接物件
      * @throws SQLException 如果無法取得連接
      */
     private Connection getConnection() throws SQLException {
         try {
-            Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
-            LOGGER.fine("資料庫連接建立成功");
+            Connection conn = connectionProvider.getConnection();
+            LOGGER.fine("資料庫連接取得成功");
             return conn;
         } catch (SQLException e) {
             LOGGER.log(Level.SEVERE, "無法取得資料庫連接", e);
@@ -93,6 +386,43 @@ public class DatabaseManager {
         }
     }
     
+    /**
+     * 取得唯讀查詢用的連接：有唯讀資料來源時輪流使用，
+     * 但學生剛寫入過時查詢他自己的資料仍走主資料庫，唯讀資料來源都無法使用時也走主資料庫
+     * @param studentId 查詢的學生ID，0 表示與特定學生無關
+     * @return 資料庫連接物件
+     * @throws SQLException 如果無法取得連接
+     */
+    private Connection getReadConnection(int studentId) throws SQLException {
+        ReadRouter router = readRouter;
+        if (router == null || router.mustUsePrimary(studentId)) {
+            return getConnection();
+        }
+        Connection conn = router.getConnection();
+        return conn != null ? conn : getConnection();
+    }
+    
+    /**
+     * 記錄學生剛寫入，讓他接下來的查詢讀得到自己的寫入 (同時捨棄他的已選課程快取)
+     */
+    private void recordWrite(int studentId) {
+        if (studentId <= 0) {
+            return;
+        }
+        rosterCache.invalidate(studentId);
+        ReadRouter router = readRouter;
+        if (router != null) {
+            router.recordWrite(studentId);
+        }
+    }
+    
+    /**
+     * 捨棄所有學生的已選課程快取 (大量匯入選課記錄後呼叫，不必等快取過期)
+     */
+    public void invalidateStudentRosters() {
+        rosterCache.invalidateAll();
+    }
+    
     /**
      * 關閉資料庫相關資源
      * @param conn 連接物件
@@ -110,6 +440,163 @@ public class DatabaseManager {
         }
     }
     
+    /**
+     * 產生 IN 子句的參數清單，例如 (?, ?, ?)
+     * @param size 參數個數
+     * @return IN 清單字串
+     */
+    private static String buildInList(int size) {
+        StringBuilder sb = new StringBuilder("(");
+        for (int i = 0; i < size; i++) {
+            sb.append(i == 0 ? "?" : ", ?");
+        }
+        return sb.append(")").toString();
+    }
+    
+    /**
+     * 將尚未有結果的課程標記為未執行
+     * @param results 批次結果
+     */
+    private static void markSkipped(Map<Integer, String> results) {
+        for (Map.Entry<Integer, String> entry : results.entrySet()) {
+            if (entry.getValue() == null) {
+                entry.setValue("未選課：同批次其他課程無法選課");
+            }
+        }
+    }
+    
+    /**
+     * 在目前交易中新增選課記錄並佔用名額
+     * @param conn 交易中的連接
+     * @param studentId 學生ID
+     * @param courseId 課程ID
+     * @return 失敗原因，成功時返回null
+     * @throws SQLException 非預期的資料庫錯誤
+     */
+    private String insertEnrollmentAndReserveSeat(Connection conn, int studentId, int courseId)
+            throws SQLException {
+        try (PreparedStatement insert = conn.prepareStatement(INSERT_ENROLLMENT)) {
+            insert.setInt(1, studentId);
+            insert.setInt(2, courseId);
+            insert.executeUpdate();
+        } catch (SQLException e) {
+            if (SQLSTATE_DUPLICATE_KEY.equals(e.getSQLState())) {
+                return "您已經選過此課程";
+            }
+            if (SQLSTATE_FOREIGN_KEY.equals(e.getSQLState())) {
+                // 學生與課程的外鍵違反同一個 SQLState (約束名稱由系統產生)，查詢課程確認是哪一個
+                return courseExists(conn, courseId) ? "學生不存在" : "課程不存在";
+            }
+            throw e;
+        }
+        
+        try (PreparedStatement reserve = conn.prepareStatement(RESERVE_COURSE_SEAT)) {
+            reserve.setInt(1, courseId);
+            return reserve.executeUpdate() > 0 ? null : "課程已額滿";
+        }
+    }
+    
+    /**
+     * 課程是否存在 (只在新增選課違反外鍵時查詢)
+     */
+    private static boolean courseExists(Connection conn, int courseId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(SELECT_COURSE_CAPACITY)) {
+            pstmt.setInt(1, courseId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+    
+    /**
+     * 將篩選條件加入 WHERE (只加入有設定的條件，參數依序放入 params)
+     * 系所與類型使用等值條件，讓查詢可以使用 idx_course_department / idx_course_type；
+     * 關鍵字以 LIKE 比對名稱、代碼與教師 (轉小寫並跳脫萬用字元)
+     */
+    private static void appendFilter(StringBuilder sql, List<Object> params, CourseFilter filter) {
+        if (filter == null) {
+            return;
+        }
+        if (filter.getDepartment() != null) {
+            sql.append(" AND department = ?");
+            params.add(filter.getDepartment());
+        }
+        if (filter.getType() != null) {
+            sql.append(" AND type = ?");
+            params.add(filter.getType());
+        }
+        if (filter.getMinCredits() != null) {
+            sql.append(" AND credits >= ?");
+            params.add(filter.getMinCredits());
+        }
+        if (filter.getMaxCredits() != null) {
+            sql.append(" AND credits <= ?");
+            params.add(filter.getMaxCredits());
+        }
+        if (filter.isAvailableOnly()) {
+            sql.append(" AND current_students < max_students");
+        }
+        if (filter.getKeyword() != null) {
+            // 與 Derby 的 LOWER 一致，不受伺服器預設語系影響
+            String pattern = "%" + escapeLike(filter.getKeyword().toLowerCase(Locale.ROOT)) + "%";
+            sql.append(KEYWORD_CONDITION);
+            params.add(pattern);
+            params.add(pattern);
+            params.add(pattern);
+        }
+    }
+    
+    /**
+     * 跳脫 LIKE 的萬用字元 (跳脫字元為反斜線)
+     */
+    private static String escapeLike(String value) {
+        StringBuilder escaped = new StringBuilder(value.length() + 8);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '%' || c == '_') {
+                escaped.append('\\');
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+    
+    /**
+     * 依序設定參數 (整數或字串)
+     */
+    private static void bindParameters(PreparedStatement pstmt, List<Object> params) throws SQLException {
+        for (int i = 0; i < params.size(); i++) {
+            Object param = params.get(i);
+            if (param instanceof Integer) {
+                pstmt.setInt(i + 1, (Integer) param);
+            } else {
+                pstmt.setString(i + 1, (String) param);
+            }
+        }
+    }
+    
+    /**
+     * 將查詢結果的目前列轉為課程物件
+     * @param rs 查詢結果
+     * @return 課程物件
+     * @throws SQLException 讀取欄位失敗
+     */
+    private Course mapCourse(ResultSet rs) throws SQLException {
+        Course course = new Course();
+        course.setCourseId(rs.getInt("course_id"));
+        course.setCourseCode(rs.getString("course_code"));
+        course.setName(rs.getString("name"));
+        course.setCredits(rs.getInt("credits"));
+        course.setDepartment(rs.getString("department"));
+        course.setType(rs.getString("type"));
+        course.setTeacher(rs.getString("teacher"));
+        course.setMaxStudents(rs.getInt("max_students"));
+        course.setCurrentStudents(rs.getInt("current_students"));
+        course.setTimeSchedule(rs.getString("time_schedule"));
+        course.setClassroom(rs.getString("classroom"));
+        return course;
+    }
+    
     // ============ 學生相關方法 ============
     
     /**
@@ -119,12 +606,13 @@ public class DatabaseManager {
      * @return 學生物件，如果驗證失敗則返回null
      */
     public Student authenticateStudent(String studentCode, String password) {
+        long start = System.nanoTime();
         Connection conn = null;
         PreparedStatement pstmt = null;
         ResultSet rs = null;
         
         try {
-            conn = getConnection();
+            conn = getReadConnection(0);
             pstmt = conn.prepareStatement(SELECT_STUDENT_LOGIN);
             pstmt.setString(1, studentCode);
             pstmt.setString(2, password);
@@ -148,10 +636,12 @@ public class DatabaseManager {
             }
             
         } catch (SQLException e) {
+            AUTHENTICATE_STUDENT_TIMER.error();
             LOGGER.log(Level.SEVERE, "學生登入驗證發生錯誤", e);
             return null;
         } finally {
             closeResources(conn, pstmt, rs);
+            AUTHENTICATE_STUDENT_TIMER.stop(start);
         }
     }
     
@@ -162,202 +652,456 @@ public class DatabaseManager {
      * @return 課程列表
      */
     public List<Course> getAllCourses() {
+        long start = System.nanoTime();
         List<Course> courses = new ArrayList<>();
         Connection conn = null;
         PreparedStatement pstmt = null;
         ResultSet rs = null;
         
         try {
-            conn = getConnection();
+            conn = getReadConnection(0);
             pstmt = conn.prepareStatement(SELECT_ALL_COURSES);
             rs = pstmt.executeQuery();
             
             while (rs.next()) {
-                Course course = new Course();
-                course.setCourseId(rs.getInt("course_id"));
-                course.setCourseCode(rs.getString("course_code"));
-                course.setName(rs.getString("name"));
-                course.setCredits(rs.getInt("credits"));
-                course.setDepartment(rs.getString("department"));
-                course.setType(rs.getString("type"));
-                course.setTeacher(rs.getString("teacher"));
-                course.setMaxStudents(rs.getInt("max_students"));
-                course.setCurrentStudents(rs.getInt("current_students"));
-                course.setTimeSchedule(rs.getString("time_schedule"));
-                course.setClassroom(rs.getString("classroom"));
-                
-                courses.add(course);
+                courses.add(mapCourse(rs));
             }
             
             LOGGER.info("成功載入 " + courses.size() + " 門課程");
             
         } catch (SQLException e) {
+            GET_ALL_COURSES_TIMER.error();
             LOGGER.log(Level.SEVERE, "載入課程列表失敗", e);
         } finally {
             closeResources(conn, pstmt, rs);
+            GET_ALL_COURSES_TIMER.stop(start);
         }
         
         return courses;
     }
     
     /**
-     * 取得學生已選課程
-     * @param studentId 學生ID
-     * @return 已選課程列表
+     * 依篩選條件取得一頁可選課程 (keyset 分頁)
+     * 所有條件組成一個參數化查詢，只回傳符合的資料列；
+     * 以鍵值比較取代 OFFSET，翻到後面的頁數也不必掃過前面的資料列
+     * 
+     * @param filter 篩選條件，null 表示不篩選
+     * @param keyCode 鍵值：往後翻時為上一頁最後一門的代碼，往前翻時為下一頁第一門的代碼；null 表示從頭或從尾
+     * @param forward true 往後翻 (代碼大於鍵值)，false 往前翻 (代碼小於鍵值)
+     * @param limit 最多讀取的筆數 (呼叫端多讀一筆以判斷是否還有下一頁)
+     * @return 依課程代碼遞增排序的課程列表，查詢失敗時返回空列表
      */
-    public List<Course> getStudentCourses(int studentId) {
+    public List<Course> findCourses(CourseFilter filter, String keyCode, boolean forward, int limit) {
+        long start = System.nanoTime();
         List<Course> courses = new ArrayList<>();
         Connection conn = null;
         PreparedStatement pstmt = null;
         ResultSet rs = null;
         
+        StringBuilder sql = new StringBuilder(SELECT_COURSES_FILTERED);
+        List<Object> params = new ArrayList<>();
+        appendFilter(sql, params, filter);
+        if (keyCode != null) {
+            sql.append(forward ? " AND course_code > ?" : " AND course_code < ?");
+            params.add(keyCode);
+        }
+        sql.append(forward ? " ORDER BY course_code" : " ORDER BY course_code DESC");
+        sql.append(" FETCH FIRST ? ROWS ONLY");
+        params.add(limit);
+        
         try {
-            conn = getConnection();
-            pstmt = conn.prepareStatement(SELECT_STUDENT_COURSES);
-            pstmt.setInt(1, studentId);
+            conn = getReadConnection(0);
+            pstmt = conn.prepareStatement(sql.toString());
+            bindParameters(pstmt, params);
             rs = pstmt.executeQuery();
             
             while (rs.next()) {
-                Course course = new Course();
-                course.setCourseId(rs.getInt("course_id"));
-                course.setCourseCode(rs.getString("course_code"));
-                course.setName(rs.getString("name"));
-                course.setCredits(rs.getInt("credits"));
-                course.setDepartment(rs.getString("department"));
-                course.setType(rs.getString("type"));
-                course.setTeacher(rs.getString("teacher"));
-                course.setMaxStudents(rs.getInt("max_students"));
-                course.setCurrentStudents(rs.getInt("current_students"));
-                course.setTimeSchedule(rs.getString("time_schedule"));
-                course.setClassroom(rs.getString("classroom"));
-                
-                courses.add(course);
+                courses.add(mapCourse(rs));
+            }
+            // 往前翻時由後往前讀取，翻轉回遞增順序
+            if (!forward) {
+                Collections.reverse(courses);
             }
-            
-            LOGGER.info("學生 " + studentId + " 已選 " + courses.size() + " 門課程");
             
         } catch (SQLException e) {
-            LOGGER.log(Level.SEVERE, "載入學生課程失敗", e);
+            FIND_COURSES_TIMER.error();
+            LOGGER.log(Level.SEVERE, "篩選課程失敗：" + filter + "，鍵值: " + keyCode, e);
         } finally {
             closeResources(conn, pstmt, rs);
+            FIND_COURSES_TIMER.stop(start);
         }
         
         return courses;
     }
     
-    // ============ 選課相關方法 ============
-    
     /**
-     * 學生選課 (支援並發控制)
-     * @param studentId 學生ID
-     * @param courseId 課程ID
-     * @return 選課結果訊息
+     * 計算符合篩選條件的可選課程數
+     * @param filter 篩選條件，null 表示不篩選
+     * @return 課程數，查詢失敗時返回-1
      */
-    public synchronized String enrollCourse(int studentId, int courseId) {
+    public int countCourses(CourseFilter filter) {
+        long start = System.nanoTime();
         Connection conn = null;
         PreparedStatement pstmt = null;
         ResultSet rs = null;
         
+        StringBuilder sql = new StringBuilder(COUNT_COURSES_FILTERED);
+        List<Object> params = new ArrayList<>();
+        appendFilter(sql, params, filter);
+        
         try {
-            conn = getConnection();
-            conn.setAutoCommit(false);  // 開始交易
-            
-            // 1. 檢查是否已經選過此課程
-            pstmt = conn.prepareStatement(CHECK_ENROLLMENT_EXISTS);
-            pstmt.setInt(1, studentId);
-            pstmt.setInt(2, courseId);
+            conn = getReadConnection(0);
+            pstmt = conn.prepareStatement(sql.toString());
+            bindParameters(pstmt, params);
             rs = pstmt.executeQuery();
+            return rs.next() ? rs.getInt(1) : 0;
             
-            if (rs.next() && rs.getInt(1) > 0) {
-                conn.rollback();
-                return "您已經選過此課程";
-            }
-            rs.close();
-            pstmt.close();
-            
-            // 2. 檢查課程是否還有名額
-            pstmt = conn.prepareStatement("SELECT current_students, max_students FROM courses WHERE course_id = ?");
+        } catch (SQLException e) {
+            COUNT_COURSES_TIMER.error();
+            LOGGER.log(Level.SEVERE, "計算課程數失敗：" + filter, e);
+            return -1;
+        } finally {
+            closeResources(conn, pstmt, rs);
+            COUNT_COURSES_TIMER.stop(start);
+        }
+    }
+    
+    /**
+     * 依ID取得單一可選課程
+     * @param courseId 課程ID
+     * @return 課程物件，不存在或已停開時返回null
+     */
+    public Course getCourseById(int courseId) {
+        long start = System.nanoTime();
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        
+        try {
+            conn = getReadConnection(0);
+            pstmt = conn.prepareStatement(SELECT_COURSE_BY_ID);
             pstmt.setInt(1, courseId);
             rs = pstmt.executeQuery();
             
             if (rs.next()) {
-                int current = rs.getInt("current_students");
-                int max = rs.getInt("max_students");
-                
-                if (current >= max) {
-                    conn.rollback();
-                    return "課程已額滿";
-                }
-            } else {
-                conn.rollback();
-                return "課程不存在";
-            }
-            rs.close();
-            pstmt.close();
-            
-            // 3. 新增選課記錄
-            pstmt = conn.prepareStatement(INSERT_ENROLLMENT);
-            pstmt.setInt(1, studentId);
-            pstmt.setInt(2, courseId);
-            int rows = pstmt.executeUpdate();
-            pstmt.close();
-            
-            if (rows > 0) {
-                conn.commit();  // 提交交易
-                LOGGER.info("學生 " + studentId + " 成功選課，課程ID: " + courseId);
-                return "選課成功";
-            } else {
-                conn.rollback();
-                return "選課失敗";
+                return mapCourse(rs);
             }
             
         } catch (SQLException e) {
-            try {
-                if (conn != null) conn.rollback();
-            } catch (SQLException ex) {
-                LOGGER.log(Level.SEVERE, "交易回滾失敗", ex);
-            }
-            LOGGER.log(Level.SEVERE, "選課過程發生錯誤", e);
-            return "系統錯誤，選課失敗";
+            GET_COURSE_BY_ID_TIMER.error();
+            LOGGER.log(Level.SEVERE, "載入課程失敗，課程ID: " + courseId, e);
         } finally {
-            try {
-                if (conn != null) conn.setAutoCommit(true);
-            } catch (SQLException e) {
-                LOGGER.log(Level.WARNING, "恢復自動提交失敗", e);
-            }
             closeResources(conn, pstmt, rs);
+            GET_COURSE_BY_ID_TIMER.stop(start);
         }
+        
+        return null;
     }
     
     /**
-     * 學生退選 (支援並發控制)
-     * @param studentId 學生ID
-     * @param courseId 課程ID
-     * @return 退選結果訊息
+     * 取得所有可選課程的目前選課人數 (只讀兩個欄位，用於更新名額)
+     * 一律查詢主資料庫：唯讀資料來源的人數可能落後，會蓋掉剛選課/退選調整過的人數
+     * @return 課程ID對應選課人數
      */
-    public synchronized String dropCourse(int studentId, int courseId) {
+    public Map<Integer, Integer> getCourseSeatCounts() {
+        long start = System.nanoTime();
+        Map<Integer, Integer> seats = new HashMap<>();
         Connection conn = null;
         PreparedStatement pstmt = null;
+        ResultSet rs = null;
         
         try {
             conn = getConnection();
-            conn.setAutoCommit(false);  // 開始交易
+            pstmt = conn.prepareStatement(SELECT_COURSE_SEATS);
+            rs = pstmt.executeQuery();
             
-            // 1. 刪除選課記錄
-            pstmt = conn.prepareStatement(DELETE_ENROLLMENT);
-            pstmt.setInt(1, studentId);
-            pstmt.setInt(2, courseId);
-            int rows = pstmt.executeUpdate();
-            pstmt.close();
+            while (rs.next()) {
+                seats.put(rs.getInt(1), rs.getInt(2));
+            }
             
-            if (rows > 0) {
-                // 2. 更新課程選課人數
+        } catch (SQLException e) {
+            GET_COURSE_SEAT_COUNTS_TIMER.error();
+            LOGGER.log(Level.SEVERE, "載入選課人數失敗", e);
+        } finally {
+            closeResources(conn, pstmt, rs);
+            GET_COURSE_SEAT_COUNTS_TIMER.stop(start);
+        }
+        
+        return seats;
+    }
+    
+    /**
+     * 取得學生已選課程
+     * @param studentId 學生ID
+     * @return 已選課程列表
+     * @throws SQLException 查詢失敗 (不以空列表代替，避免被當成沒有選課而快取)
+     */
+    public List<Course> getStudentCourses(int studentId) throws SQLException {
+        long start = System.nanoTime();
+        List<Course> courses = new ArrayList<>();
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        
+        try {
+            conn = getReadConnection(studentId);
+            pstmt = conn.prepareStatement(SELECT_STUDENT_COURSES);
+            pstmt.setInt(1, studentId);
+            rs = pstmt.executeQuery();
+            
+            while (rs.next()) {
+                courses.add(mapCourse(rs));
+            }
+            
+            LOGGER.info("學生 " + studentId + " 已選 " + courses.size() + " 門課程");
+            
+        } catch (SQLException e) {
+            GET_STUDENT_COURSES_TIMER.error();
+            LOGGER.log(Level.SEVERE, "載入學生課程失敗", e);
+            throw e;
+        } finally {
+            closeResources(conn, pstmt, rs);
+            GET_STUDENT_COURSES_TIMER.stop(start);
+        }
+        
+        return courses;
+    }
+    
+    /**
+     * 取得學生已選課程與學分統計 (由已選課程快取提供，同一學生連續讀取只查詢一次資料庫)
+     * @param studentId 學生ID
+     * @return 已選課程與學分統計
+     * @throws SQLException 查詢失敗
+     */
+    public StudentRosterCache.Roster getStudentRoster(int studentId) throws SQLException {
+        return rosterCache.get(studentId, this::getStudentCourses);
+    }
+    
+    // ============ 選課相關方法 ============
+    
+    /**
+     * 學生選課 (支援並發控制)
+     * 不使用JVM層級的鎖，不同課程的選課可以平行進行：
+     * 重複選課由 uk_student_course 唯一約束擋下，名額由條件式UPDATE原子性地檢查與佔用
+     * 
+     * @param studentId 學生ID
+     * @param courseId 課程ID
+     * @return 選課結果訊息
+     */
+    public String enrollCourse(int studentId, int courseId) {
+        long start = System.nanoTime();
+        Connection conn = null;
+        
+        try {
+            conn = getConnection();
+            conn.setAutoCommit(false);  // 開始交易
+            
+            // 新增選課記錄 (重複選課會違反唯一約束) 並條件式佔用名額 (額滿時更新0筆)
+            String failure = insertEnrollmentAndReserveSeat(conn, studentId, courseId);
+            if (failure != null) {
+                conn.rollback();
+                return failure;
+            }
+            
+            conn.commit();  // 提交交易
+            recordWrite(studentId);
+            LOGGER.info("學生 " + studentId + " 成功選課，課程ID: " + courseId);
+            return "選課成功";
+            
+        } catch (SQLException e) {
+            ENROLL_COURSE_TIMER.error();
+            try {
+                if (conn != null) conn.rollback();
+            } catch (SQLException ex) {
+                LOGGER.log(Level.SEVERE, "交易回滾失敗", ex);
+            }
+            LOGGER.log(Level.SEVERE, "選課過程發生錯誤", e);
+            return "系統錯誤，選課失敗";
+        } finally {
+            try {
+                if (conn != null) conn.setAutoCommit(true);
+            } catch (SQLException e) {
+                LOGGER.log(Level.WARNING, "恢復自動提交失敗", e);
+            }
+            closeResources(conn, null, null);
+            ENROLL_COURSE_TIMER.stop(start);
+        }
+    }
+    
+    /**
+     * 批次選課：在同一個交易中一次選多門課程
+     * 先以兩個集合查詢檢查整批課程的存在、名額與重複選課，再逐門寫入
+     * 
+     * @param studentId 學生ID
+     * @param courseIds 課程ID列表 (依購物車順序)
+     * @param currentCredits 學生目前已選學分
+     * @param maxCredits 學分上限
+     * @param mode 批次模式
+     * @return 每門課程的結果訊息 (依輸入順序，成功為「選課成功」)
+     */
+    public Map<Integer, String> enrollCourses(int studentId, List<Integer> courseIds,
+                                              int currentCredits, int maxCredits, EnrollmentMode mode) {
+        long start = System.nanoTime();
+        Map<Integer, String> results = new LinkedHashMap<>();
+        if (courseIds == null || courseIds.isEmpty()) {
+            return results;
+        }
+        
+        List<Integer> distinctIds = new ArrayList<>();
+        for (Integer courseId : courseIds) {
+            if (!results.containsKey(courseId)) {
+                results.put(courseId, null);
+                distinctIds.add(courseId);
+            }
+        }
+        String inList = buildInList(distinctIds.size());
+        
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        
+        try {
+            conn = getConnection();
+            conn.setAutoCommit(false);  // 開始交易
+            
+            // 1. 一次查詢整批課程的學分與名額
+            Map<Integer, int[]> capacity = new HashMap<>();
+            pstmt = conn.prepareStatement(SELECT_COURSES_CAPACITY_IN + inList);
+            for (int i = 0; i < distinctIds.size(); i++) {
+                pstmt.setInt(i + 1, distinctIds.get(i));
+            }
+            rs = pstmt.executeQuery();
+            while (rs.next()) {
+                capacity.put(rs.getInt("course_id"), new int[] {
+                    rs.getInt("credits"), rs.getInt("current_students"), rs.getInt("max_students")
+                });
+            }
+            rs.close();
+            pstmt.close();
+            
+            // 2. 一次查詢其中已選過的課程
+            Set<Integer> enrolled = new HashSet<>();
+            pstmt = conn.prepareStatement(SELECT_ENROLLED_COURSE_IDS_IN + inList);
+            pstmt.setInt(1, studentId);
+            for (int i = 0; i < distinctIds.size(); i++) {
+                pstmt.setInt(i + 2, distinctIds.get(i));
+            }
+            rs = pstmt.executeQuery();
+            while (rs.next()) {
+                enrolled.add(rs.getInt(1));
+            }
+            rs.close();
+            pstmt.close();
+            rs = null;
+            pstmt = null;
+            
+            // 3. 依購物車順序檢查學分、名額與重複
+            List<Integer> candidates = new ArrayList<>();
+            int credits = currentCredits;
+            for (Integer courseId : distinctIds) {
+                int[] info = capacity.get(courseId);
+                if (info == null) {
+                    results.put(courseId, "課程不存在");
+                } else if (enrolled.contains(courseId)) {
+                    results.put(courseId, "您已經選過此課程");
+                } else if (info[1] >= info[2]) {
+                    results.put(courseId, "課程已額滿");
+                } else if (credits + info[0] > maxCredits) {
+                    results.put(courseId, "超過學分上限 (" + maxCredits + " 學分)");
+                } else {
+                    credits += info[0];
+                    candidates.add(courseId);
+                }
+            }
+            
+            if (mode == EnrollmentMode.ALL_OR_NOTHING && candidates.size() < distinctIds.size()) {
+                conn.rollback();
+                markSkipped(results);
+                return results;
+            }
+            
+            // 4. 逐門寫入，名額仍以條件式UPDATE原子性地佔用
+            for (Integer courseId : candidates) {
+                Savepoint savepoint = mode == EnrollmentMode.BEST_EFFORT ? conn.setSavepoint() : null;
+                String failure = insertEnrollmentAndReserveSeat(conn, studentId, courseId);
+                
+                if (failure == null) {
+                    results.put(courseId, "選課成功");
+                } else if (savepoint != null) {
+                    conn.rollback(savepoint);
+                    results.put(courseId, failure);
+                } else {
+                    conn.rollback();
+                    results.put(courseId, failure);
+                    for (Integer id : candidates) {
+                        if ("選課成功".equals(results.get(id))) {
+                            results.put(id, null);
+                        }
+                    }
+                    markSkipped(results);
+                    return results;
+                }
+            }
+            
+            conn.commit();  // 提交交易
+            recordWrite(studentId);
+            LOGGER.info("學生 " + studentId + " 批次選課完成，結果: " + results);
+            return results;
+            
+        } catch (SQLException e) {
+            ENROLL_COURSES_TIMER.error();
+            try {
+                if (conn != null) conn.rollback();
+            } catch (SQLException ex) {
+                LOGGER.log(Level.SEVERE, "交易回滾失敗", ex);
+            }
+            LOGGER.log(Level.SEVERE, "批次選課過程發生錯誤", e);
+            for (Integer courseId : distinctIds) {
+                results.put(courseId, "系統錯誤，選課失敗");
+            }
+            return results;
+        } finally {
+            try {
+                if (conn != null) conn.setAutoCommit(true);
+            } catch (SQLException e) {
+                LOGGER.log(Level.WARNING, "恢復自動提交失敗", e);
+            }
+            closeResources(conn, pstmt, rs);
+            ENROLL_COURSES_TIMER.stop(start);
+        }
+    }
+    
+    /**
+     * 學生退選 (支援並發控制，不處理候補遞補，見 dropCourseAndPromote)
+     * @param studentId 學生ID
+     * @param courseId 課程ID
+     * @return 退選結果訊息
+     */
+    public String dropCourse(int studentId, int courseId) {
+        long start = System.nanoTime();
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        
+        try {
+            conn = getConnection();
+            conn.setAutoCommit(false);  // 開始交易
+            
+            // 1. 刪除選課記錄
+            pstmt = conn.prepareStatement(DELETE_ENROLLMENT);
+            pstmt.setInt(1, studentId);
+            pstmt.setInt(2, courseId);
+            int rows = pstmt.executeUpdate();
+            pstmt.close();
+            
+            if (rows > 0) {
+                // 2. 更新課程選課人數
                 pstmt = conn.prepareStatement(UPDATE_COURSE_STUDENTS);
                 pstmt.setInt(1, -1);  // 減少1人
                 pstmt.setInt(2, courseId);
                 pstmt.executeUpdate();
                 
                 conn.commit();  // 提交交易
+                recordWrite(studentId);
                 LOGGER.info("學生 " + studentId + " 成功退選，課程ID: " + courseId);
                 return "退選成功";
             } else {
@@ -366,6 +1110,7 @@ public class DatabaseManager {
             }
             
         } catch (SQLException e) {
+            DROP_COURSE_TIMER.error();
             try {
                 if (conn != null) conn.rollback();
             } catch (SQLException ex) {
@@ -380,7 +1125,162 @@ public class DatabaseManager {
                 LOGGER.log(Level.WARNING, "恢復自動提交失敗", e);
             }
             closeResources(conn, pstmt, null);
+            DROP_COURSE_TIMER.stop(start);
+        }
+    }
+    
+    /**
+     * 退選並在同一個交易中由候補名單遞補
+     * 依候補順序逐一檢查學分與衝堂，第一位符合條件的學生取得釋出的名額；
+     * 遞補成功或本身不符合條件的候補者會從候補名單移除，課程仍額滿時候補名單不變
+     * 
+     * @param studentId 學生ID
+     * @param courseId 課程ID
+     * @param maxCredits 學分上限
+     * @return 退選與遞補結果
+     */
+    public DropResult dropCourseAndPromote(int studentId, int courseId, int maxCredits) {
+        long start = System.nanoTime();
+        Connection conn = null;
+        
+        try {
+            conn = getConnection();
+            conn.setAutoCommit(false);  // 開始交易
+            
+            // 1. 刪除選課記錄並釋出名額
+            int rows;
+            try (PreparedStatement delete = conn.prepareStatement(DELETE_ENROLLMENT)) {
+                delete.setInt(1, studentId);
+                delete.setInt(2, courseId);
+                rows = delete.executeUpdate();
+            }
+            if (rows == 0) {
+                conn.rollback();
+                return new DropResult("您尚未選擇此課程", 0, null);
+            }
+            try (PreparedStatement update = conn.prepareStatement(UPDATE_COURSE_STUDENTS)) {
+                update.setInt(1, -1);
+                update.setInt(2, courseId);
+                update.executeUpdate();
+            }
+            
+            // 2. 由候補名單遞補
+            List<Integer> leftWaitlist = new ArrayList<>();
+            int promoted = promoteFromWaitlist(conn, courseId, maxCredits, leftWaitlist);
+            
+            conn.commit();  // 提交交易
+            recordWrite(studentId);
+            recordWrite(promoted);
+            LOGGER.info("學生 " + studentId + " 成功退選，課程ID: " + courseId +
+                       (promoted > 0 ? "，候補學生 " + promoted + " 遞補" : ""));
+            return new DropResult("退選成功", promoted, leftWaitlist);
+            
+        } catch (SQLException e) {
+            DROP_COURSE_AND_PROMOTE_TIMER.error();
+            try {
+                if (conn != null) conn.rollback();
+            } catch (SQLException ex) {
+                LOGGER.log(Level.SEVERE, "交易回滾失敗", ex);
+            }
+            LOGGER.log(Level.SEVERE, "退選過程發生錯誤", e);
+            return new DropResult("系統錯誤，退選失敗", 0, null);
+        } finally {
+            try {
+                if (conn != null) conn.setAutoCommit(true);
+            } catch (SQLException e) {
+                LOGGER.log(Level.WARNING, "恢復自動提交失敗", e);
+            }
+            closeResources(conn, null, null);
+            DROP_COURSE_AND_PROMOTE_TIMER.stop(start);
+        }
+    }
+    
+    /**
+     * 依候補順序找出第一位仍符合選課條件的學生並為他選課 (在呼叫端的交易中執行)
+     * 只有學生本身的原因 (學分、衝堂、已選過) 才移出候補名單；課程仍額滿時停止，名單不變
+     * @return 遞補的學生ID，沒有人遞補時返回0
+     */
+    private int promoteFromWaitlist(Connection conn, int courseId, int maxCredits,
+                                    List<Integer> leftWaitlist) throws SQLException {
+        List<Integer> candidates = new ArrayList<>();
+        try (PreparedStatement select = conn.prepareStatement(SELECT_COURSE_WAITLIST)) {
+            select.setInt(1, courseId);
+            try (ResultSet rs = select.executeQuery()) {
+                while (rs.next()) {
+                    candidates.add(rs.getInt(1));
+                }
+            }
+        }
+        if (candidates.isEmpty()) {
+            return 0;
+        }
+        
+        int[] credits = new int[1];
+        WeeklySlots slots = loadCreditsAndSlots(conn, SELECT_COURSE_CREDITS_SCHEDULE, courseId, credits);
+        
+        for (Integer candidate : candidates) {
+            String blocker = promotionBlocker(conn, candidate, credits[0], slots, maxCredits);
+            if (blocker == null) {
+                Savepoint savepoint = conn.setSavepoint();
+                blocker = insertEnrollmentAndReserveSeat(conn, candidate, courseId);
+                if (blocker != null) {
+                    conn.rollback(savepoint);
+                }
+                if ("課程已額滿".equals(blocker)) {
+                    // 課程仍然額滿 (例如原本就超收)：沒有名額可遞補，保留這位與之後的候補者
+                    LOGGER.info("課程 " + courseId + " 退選後仍額滿，候補名單維持不變");
+                    return 0;
+                }
+            }
+            
+            // 遞補成功或這位學生本身不符合條件：移出候補名單
+            try (PreparedStatement delete = conn.prepareStatement(DELETE_WAITLIST)) {
+                delete.setInt(1, courseId);
+                delete.setInt(2, candidate);
+                delete.executeUpdate();
+            }
+            leftWaitlist.add(candidate);
+            if (blocker == null) {
+                return candidate;
+            }
+            LOGGER.info("候補學生 " + candidate + " 無法遞補課程 " + courseId + "：" + blocker);
+        }
+        return 0;
+    }
+    
+    /**
+     * 檢查候補學生目前是否仍可選這門課 (學分上限與衝堂)
+     * @return 無法遞補的原因，null表示可以遞補
+     */
+    private String promotionBlocker(Connection conn, int studentId, int courseCredits,
+                                    WeeklySlots courseSlots, int maxCredits) throws SQLException {
+        int[] enrolledCredits = new int[1];
+        WeeklySlots occupied = loadCreditsAndSlots(conn, SELECT_ENROLLED_CREDITS_SCHEDULES, studentId, enrolledCredits);
+        if (enrolledCredits[0] + courseCredits > maxCredits) {
+            return "超過學分上限 (" + maxCredits + " 學分)";
+        }
+        if (courseSlots.intersects(occupied)) {
+            return "上課時間衝堂";
+        }
+        return null;
+    }
+    
+    /**
+     * 查詢 (學分, 上課時間) 列，加總學分並聯集上課時段
+     */
+    private static WeeklySlots loadCreditsAndSlots(Connection conn, String sql, int id, int[] totalCredits)
+            throws SQLException {
+        WeeklySlots slots = WeeklySlots.EMPTY;
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, id);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    totalCredits[0] += rs.getInt(1);
+                    slots = slots.union(WeeklySlots.parse(rs.getString(2)));
+                }
+            }
         }
+        return slots;
     }
     
     /**
@@ -390,12 +1290,13 @@ public class DatabaseManager {
      * @return 是否已選課
      */
     public boolean isEnrolled(int studentId, int courseId) {
+        long start = System.nanoTime();
         Connection conn = null;
         PreparedStatement pstmt = null;
         ResultSet rs = null;
         
         try {
-            conn = getConnection();
+            conn = getReadConnection(studentId);
             pstmt = conn.prepareStatement(CHECK_ENROLLMENT_EXISTS);
             pstmt.setInt(1, studentId);
             pstmt.setInt(2, courseId);
@@ -406,11 +1307,442 @@ public class DatabaseManager {
             }
             
         } catch (SQLException e) {
+            IS_ENROLLED_TIMER.error();
             LOGGER.log(Level.SEVERE, "檢查選課狀態失敗", e);
         } finally {
             closeResources(conn, pstmt, rs);
+            IS_ENROLLED_TIMER.stop(start);
         }
         
         return false;
     }
-}
\ No newline at end of file
+    
+    // ============ 名單匯出方法 ============
+    
+    /**
+     * 匯出時逐列處理查詢結果的回呼
+     */
+    public interface RowHandler {
+        /**
+         * 處理目前這一列 (不可保留ResultSet)
+         * @param rs 已移到目前列的結果集
+         */
+        void handle(ResultSet rs) throws SQLException, IOException;
+    }
+    
+    /**
+     * 逐列讀取選課名單 (student_course_view)，不在記憶體中累積
+     * 結果依學號、課程代碼排序
+     * 
+     * @param studentDepartment 學生系所，null 表示全部
+     * @param courseCode 課程代碼，null 表示全部
+     * @param handler 每一列的處理方式
+     * @return 處理的列數
+     * @throws SQLException 如果查詢失敗
+     * @throws IOException 如果處理時寫出失敗
+     */
+    public long streamRoster(String studentDepartment, String courseCode, RowHandler handler)
+            throws SQLException, IOException {
+        StringBuilder sql = new StringBuilder(SELECT_ROSTER);
+        List<String> params = new ArrayList<>();
+        if (studentDepartment != null && !studentDepartment.isEmpty()) {
+            sql.append(params.isEmpty() ? " WHERE" : " AND").append(" student_department = ?");
+            params.add(studentDepartment);
+        }
+        if (courseCode != null && !courseCode.isEmpty()) {
+            sql.append(params.isEmpty() ? " WHERE" : " AND").append(" course_code = ?");
+            params.add(courseCode);
+        }
+        sql.append(" ORDER BY student_code, course_code");
+        
+        return streamQuery(sql.toString(), params.toArray(), 0, handler, STREAM_ROSTER_TIMER);
+    }
+    
+    /**
+     * 逐列讀取學生已選課程 (匯出用，依課程代碼排序)
+     * @param studentId 學生ID
+     * @param handler 每一列的處理方式
+     * @return 處理的列數
+     * @throws SQLException 如果查詢失敗
+     * @throws IOException 如果處理時寫出失敗
+     */
+    public long streamStudentCourses(int studentId, RowHandler handler)
+            throws SQLException, IOException {
+        return streamQuery(SELECT_STUDENT_COURSES_EXPORT, new Object[] { studentId }, studentId, handler,
+                           STREAM_STUDENT_COURSES_TIMER);
+    }
+    
+    /**
+     * 以唯讀、只能前進的游標執行查詢，每次只向資料庫取回固定列數
+     * @param studentId 查詢的學生ID (決定讀取路由)，0 表示與特定學生無關
+     */
+    private long streamQuery(String sql, Object[] params, int studentId, RowHandler handler,
+                             OperationMetrics.Timer timer)
+            throws SQLException, IOException {
+        long start = System.nanoTime();
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        long rows = 0;
+        
+        try {
+            conn = getReadConnection(studentId);
+            pstmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            pstmt.setFetchSize(EXPORT_FETCH_SIZE);
+            for (int i = 0; i < params.length; i++) {
+                pstmt.setObject(i + 1, params[i]);
+            }
+            rs = pstmt.executeQuery();
+            
+            while (rs.next()) {
+                handler.handle(rs);
+                rows++;
+            }
+            return rows;
+            
+        } catch (SQLException | IOException e) {
+            timer.error();
+            throw e;
+        } finally {
+            closeResources(conn, pstmt, rs);
+            timer.stop(start);
+        }
+    }
+    
+    // ============ 候補名單支援方法 ============
+    
+    /**
+     * 取得所有候補記錄 (依候補先後順序)
+     * @return {課程ID, 學生ID} 列表
+     * @throws SQLException 查詢失敗
+     */
+    public List<int[]> getWaitlistEntries() throws SQLException {
+        long start = System.nanoTime();
+        List<int[]> entries = new ArrayList<>();
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        
+        try {
+            conn = getConnection();
+            pstmt = conn.prepareStatement(SELECT_WAITLIST);
+            rs = pstmt.executeQuery();
+            while (rs.next()) {
+                entries.add(new int[] { rs.getInt(1), rs.getInt(2) });
+            }
+            return entries;
+        } catch (SQLException e) {
+            GET_WAITLIST_ENTRIES_TIMER.error();
+            throw e;
+        } finally {
+            closeResources(conn, pstmt, rs);
+            GET_WAITLIST_ENTRIES_TIMER.stop(start);
+        }
+    }
+    
+    /**
+     * 加入候補名單
+     * @param courseId 課程ID
+     * @param studentId 學生ID
+     * @return 是否新增 (已在候補名單中時返回false)
+     * @throws SQLException 寫入失敗
+     */
+    public boolean insertWaitlistEntry(int courseId, int studentId) throws SQLException {
+        long start = System.nanoTime();
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        
+        try {
+            conn = getConnection();
+            pstmt = conn.prepareStatement(INSERT_WAITLIST);
+            pstmt.setInt(1, courseId);
+            pstmt.setInt(2, studentId);
+            pstmt.executeUpdate();
+            return true;
+        } catch (SQLException e) {
+            if (SQLSTATE_DUPLICATE_KEY.equals(e.getSQLState())) {
+                return false;
+            }
+            INSERT_WAITLIST_ENTRY_TIMER.error();
+            throw e;
+        } finally {
+            closeResources(conn, pstmt, null);
+            INSERT_WAITLIST_ENTRY_TIMER.stop(start);
+        }
+    }
+    
+    /**
+     * 移出候補名單
+     * @param courseId 課程ID
+     * @param studentId 學生ID
+     * @return 是否有移除
+     * @throws SQLException 刪除失敗
+     */
+    public boolean deleteWaitlistEntry(int courseId, int studentId) throws SQLException {
+        long start = System.nanoTime();
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        
+        try {
+            conn = getConnection();
+            pstmt = conn.prepareStatement(DELETE_WAITLIST);
+            pstmt.setInt(1, courseId);
+            pstmt.setInt(2, studentId);
+            return pstmt.executeUpdate() > 0;
+        } catch (SQLException e) {
+            DELETE_WAITLIST_ENTRY_TIMER.error();
+            throw e;
+        } finally {
+            closeResources(conn, pstmt, null);
+            DELETE_WAITLIST_ENTRY_TIMER.stop(start);
+        }
+    }
+    
+    // ============ 先修課程支援方法 ============
+    
+    /**
+     * 取得所有先修課程關係
+     * @return {課程ID, 先修課程ID} 列表
+     * @throws SQLException 查詢失敗
+     */
+    public List<int[]> getPrerequisiteEdges() throws SQLException {
+        long start = System.nanoTime();
+        List<int[]> edges = new ArrayList<>();
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        
+        try {
+            conn = getReadConnection(0);
+            pstmt = conn.prepareStatement(SELECT_PREREQUISITE_EDGES);
+            rs = pstmt.executeQuery();
+            while (rs.next()) {
+                edges.add(new int[] { rs.getInt(1), rs.getInt(2) });
+            }
+            return edges;
+        } catch (SQLException e) {
+            GET_PREREQUISITE_EDGES_TIMER.error();
+            throw e;
+        } finally {
+            closeResources(conn, pstmt, rs);
+            GET_PREREQUISITE_EDGES_TIMER.stop(start);
+        }
+    }
+    
+    /**
+     * 取得學生已修畢的課程ID
+     * @param studentId 學生ID
+     * @return 課程ID列表
+     * @throws SQLException 查詢失敗
+     */
+    public List<Integer> getCompletedCourseIds(int studentId) throws SQLException {
+        long start = System.nanoTime();
+        List<Integer> courseIds = new ArrayList<>();
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        
+        try {
+            conn = getReadConnection(studentId);
+            pstmt = conn.prepareStatement(SELECT_COMPLETED_COURSE_IDS);
+            pstmt.setInt(1, studentId);
+            rs = pstmt.executeQuery();
+            while (rs.next()) {
+                courseIds.add(rs.getInt(1));
+            }
+            return courseIds;
+        } catch (SQLException e) {
+            GET_COMPLETED_COURSE_IDS_TIMER.error();
+            throw e;
+        } finally {
+            closeResources(conn, pstmt, rs);
+            GET_COMPLETED_COURSE_IDS_TIMER.stop(start);
+        }
+    }
+    
+    // ============ 座位帳本支援方法 ============
+    
+    /**
+     * 取得所有可選課程的選課人數與上限
+     * @return 課程ID對應 {目前人數, 上限}
+     * @throws SQLException 查詢失敗
+     */
+    public Map<Integer, int[]> getCourseCapacities() throws SQLException {
+        long start = System.nanoTime();
+        Map<Integer, int[]> capacities = new HashMap<>();
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        
+        try {
+            conn = getConnection();
+            pstmt = conn.prepareStatement(SELECT_COURSE_CAPACITIES);
+            rs = pstmt.executeQuery();
+            while (rs.next()) {
+                capacities.put(rs.getInt(1), new int[] { rs.getInt(2), rs.getInt(3) });
+            }
+            return capacities;
+        } catch (SQLException e) {
+            GET_COURSE_CAPACITIES_TIMER.error();
+            throw e;
+        } finally {
+            closeResources(conn, pstmt, rs);
+            GET_COURSE_CAPACITIES_TIMER.stop(start);
+        }
+    }
+    
+    /**
+     * 取得所有有效的選課記錄
+     * @return {學生ID, 課程ID} 列表
+     * @throws SQLException 查詢失敗
+     */
+    public List<int[]> getEnrolledPairs() throws SQLException {
+        long start = System.nanoTime();
+        List<int[]> pairs = new ArrayList<>();
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        
+        try {
+            conn = getConnection();
+            pstmt = conn.prepareStatement(SELECT_ENROLLED_PAIRS);
+            rs = pstmt.executeQuery();
+            while (rs.next()) {
+                pairs.add(new int[] { rs.getInt(1), rs.getInt(2) });
+            }
+            return pairs;
+        } catch (SQLException e) {
+            GET_ENROLLED_PAIRS_TIMER.error();
+            throw e;
+        } finally {
+            closeResources(conn, pstmt, rs);
+            GET_ENROLLED_PAIRS_TIMER.stop(start);
+        }
+    }
+    
+    /**
+     * 以選課記錄一次重新計算所有課程的選課人數 (集合式UPDATE)
+     * @return 更新的課程數
+     * @throws SQLException 更新失敗
+     */
+    public int recountCourseStudents() throws SQLException {
+        long start = System.nanoTime();
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        
+        try {
+            conn = getConnection();
+            pstmt = conn.prepareStatement(RECOUNT_COURSE_STUDENTS);
+            int rows = pstmt.executeUpdate();
+            LOGGER.info("已重新計算 " + rows + " 門課程的選課人數");
+            return rows;
+        } catch (SQLException e) {
+            RECOUNT_COURSE_STUDENTS_TIMER.error();
+            throw e;
+        } finally {
+            closeResources(conn, pstmt, null);
+            RECOUNT_COURSE_STUDENTS_TIMER.stop(start);
+        }
+    }
+    
+    /**
+     * 取得選課人數超過上限的課程 (大量匯入選課記錄後檢查)
+     * @return 「課程代碼 (人數/上限)」列表，依課程代碼排序
+     * @throws SQLException 查詢失敗
+     */
+    public List<String> getOverbookedCourses() throws SQLException {
+        long start = System.nanoTime();
+        List<String> courses = new ArrayList<>();
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        
+        try {
+            conn = getConnection();
+            pstmt = conn.prepareStatement(SELECT_OVERBOOKED_COURSES);
+            rs = pstmt.executeQuery();
+            while (rs.next()) {
+                courses.add(rs.getString(1) + " (" + rs.getInt(2) + "/" + rs.getInt(3) + ")");
+            }
+            return courses;
+        } catch (SQLException e) {
+            GET_OVERBOOKED_COURSES_TIMER.error();
+            throw e;
+        } finally {
+            closeResources(conn, pstmt, rs);
+            GET_OVERBOOKED_COURSES_TIMER.stop(start);
+        }
+    }
+    
+    /**
+     * 將座位帳本已確認的選課/退選依序寫入資料庫 (同一個交易)
+     * 每筆操作都是冪等的：重複的選課與不存在的退選不會改變人數，
+     * 因此當機後重放日誌也不會重複計算
+     * 
+     * @param writes 依序的待寫入操作
+     * @throws SQLException 寫入失敗 (整批回滾)
+     */
+    public void applyLedgerWrites(List<SeatLedger.PendingWrite> writes) throws SQLException {
+        long start = System.nanoTime();
+        Connection conn = null;
+        
+        try {
+            conn = getConnection();
+            conn.setAutoCommit(false);  // 開始交易
+            
+            for (SeatLedger.PendingWrite write : writes) {
+                int changed;
+                if (write.isEnroll()) {
+                    Savepoint savepoint = conn.setSavepoint();
+                    try (PreparedStatement insert = conn.prepareStatement(INSERT_ENROLLMENT)) {
+                        insert.setInt(1, write.getStudentId());
+                        insert.setInt(2, write.getCourseId());
+                        changed = insert.executeUpdate();
+                    } catch (SQLException e) {
+                        if (!SQLSTATE_DUPLICATE_KEY.equals(e.getSQLState())) {
+                            throw e;
+                        }
+                        conn.rollback(savepoint);
+                        changed = 0;
+                    }
+                } else {
+                    try (PreparedStatement delete = conn.prepareStatement(DELETE_ENROLLMENT)) {
+                        delete.setInt(1, write.getStudentId());
+                        delete.setInt(2, write.getCourseId());
+                        changed = delete.executeUpdate();
+                    }
+                }
+                
+                if (changed > 0) {
+                    try (PreparedStatement update = conn.prepareStatement(UPDATE_COURSE_STUDENTS)) {
+                        update.setInt(1, write.isEnroll() ? 1 : -1);
+                        update.setInt(2, write.getCourseId());
+                        update.executeUpdate();
+                    }
+                }
+            }
+            
+            conn.commit();  // 提交交易
+            for (SeatLedger.PendingWrite write : writes) {
+                recordWrite(write.getStudentId());
+            }
+            
+        } catch (SQLException e) {
+            APPLY_LEDGER_WRITES_TIMER.error();
+            try {
+                if (conn != null) conn.rollback();
+            } catch (SQLException ex) {
+                LOGGER.log(Level.SEVERE, "交易回滾失敗", ex);
+            }
+            throw e;
+        } finally {
+            try {
+                if (conn != null) conn.setAutoCommit(true);
+            } catch (SQLException e) {
+                LOGGER.log(Level.WARNING, "恢復自動提交失敗", e);
+            }
+            closeResources(conn, null, null);
+            APPLY_LEDGER_WRITES_TIMER.stop(start);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+// ==================== 31. DropResult.java ====================
+/**
+ * 退選結果
+ * 除了退選訊息，也回報同一個交易中由候補名單遞補的學生，
+ * 以及本次從候補名單移除的學生 (遞補成功或已不符合選課條件)
+ */
+package service;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+public class DropResult implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // ============ 屬性定義 ============
+    private final String message;              // 退選結果訊息
+    private final int promotedStudentId;       // 遞補的學生ID (0表示沒有遞補)
+    private final List<Integer> leftWaitlist;  // 從候補名單移除的學生ID
+
+    // ============ 建構子 ============
+
+    /**
+     * 建構子
+     * @param message 退選結果訊息
+     * @param promotedStudentId 遞補的學生ID，0表示沒有遞補
+     * @param leftWaitlist 從候補名單移除的學生ID
+     */
+    public DropResult(String message, int promotedStudentId, List<Integer> leftWaitlist) {
+        this.message = message;
+        this.promotedStudentId = promotedStudentId;
+        this.leftWaitlist = leftWaitlist != null ? leftWaitlist : Collections.<Integer>emptyList();
+    }
+
+    // ============ Getter 方法 ============
+
+    public String getMessage() { return message; }
+    public boolean isSuccess() { return "退選成功".equals(message); }
+    public boolean hasPromotion() { return promotedStudentId > 0; }
+    public int getPromotedStudentId() { return promotedStudentId; }
+    public List<Integer> getLeftWaitlist() { return leftWaitlist; }
+
+    // ============ 覆寫方法 ============
+
+    @Override
+    public String toString() {
+        return String.format("DropResult{%s, 遞補=%d}", message, promotedStudentId);
+    }
+}
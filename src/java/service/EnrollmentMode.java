@@ -0,0 +1,14 @@
+// ==================== 14. EnrollmentMode.java ====================
+/**
+ * 批次選課模式
+ */
+package service;
+
+public enum EnrollmentMode {
+
+    /** 全部成功才提交，任一門課失敗則整批不選 */
+    ALL_OR_NOTHING,
+
+    /** 盡量選課，失敗的課程略過，其餘照常提交 */
+    BEST_EFFORT
+}
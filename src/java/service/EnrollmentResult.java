@@ -0,0 +1,47 @@
+// ==================== 15. EnrollmentResult.java ====================
+/**
+ * 單一課程的選課結果
+ * 用於批次選課時回報每一門課程的成功與否
+ */
+package service;
+
+import entity.Course;
+import java.io.Serializable;
+
+public class EnrollmentResult implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // ============ 屬性定義 ============
+    private final Course course;      // 課程
+    private final boolean success;    // 是否選課成功
+    private final String message;     // 結果訊息
+
+    // ============ 建構子 ============
+
+    /**
+     * 建構子
+     * @param course 課程物件
+     * @param success 是否成功
+     * @param message 結果訊息
+     */
+    public EnrollmentResult(Course course, boolean success, String message) {
+        this.course = course;
+        this.success = success;
+        this.message = message;
+    }
+
+    // ============ Getter 方法 ============
+
+    public Course getCourse() { return course; }
+    public boolean isSuccess() { return success; }
+    public String getMessage() { return message; }
+
+    // ============ 覆寫方法 ============
+
+    @Override
+    public String toString() {
+        return String.format("EnrollmentResult{%s - %s}",
+                             course != null ? course.getCourseCode() : null, message);
+    }
+}
@@ -0,0 +1,329 @@
+// ==================== 35. OperationMetrics.java ====================
+/**
+ * 操作效能統計
+ * 為 DatabaseManager 與 CourseService 的每個操作記錄次數、錯誤數與延遲分布，
+ * 並彙整執行緒池、連接池等即時數值；透過 JMX (coursedb:type=OperationMetrics)
+ * 與 MetricsServlet 的文字格式對外提供，用來找出選課尖峰時時間花在哪裡
+ *
+ * 延遲以對數分桶的直方圖記錄 (每個2的次方再分8格，誤差約12%)，
+ * 記錄一次只需要幾個原子遞增，不保存原始樣本
+ */
+package service;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+public class OperationMetrics implements OperationMetricsMXBean {
+
+    // ============ 常數定義 ============
+    private static final Logger LOGGER = Logger.getLogger(OperationMetrics.class.getName());
+
+    private static final String OBJECT_NAME = "coursedb:type=OperationMetrics";
+
+    // 直方圖：小於 2^(SUB_BITS+1) 微秒的值各佔一格，之後每個2的次方分 2^SUB_BITS 格
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int LINEAR_BUCKETS = SUB_BUCKETS * 2;
+    private static final int BUCKET_COUNT = LINEAR_BUCKETS + (63 - SUB_BITS - 1) * SUB_BUCKETS;
+
+    // ============ 單例模式實作 ============
+    private static OperationMetrics instance;
+
+    private final ConcurrentHashMap<String, Timer> timers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    /**
+     * 私有建構子
+     */
+    private OperationMetrics() {
+    }
+
+    /**
+     * 取得OperationMetrics的唯一實例
+     * @return OperationMetrics實例
+     */
+    public static synchronized OperationMetrics getInstance() {
+        if (instance == null) {
+            instance = new OperationMetrics();
+        }
+        return instance;
+    }
+
+    /**
+     * 取得 (或建立) 指定名稱的計時器，供各類別保存在靜態欄位中
+     * @param name 操作名稱，例如 db.enrollCourse
+     * @return 計時器
+     */
+    public static Timer timer(String name) {
+        return getInstance().timers.computeIfAbsent(name, Timer::new);
+    }
+
+    // ============ 即時數值 ============
+
+    /**
+     * 登記即時數值 (例如執行緒池佇列長度)，同名的數值會被取代
+     * @param name 名稱
+     * @param supplier 讀取目前數值的函式
+     */
+    public void gauge(String name, LongSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    // ============ 查詢方法 ============
+
+    @Override
+    public Map<String, Snapshot> getOperations() {
+        Map<String, Snapshot> result = new TreeMap<>();
+        for (Timer timer : timers.values()) {
+            Snapshot snapshot = timer.snapshot();
+            if (snapshot.getCount() > 0) {
+                result.put(timer.name, snapshot);
+            }
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    @Override
+    public Map<String, Long> getGauges() {
+        Map<String, Long> result = new TreeMap<>();
+        for (Map.Entry<String, LongSupplier> entry : gauges.entrySet()) {
+            try {
+                result.put(entry.getKey(), entry.getValue().getAsLong());
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.FINE, "讀取即時數值失敗：" + entry.getKey(), e);
+            }
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    @Override
+    public void reset() {
+        for (Timer timer : timers.values()) {
+            timer.reset();
+        }
+        LOGGER.info("效能統計已歸零");
+    }
+
+    /**
+     * 以文字格式輸出所有統計 (每行一個數值，相容 Prometheus 的文字格式)
+     * @return 統計內容
+     */
+    @Override
+    public String getText() {
+        Map<String, Snapshot> operations = getOperations();
+        StringBuilder text = new StringBuilder();
+        // 同一個指標的所有行必須連續輸出
+        text.append("# TYPE coursedb_operation_count counter\n");
+        operations.forEach((op, s) -> appendSample(text, "coursedb_operation_count", op, null, s.getCount()));
+        text.append("# TYPE coursedb_operation_errors counter\n");
+        operations.forEach((op, s) -> appendSample(text, "coursedb_operation_errors", op, null, s.getErrors()));
+        text.append("# TYPE coursedb_operation_latency_ms summary\n");
+        operations.forEach((op, s) -> {
+            appendSample(text, "coursedb_operation_latency_ms", op, "0.5", s.getP50Millis());
+            appendSample(text, "coursedb_operation_latency_ms", op, "0.99", s.getP99Millis());
+            appendSample(text, "coursedb_operation_latency_ms", op, "1", s.getMaxMillis());
+        });
+        text.append("# TYPE coursedb_operation_latency_ms_mean gauge\n");
+        operations.forEach((op, s) -> appendSample(text, "coursedb_operation_latency_ms_mean", op, null, s.getMeanMillis()));
+        text.append("# TYPE coursedb_gauge gauge\n");
+        for (Map.Entry<String, Long> entry : getGauges().entrySet()) {
+            text.append("coursedb_gauge{name=\"").append(entry.getKey()).append("\"} ")
+                .append(entry.getValue()).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static void appendSample(StringBuilder text, String metric, String op, String quantile, Number value) {
+        text.append(metric).append("{op=\"").append(op).append('"');
+        if (quantile != null) {
+            text.append(",quantile=\"").append(quantile).append('"');
+        }
+        text.append("} ");
+        if (value instanceof Double) {
+            text.append(String.format(Locale.ROOT, "%.3f", value.doubleValue()));
+        } else {
+            text.append(value);
+        }
+        text.append('\n');
+    }
+
+    // ============ JMX 註冊 ============
+
+    /**
+     * 註冊到平台 MBeanServer (重複註冊時先移除舊的)
+     */
+    public void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+            LOGGER.info("效能統計已註冊到JMX：" + OBJECT_NAME);
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, "效能統計註冊JMX失敗", e);
+        }
+    }
+
+    /**
+     * 從平台 MBeanServer 移除
+     */
+    public void unregisterMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, "效能統計移除JMX失敗", e);
+        }
+    }
+
+    // ============ 直方圖分桶 ============
+
+    private static int bucketIndex(long micros) {
+        if (micros < LINEAR_BUCKETS) {
+            return (int) Math.max(0, micros);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_BUCKETS + (exponent - SUB_BITS - 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long bucketUpperBound(int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+        int exponent = (index - LINEAR_BUCKETS) / SUB_BUCKETS + SUB_BITS + 1;
+        int sub = (index - LINEAR_BUCKETS) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BITS);
+        return (SUB_BUCKETS + sub) * width + width - 1;
+    }
+
+    // ============ 內部類別 ============
+
+    /**
+     * 單一操作的計時器
+     * 使用方式：開始時記下 System.nanoTime()，結束時 (通常在 finally) 呼叫 stop，
+     * 發生錯誤時另外呼叫 error
+     */
+    public static final class Timer {
+        private final String name;
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder totalMicros = new LongAdder();
+        private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+        private Timer(String name) {
+            this.name = name;
+        }
+
+        /**
+         * 記錄一次操作
+         * @param startNanos 開始時的 System.nanoTime()
+         */
+        public void stop(long startNanos) {
+            long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+            totalMicros.add(micros);
+            maxMicros.accumulate(micros);
+            buckets.incrementAndGet(bucketIndex(micros));
+        }
+
+        /**
+         * 記錄一次錯誤 (延遲仍由 stop 記錄)
+         */
+        public void error() {
+            errors.increment();
+        }
+
+        Snapshot snapshot() {
+            long[] copy = new long[BUCKET_COUNT];
+            long total = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                copy[i] = buckets.get(i);
+                total += copy[i];
+            }
+            long max = maxMicros.get();
+            return new Snapshot(total, errors.sum(), total > 0 ? totalMicros.sum() / 1000.0 / total : 0,
+                percentile(copy, total, 0.50, max), percentile(copy, total, 0.99, max), max / 1000.0);
+        }
+
+        /**
+         * 歸零 (與同時進行的記錄之間不保證一致，只用於手動重新觀察)
+         */
+        void reset() {
+            errors.reset();
+            totalMicros.reset();
+            maxMicros.reset();
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                buckets.set(i, 0);
+            }
+        }
+
+        private static double percentile(long[] counts, long total, double p, long max) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(p * total);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(bucketUpperBound(i), max) / 1000.0;
+                }
+            }
+            return max / 1000.0;
+        }
+    }
+
+    /**
+     * 某一時刻的操作統計 (延遲單位為毫秒)
+     */
+    public static final class Snapshot {
+        private final long count;
+        private final long errors;
+        private final double meanMillis;
+        private final double p50Millis;
+        private final double p99Millis;
+        private final double maxMillis;
+
+        Snapshot(long count, long errors, double meanMillis, double p50Millis, double p99Millis, double maxMillis) {
+            this.count = count;
+            this.errors = errors;
+            this.meanMillis = meanMillis;
+            this.p50Millis = p50Millis;
+            this.p99Millis = p99Millis;
+            this.maxMillis = maxMillis;
+        }
+
+        public long getCount() { return count; }
+        public long getErrors() { return errors; }
+        public double getErrorRate() { return count > 0 ? (double) errors / count : 0; }
+        public double getMeanMillis() { return meanMillis; }
+        public double getP50Millis() { return p50Millis; }
+        public double getP99Millis() { return p99Millis; }
+        public double getMaxMillis() { return maxMillis; }
+
+        @Override
+        public String toString() {
+            return String.format("次數 %d, 錯誤 %d, p50 %.2fms, p99 %.2fms, max %.2fms",
+                count, errors, p50Millis, p99Millis, maxMillis);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+// ==================== 36. OperationMetricsMXBean.java ====================
+/**
+ * 操作效能統計的JMX介面
+ * 在 JConsole / VisualVM 的 coursedb:type=OperationMetrics 下可查看各操作的延遲分布與即時數值
+ */
+package service;
+
+import java.util.Map;
+
+public interface OperationMetricsMXBean {
+
+    /**
+     * 取得各操作的統計 (只包含已被呼叫過的操作)
+     * @return 操作名稱 → 統計
+     */
+    Map<String, OperationMetrics.Snapshot> getOperations();
+
+    /**
+     * 取得即時數值，例如執行緒池佇列長度、執行中的執行緒與連接池使用量
+     * @return 名稱 → 目前數值
+     */
+    Map<String, Long> getGauges();
+
+    /**
+     * 以文字格式輸出所有統計
+     * @return 統計內容
+     */
+    String getText();
+
+    /**
+     * 將所有操作統計歸零 (例如在開放選課前重新開始觀察)
+     */
+    void reset();
+}
@@ -0,0 +1,144 @@
+// ==================== 30. PrerequisiteGraph.java ====================
+/**
+ * 先修課程圖
+ * 由 prerequisites 資料表載入整張圖，並預先計算每門課程的遞移先修集合
+ * (先修的先修也算在內)，選課時只需與學生的已修課程集合做子集合比對，
+ * 不必在每次選課時以遞迴SQL查詢
+ */
+package service;
+
+import entity.CourseSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+
+public class PrerequisiteGraph {
+
+    // ============ 常數定義 ============
+    private static final Logger LOGGER = Logger.getLogger(PrerequisiteGraph.class.getName());
+
+    // SQLState：資料表不存在 (尚未執行升級腳本)
+    private static final String SQLSTATE_TABLE_NOT_FOUND = "42X05";
+
+    // ============ 單例模式實作 ============
+    private static PrerequisiteGraph instance;
+
+    private final DatabaseManager dbManager;
+
+    // 課程ID → 遞移先修集合 (null 表示尚未載入)
+    private final AtomicReference<Map<Integer, CourseSet>> closures = new AtomicReference<>();
+
+    /**
+     * 私有建構子
+     */
+    private PrerequisiteGraph(DatabaseManager dbManager) {
+        this.dbManager = dbManager;
+    }
+
+    /**
+     * 取得PrerequisiteGraph的唯一實例
+     * @return PrerequisiteGraph實例
+     */
+    public static synchronized PrerequisiteGraph getInstance() {
+        if (instance == null) {
+            instance = new PrerequisiteGraph(DatabaseManager.getInstance());
+        }
+        return instance;
+    }
+
+    // ============ 查詢方法 ============
+
+    /**
+     * 取得課程的所有先修課程 (含間接先修)
+     * @param courseId 課程ID
+     * @return 先修課程集合，沒有先修條件時返回 CourseSet.EMPTY
+     * @throws IllegalStateException 無法載入先修課程資料
+     */
+    public CourseSet getClosure(int courseId) {
+        Map<Integer, CourseSet> current = closures.get();
+        if (current == null) {
+            synchronized (this) {
+                current = closures.get();
+                if (current == null) {
+                    current = reload();
+                }
+            }
+        }
+        CourseSet closure = current.get(courseId);
+        return closure != null ? closure : CourseSet.EMPTY;
+    }
+
+    // ============ 載入方法 ============
+
+    /**
+     * 從資料庫重新載入先修課程圖並重新計算所有遞移先修集合
+     * @return 課程ID對應的遞移先修集合
+     * @throws IllegalStateException 無法載入先修課程資料
+     */
+    public synchronized Map<Integer, CourseSet> reload() {
+        Map<Integer, List<Integer>> edges = new HashMap<>();
+        try {
+            for (int[] edge : dbManager.getPrerequisiteEdges()) {
+                edges.computeIfAbsent(edge[0], id -> new ArrayList<>()).add(edge[1]);
+            }
+        } catch (SQLException e) {
+            if (!SQLSTATE_TABLE_NOT_FOUND.equals(e.getSQLState())) {
+                throw new IllegalStateException("無法載入先修課程資料", e);
+            }
+            LOGGER.warning("找不到 prerequisites 資料表，先修課程檢查停用 (請執行資料庫升級腳本)");
+        }
+
+        Map<Integer, CourseSet> computed = computeClosures(edges);
+        closures.set(computed);
+        LOGGER.info(String.format("先修課程圖載入完成：%d 門課程有先修條件", computed.size()));
+        return computed;
+    }
+
+    /**
+     * 以深度優先搜尋計算每門課程的遞移先修集合 (每門課程只計算一次)
+     * 若資料中有循環，略過造成循環的那條先修關係並記錄警告
+     */
+    private static Map<Integer, CourseSet> computeClosures(Map<Integer, List<Integer>> edges) {
+        Map<Integer, Set<Integer>> memo = new HashMap<>();
+        Set<Integer> visiting = new HashSet<>();
+        for (Integer courseId : edges.keySet()) {
+            closureOf(courseId, edges, memo, visiting);
+        }
+
+        Map<Integer, CourseSet> result = new HashMap<>();
+        for (Map.Entry<Integer, Set<Integer>> entry : memo.entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                result.put(entry.getKey(), CourseSet.of(entry.getValue()));
+            }
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    private static Set<Integer> closureOf(Integer courseId, Map<Integer, List<Integer>> edges,
+                                          Map<Integer, Set<Integer>> memo, Set<Integer> visiting) {
+        Set<Integer> closure = memo.get(courseId);
+        if (closure != null) {
+            return closure;
+        }
+        visiting.add(courseId);
+        closure = new HashSet<>();
+        for (Integer prerequisite : edges.getOrDefault(courseId, Collections.emptyList())) {
+            if (visiting.contains(prerequisite)) {
+                LOGGER.warning("先修課程關係有循環，略過：課程 " + courseId + " → " + prerequisite);
+                continue;
+            }
+            closure.add(prerequisite);
+            closure.addAll(closureOf(prerequisite, edges, memo, visiting));
+        }
+        visiting.remove(courseId);
+        memo.put(courseId, closure);
+        return closure;
+    }
+}
@@ -0,0 +1,170 @@
+// ==================== 39. ReadRouter.java ====================
+/**
+ * 讀取連接路由 (讀寫分離)
+ * 課程目錄、名單等唯讀查詢輪流分配到一或多個唯讀資料來源，減輕主資料庫的負擔；
+ * 剛選課或退選的學生在一段時間內查詢自己的資料時仍走主資料庫 (讀到自己剛寫入的結果)，
+ * 唯讀資料來源無法連線時暫時停用並改走主資料庫
+ */
+package service;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class ReadRouter {
+
+    // ============ 常數定義 ============
+    private static final Logger LOGGER = Logger.getLogger(ReadRouter.class.getName());
+
+    // 唯讀資料來源連線失敗後暫停使用的時間
+    private static final long RETRY_AFTER_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    // 每記錄這麼多次寫入清理一次已過期的學生
+    private static final int SWEEP_INTERVAL = 10000;
+
+    // ============ 屬性定義 ============
+    private final List<Replica> replicas;
+    private final long stickyNanos;
+    private final AtomicInteger next = new AtomicInteger();
+
+    // 學生ID → 最後一次寫入的時間 (System.nanoTime)
+    private final ConcurrentHashMap<Integer, Long> recentWriters = new ConcurrentHashMap<>();
+    private final AtomicLong writes = new AtomicLong();
+
+    // 統計：走唯讀資料來源 / 因讀自己的寫入走主資料庫 / 唯讀資料來源失敗改走主資料庫
+    private final LongAdder replicaReads = new LongAdder();
+    private final LongAdder stickyReads = new LongAdder();
+    private final LongAdder fallbackReads = new LongAdder();
+
+    // ============ 建構子 ============
+
+    /**
+     * 建構子
+     * @param providers 唯讀資料來源 (至少一個)
+     * @param stickyMillis 學生寫入後其查詢走主資料庫的時間 (毫秒)，應大於資料同步的延遲
+     */
+    public ReadRouter(List<ConnectionProvider> providers, long stickyMillis) {
+        if (providers == null || providers.isEmpty()) {
+            throw new IllegalArgumentException("至少需要一個唯讀資料來源");
+        }
+        List<Replica> list = new ArrayList<>();
+        for (ConnectionProvider provider : providers) {
+            list.add(new Replica(provider));
+        }
+        this.replicas = Collections.unmodifiableList(list);
+        this.stickyNanos = TimeUnit.MILLISECONDS.toNanos(stickyMillis);
+        LOGGER.info(String.format("讀寫分離已啟用：%d 個唯讀資料來源，寫入後 %d 毫秒內讀自己的資料走主資料庫",
+            providers.size(), stickyMillis));
+    }
+
+    // ============ 路由方法 ============
+
+    /**
+     * 記錄學生剛寫入 (選課、退選、遞補)
+     * @param studentId 學生ID
+     */
+    public void recordWrite(int studentId) {
+        long now = System.nanoTime();
+        recentWriters.put(studentId, now);
+        if (writes.incrementAndGet() % SWEEP_INTERVAL == 0) {
+            recentWriters.values().removeIf(writtenAt -> now - writtenAt > stickyNanos);
+        }
+    }
+
+    /**
+     * 學生是否剛寫入過，查詢自己的資料必須走主資料庫
+     * @param studentId 學生ID，0 表示查詢與特定學生無關
+     * @return 是否必須走主資料庫
+     */
+    public boolean mustUsePrimary(int studentId) {
+        if (studentId <= 0) {
+            return false;
+        }
+        Long writtenAt = recentWriters.get(studentId);
+        if (writtenAt == null) {
+            return false;
+        }
+        if (System.nanoTime() - writtenAt > stickyNanos) {
+            recentWriters.remove(studentId, writtenAt);
+            return false;
+        }
+        stickyReads.increment();
+        return true;
+    }
+
+    /**
+     * 由唯讀資料來源輪流取得連接，失敗的資料來源暫停一段時間
+     * @return 唯讀連接，全部無法使用時返回null (呼叫端改走主資料庫)
+     */
+    public Connection getConnection() {
+        long now = System.nanoTime();
+        int start = Math.floorMod(next.getAndIncrement(), replicas.size());
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+            if (replica.downSince != 0 && now - replica.downSince < RETRY_AFTER_NANOS) {
+                continue;
+            }
+            try {
+                Connection conn = replica.provider.getConnection();
+                replica.downSince = 0;
+                replicaReads.increment();
+                return conn;
+            } catch (SQLException e) {
+                replica.downSince = now;
+                LOGGER.log(Level.WARNING, "唯讀資料來源無法連線，暫停使用 "
+                    + TimeUnit.NANOSECONDS.toSeconds(RETRY_AFTER_NANOS) + " 秒：" + replica.provider.getStatus(), e);
+            }
+        }
+        fallbackReads.increment();
+        return null;
+    }
+
+    // ============ 狀態與關閉 ============
+
+    public long getReplicaReads() { return replicaReads.sum(); }
+    public long getStickyReads() { return stickyReads.sum(); }
+    public long getFallbackReads() { return fallbackReads.sum(); }
+
+    /**
+     * 取得讀寫分離狀態 (用於監控)
+     * @return 狀態描述
+     */
+    public String getStatus() {
+        StringBuilder status = new StringBuilder(String.format(
+            "讀寫分離 (唯讀查詢: %d, 讀自己的寫入: %d, 改走主資料庫: %d)",
+            replicaReads.sum(), stickyReads.sum(), fallbackReads.sum()));
+        for (Replica replica : replicas) {
+            status.append("\n  ").append(replica.downSince != 0 ? "[暫停] " : "").append(replica.provider.getStatus());
+        }
+        return status.toString();
+    }
+
+    /**
+     * 關閉所有唯讀資料來源
+     */
+    public void shutdown() {
+        for (Replica replica : replicas) {
+            replica.provider.shutdown();
+        }
+    }
+
+    // ============ 內部類別 ============
+
+    private static final class Replica {
+        final ConnectionProvider provider;
+        volatile long downSince;  // 連線失敗的時間 (System.nanoTime)，0 表示可用
+
+        Replica(ConnectionProvider provider) {
+            this.provider = provider;
+        }
+    }
+}
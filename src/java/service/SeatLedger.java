@@ -0,0 +1,631 @@
+// ==================== 18. SeatLedger.java ====================
+/**
+ * 記憶體座位帳本 (選課尖峰用)
+ * 啟動時由資料庫的選課人數與選課記錄建立帳本，選課時以無鎖計數器(CAS)決定是否給位，
+ * 確認的選課先寫入日誌檔 (群組提交fsync) 再回應，之後由背景執行緒依序寫回 enrollments；
+ * 當機重啟時重放日誌中尚未寫回的操作，再以資料庫重新對帳
+ *
+ * 需以系統屬性 coursedb.seatLedger.enabled=true 啟用
+ */
+package service;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class SeatLedger {
+
+    // ============ 常數定義 ============
+    private static final Logger LOGGER = Logger.getLogger(SeatLedger.class.getName());
+
+    private static final boolean ENABLED = Boolean.getBoolean("coursedb.seatLedger.enabled");
+    private static final String JOURNAL_PATH = System.getProperty("coursedb.seatLedger.journal", "seat_ledger.journal");
+    private static final String DEAD_LETTER_PATH = System.getProperty("coursedb.seatLedger.deadLetter", "seat_ledger.deadletter");
+    private static final int WRITE_BATCH_SIZE = 200;       // 每次寫回資料庫的最大筆數
+    private static final long RETRY_DELAY_MILLIS = 1000;   // 寫回失敗後的重試間隔
+
+    // 暫時性錯誤 (連線中斷、序列化失敗、死結)：整批保留重試；其他錯誤重試也不會成功
+    private static final String SQLSTATE_CONNECTION_PREFIX = "08";
+    private static final String SQLSTATE_SERIALIZATION_FAILURE = "40001";
+    private static final String SQLSTATE_DEADLOCK = "40XL1";
+
+    // ============ 單例模式實作 ============
+    private static SeatLedger instance;
+
+    private final DatabaseManager dbManager;
+
+    // 帳本：課程ID → 座位計數器
+    private final ConcurrentHashMap<Integer, Seats> seats = new ConcurrentHashMap<>();
+    // 已選課組合 (學生ID<<32 | 課程ID)，用來擋重複選課
+    private final Set<Long> enrolled = ConcurrentHashMap.newKeySet();
+    // 學生ID → 已選課程ID (與 enrolled 同步異動)，學分與衝堂檢查不必等資料庫寫回
+    private final ConcurrentHashMap<Integer, Set<Integer>> coursesByStudent = new ConcurrentHashMap<>();
+
+    // 寫回佇列與背景寫入執行緒
+    private final BlockingQueue<PendingWrite> writeQueue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private final Thread shutdownHook;
+    private volatile boolean running = true;
+
+    // 日誌檔
+    private final File journalFile;
+    private final FileChannel journal;
+    private final Object journalLock = new Object();
+    private long appendedSeq;      // 已寫入日誌的最大序號 (journalLock保護)
+    private long persistedSeq;     // 已寫回資料庫的最大序號 (journalLock保護)
+    private final Object syncMonitor = new Object();
+    private long durableSeq;       // 已fsync的最大序號 (syncMonitor保護)
+    private boolean syncing;       // 是否有執行緒正在fsync (syncMonitor保護)
+
+    /**
+     * 私有建構子：先重放日誌，再由資料庫建立帳本
+     */
+    private SeatLedger(DatabaseManager dbManager, File journalFile) throws IOException, SQLException {
+        this.dbManager = dbManager;
+        this.journalFile = journalFile;
+
+        long lastSeq = recoverJournal();
+        this.appendedSeq = lastSeq;
+        this.persistedSeq = lastSeq;
+        this.durableSeq = lastSeq;
+
+        this.journal = FileChannel.open(journalFile.toPath(),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+
+        reconcile();
+
+        this.writer = new Thread(this::writeLoop, "seat-ledger-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+
+        // JVM結束時的保險；應用程式卸載時會先正常關閉並移除此hook
+        this.shutdownHook = new Thread(this::shutdown, "seat-ledger-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+        LOGGER.info("座位帳本啟動完成，課程 " + seats.size() + " 門，選課記錄 " + enrolled.size() + " 筆");
+    }
+
+    /**
+     * 是否啟用座位帳本
+     * @return 系統屬性 coursedb.seatLedger.enabled 是否為 true
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * 取得SeatLedger的唯一實例 (第一次呼叫時執行復原與對帳)
+     * @return SeatLedger實例
+     * @throws IllegalStateException 如果復原或對帳失敗
+     */
+    public static synchronized SeatLedger getInstance() {
+        // 關閉後再次取得時重新復原與對帳
+        if (instance == null || !instance.running) {
+            try {
+                instance = new SeatLedger(DatabaseManager.getInstance(), new File(JOURNAL_PATH));
+            } catch (IOException | SQLException e) {
+                LOGGER.log(Level.SEVERE, "座位帳本初始化失敗", e);
+                throw new IllegalStateException("座位帳本初始化失敗", e);
+            }
+        }
+        return instance;
+    }
+
+    // ============ 選課與退選 ============
+
+    /**
+     * 選課：以無鎖計數器佔位，日誌落盤後即回應成功，資料庫稍後寫回
+     * @param studentId 學生ID
+     * @param courseId 課程ID
+     * @return 選課結果訊息 (與DatabaseManager.enrollCourse相同)
+     */
+    public String enroll(int studentId, int courseId) {
+        Seats seat = seats.get(courseId);
+        if (seat == null) {
+            return "課程不存在";
+        }
+
+        long key = key(studentId, courseId);
+        if (enrolled.contains(key)) {
+            return "您已經選過此課程";
+        }
+        if (!seat.tryReserve()) {
+            return "課程已額滿";
+        }
+
+        PendingWrite write;
+        synchronized (journalLock) {
+            // 選課組合的異動與日誌順序必須一致，同一組合的選課/退選才不會在重放時顛倒
+            if (!enrolled.add(key)) {
+                seat.release();
+                return "您已經選過此課程";
+            }
+            index(studentId, courseId, true);
+            try {
+                write = append(true, studentId, courseId);
+            } catch (IOException e) {
+                enrolled.remove(key);
+                index(studentId, courseId, false);
+                seat.release();
+                LOGGER.log(Level.SEVERE, "寫入座位日誌失敗", e);
+                return "系統錯誤，選課失敗";
+            }
+        }
+
+        awaitDurableQuietly(write.seq);
+        return "選課成功";
+    }
+
+    /**
+     * 退選：釋放座位，日誌落盤後即回應成功，資料庫稍後寫回
+     * @param studentId 學生ID
+     * @param courseId 課程ID
+     * @return 退選結果訊息 (與DatabaseManager.dropCourse相同)
+     */
+    public String drop(int studentId, int courseId) {
+        long key = key(studentId, courseId);
+        PendingWrite write;
+
+        synchronized (journalLock) {
+            if (!enrolled.remove(key)) {
+                return "您尚未選擇此課程";
+            }
+            index(studentId, courseId, false);
+            try {
+                write = append(false, studentId, courseId);
+            } catch (IOException e) {
+                enrolled.add(key);
+                index(studentId, courseId, true);
+                LOGGER.log(Level.SEVERE, "寫入座位日誌失敗", e);
+                return "系統錯誤，退選失敗";
+            }
+        }
+
+        Seats seat = seats.get(courseId);
+        if (seat != null) {
+            seat.release();
+        }
+        awaitDurableQuietly(write.seq);
+        return "退選成功";
+    }
+
+    /**
+     * 檢查學生是否已選某課程 (不查詢資料庫)
+     * @param studentId 學生ID
+     * @param courseId 課程ID
+     * @return 是否已選課
+     */
+    public boolean isEnrolled(int studentId, int courseId) {
+        return enrolled.contains(key(studentId, courseId));
+    }
+
+    /**
+     * 取得學生目前的已選課程 (帳本中的值，包含尚未寫回資料庫的選課與退選)
+     * @param studentId 學生ID
+     * @return 課程ID列表 (複本)
+     */
+    public List<Integer> getEnrolledCourses(int studentId) {
+        Set<Integer> courses = coursesByStudent.get(studentId);
+        return courses != null ? new ArrayList<>(courses) : new ArrayList<Integer>();
+    }
+
+    /**
+     * 取得課程目前的選課人數 (帳本中的值)
+     * @param courseId 課程ID
+     * @return 選課人數，課程不存在時返回-1
+     */
+    public int getCurrentStudents(int courseId) {
+        Seats seat = seats.get(courseId);
+        return seat != null ? seat.current.get() : -1;
+    }
+
+    /**
+     * 尚未寫回資料庫的操作數
+     * @return 佇列長度
+     */
+    public int getPendingWrites() {
+        return writeQueue.size();
+    }
+
+    // ============ 日誌 ============
+
+    /**
+     * 寫入日誌並排入寫回佇列 (呼叫端須持有journalLock)
+     * 在同一個鎖內排入佇列，確保寫回順序與日誌順序一致
+     */
+    private PendingWrite append(boolean enroll, int studentId, int courseId) throws IOException {
+        PendingWrite write = new PendingWrite(appendedSeq + 1, enroll, studentId, courseId);
+        writeLine((enroll ? "E " : "D ") + write.seq + " " + studentId + " " + courseId);
+        appendedSeq = write.seq;
+        writeQueue.add(write);
+        return write;
+    }
+
+    /**
+     * 等待日誌落盤；操作已排入寫回佇列，fsync失敗只影響當機時的復原
+     */
+    private void awaitDurableQuietly(long seq) {
+        try {
+            awaitDurable(seq);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "座位日誌fsync失敗，序號 " + seq + " 在當機時可能遺失", e);
+        }
+    }
+
+    /**
+     * 群組提交：沒有人在fsync時由目前的執行緒負責，
+     * 其他執行緒等待，期間寫入的操作會被同一次fsync一起落盤
+     */
+    private void awaitDurable(long seq) throws IOException {
+        while (true) {
+            synchronized (syncMonitor) {
+                while (durableSeq < seq && syncing) {
+                    try {
+                        syncMonitor.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("等待日誌落盤時被中斷", e);
+                    }
+                }
+                if (durableSeq >= seq) {
+                    return;
+                }
+                syncing = true;
+            }
+
+            long target;
+            synchronized (journalLock) {
+                target = appendedSeq;
+            }
+            boolean forced = false;
+            try {
+                forceJournal();
+                forced = true;
+            } finally {
+                synchronized (syncMonitor) {
+                    if (forced) {
+                        durableSeq = Math.max(durableSeq, target);
+                    }
+                    syncing = false;
+                    syncMonitor.notifyAll();
+                }
+            }
+        }
+    }
+
+    private void forceJournal() throws IOException {
+        journal.force(false);
+    }
+
+    private void writeLine(String line) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            journal.write(buffer);
+        }
+    }
+
+    /**
+     * 標記已寫回資料庫的序號；全部寫回時截斷日誌避免無限成長
+     */
+    private void markPersisted(long seq) {
+        synchronized (journalLock) {
+            persistedSeq = seq;
+            try {
+                if (persistedSeq == appendedSeq) {
+                    journal.truncate(0);
+                    journal.position(0);
+                } else {
+                    writeLine("P " + seq);
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "更新座位日誌失敗 (重啟時會重放，不影響正確性)", e);
+            }
+        }
+    }
+
+    /**
+     * 讀取既有日誌，把最後一個寫回標記之後的操作重放到資料庫
+     * @return 日誌中最大的序號
+     */
+    private long recoverJournal() throws IOException, SQLException {
+        if (!journalFile.exists() || journalFile.length() == 0) {
+            return 0;
+        }
+
+        List<PendingWrite> entries = new ArrayList<>();
+        long lastPersisted = 0;
+        long lastSeq = 0;
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(journalFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.trim().split(" ");
+                try {
+                    if (parts.length == 2 && "P".equals(parts[0])) {
+                        lastPersisted = Math.max(lastPersisted, Long.parseLong(parts[1]));
+                    } else if (parts.length == 4 && ("E".equals(parts[0]) || "D".equals(parts[0]))) {
+                        PendingWrite write = new PendingWrite(Long.parseLong(parts[1]), "E".equals(parts[0]),
+                            Integer.parseInt(parts[2]), Integer.parseInt(parts[3]));
+                        entries.add(write);
+                        lastSeq = Math.max(lastSeq, write.seq);
+                    }
+                } catch (NumberFormatException e) {
+                    // 最後一行可能在當機時只寫了一半
+                    LOGGER.warning("略過無法解析的座位日誌：" + line);
+                }
+            }
+        }
+
+        List<PendingWrite> replay = new ArrayList<>();
+        for (PendingWrite write : entries) {
+            if (write.seq > lastPersisted) {
+                replay.add(write);
+            }
+        }
+        if (!replay.isEmpty()) {
+            try {
+                dbManager.applyLedgerWrites(replay);
+            } catch (SQLException e) {
+                if (isTransient(e)) {
+                    throw e;
+                }
+                LOGGER.log(Level.WARNING, "座位日誌復原整批重放失敗，改為逐筆重放", e);
+                for (PendingWrite write : replay) {
+                    applyOrQuarantine(write);
+                }
+            }
+            LOGGER.warning("座位日誌復原：重放 " + replay.size() + " 筆尚未寫回的操作");
+        }
+        return lastSeq;
+    }
+
+    /**
+     * 以資料庫為準重新計算人數並建立帳本
+     */
+    private void reconcile() throws SQLException {
+        dbManager.recountCourseStudents();
+
+        for (Map.Entry<Integer, int[]> entry : dbManager.getCourseCapacities().entrySet()) {
+            seats.put(entry.getKey(), new Seats(entry.getValue()[0], entry.getValue()[1]));
+        }
+        for (int[] pair : dbManager.getEnrolledPairs()) {
+            enrolled.add(key(pair[0], pair[1]));
+            index(pair[0], pair[1], true);
+        }
+    }
+
+    // ============ 背景寫回 ============
+
+    /**
+     * 依日誌順序批次寫回資料庫，暫時性錯誤時保留尚未寫回的操作重試
+     */
+    private void writeLoop() {
+        List<PendingWrite> batch = new ArrayList<>(WRITE_BATCH_SIZE);
+        while (running || !writeQueue.isEmpty()) {
+            try {
+                if (batch.isEmpty()) {
+                    PendingWrite first = writeQueue.poll(500, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    writeQueue.drainTo(batch, WRITE_BATCH_SIZE - 1);
+                }
+
+                writeBatch(batch);
+
+            } catch (InterruptedException e) {
+                // 關閉時會中斷等待，迴圈條件決定是否繼續清空佇列
+                running = false;
+            } catch (SQLException e) {
+                LOGGER.log(Level.SEVERE, "座位帳本寫回資料庫失敗，稍後重試 (" + batch.size() + " 筆)", e);
+                if (!running) {
+                    // 關閉中仍失敗，保留日誌待下次啟動重放
+                    return;
+                }
+                try {
+                    Thread.sleep(RETRY_DELAY_MILLIS);
+                } catch (InterruptedException ie) {
+                    running = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * 寫回一批操作，寫回 (或隔離) 的操作從 batch 移除並標記已寫回
+     * 整批失敗且不是暫時性錯誤時改為逐筆寫回，只隔離寫不進去的那一筆，
+     * 之後的寫回不會一直卡在同一批
+     *
+     * @throws SQLException 暫時性錯誤，batch 保留尚未寫回的操作
+     */
+    private void writeBatch(List<PendingWrite> batch) throws SQLException {
+        try {
+            dbManager.applyLedgerWrites(batch);
+            markPersisted(batch.get(batch.size() - 1).seq);
+            batch.clear();
+            return;
+        } catch (SQLException e) {
+            if (isTransient(e)) {
+                throw e;
+            }
+            LOGGER.log(Level.WARNING, "座位帳本整批寫回失敗 (SQLState " + e.getSQLState()
+                       + ")，改為逐筆寫回 (" + batch.size() + " 筆)", e);
+        }
+
+        Iterator<PendingWrite> it = batch.iterator();
+        while (it.hasNext()) {
+            PendingWrite write = it.next();
+            applyOrQuarantine(write);
+            markPersisted(write.seq);
+            it.remove();
+        }
+    }
+
+    /**
+     * 寫回單一操作，非暫時性錯誤時記錄到隔離檔後略過
+     * (帳本仍保留這筆操作，下次啟動對帳時以資料庫為準)
+     *
+     * @throws SQLException 暫時性錯誤
+     */
+    private void applyOrQuarantine(PendingWrite write) throws SQLException {
+        try {
+            dbManager.applyLedgerWrites(Collections.singletonList(write));
+        } catch (SQLException e) {
+            if (isTransient(e)) {
+                throw e;
+            }
+            LOGGER.log(Level.SEVERE, "座位帳本無法寫回，已隔離：" + describe(write), e);
+            String line = (write.enroll ? "E " : "D ") + write.seq + " " + write.studentId + " "
+                        + write.courseId + " " + e.getSQLState() + " " + e.getMessage() + "\n";
+            try {
+                Files.write(Paths.get(DEAD_LETTER_PATH), line.getBytes(StandardCharsets.UTF_8),
+                            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException ioe) {
+                LOGGER.log(Level.SEVERE, "寫入隔離檔失敗：" + describe(write), ioe);
+            }
+        }
+    }
+
+    /**
+     * 是否為暫時性錯誤 (重試可能成功)；沒有 SQLState 的錯誤來自連接池 (等待逾時、關閉中)，也視為暫時性
+     */
+    private static boolean isTransient(SQLException e) {
+        String state = e.getSQLState();
+        return state == null
+            || state.startsWith(SQLSTATE_CONNECTION_PREFIX)
+            || SQLSTATE_SERIALIZATION_FAILURE.equals(state)
+            || SQLSTATE_DEADLOCK.equals(state);
+    }
+
+    private static String describe(PendingWrite write) {
+        return (write.enroll ? "選課" : "退選") + " 序號 " + write.seq
+             + " (學生 " + write.studentId + "，課程 " + write.courseId + ")";
+    }
+
+    // ============ 資源管理方法 ============
+
+    /**
+     * 停止接受寫回並等待佇列清空，未寫回的操作保留在日誌中
+     */
+    public void shutdown() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // JVM正在結束 (本方法即由shutdown hook呼叫)
+        }
+        writer.interrupt();
+        try {
+            writer.join(10000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            synchronized (journalLock) {
+                journal.force(false);
+                journal.close();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "關閉座位日誌失敗", e);
+        }
+        LOGGER.info("座位帳本已關閉，未寫回操作：" + writeQueue.size());
+    }
+
+    // ============ 私有輔助方法 ============
+
+    private static long key(int studentId, int courseId) {
+        return ((long) studentId << 32) | (courseId & 0xFFFFFFFFL);
+    }
+
+    /**
+     * 更新學生的已選課程索引 (選課時在journalLock內呼叫，與 enrolled 一致)
+     */
+    private void index(int studentId, int courseId, boolean add) {
+        if (add) {
+            coursesByStudent.computeIfAbsent(studentId, id -> ConcurrentHashMap.newKeySet()).add(courseId);
+        } else {
+            Set<Integer> courses = coursesByStudent.get(studentId);
+            if (courses != null) {
+                courses.remove(courseId);
+            }
+        }
+    }
+
+    // ============ 內部類別 ============
+
+    /**
+     * 單一課程的座位計數器 (CAS，不使用鎖)
+     */
+    private static final class Seats {
+        final AtomicInteger current;
+        final int max;
+
+        Seats(int current, int max) {
+            this.current = new AtomicInteger(current);
+            this.max = max;
+        }
+
+        boolean tryReserve() {
+            while (true) {
+                int now = current.get();
+                if (now >= max) {
+                    return false;
+                }
+                if (current.compareAndSet(now, now + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            current.decrementAndGet();
+        }
+    }
+
+    /**
+     * 待寫回資料庫的選課或退選
+     */
+    public static final class PendingWrite {
+        private final long seq;
+        private final boolean enroll;
+        private final int studentId;
+        private final int courseId;
+
+        PendingWrite(long seq, boolean enroll, int studentId, int courseId) {
+            this.seq = seq;
+            this.enroll = enroll;
+            this.studentId = studentId;
+            this.courseId = courseId;
+        }
+
+        public boolean isEnroll() { return enroll; }
+        public int getStudentId() { return studentId; }
+        public int getCourseId() { return courseId; }
+    }
+}
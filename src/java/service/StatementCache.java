@@ -0,0 +1,230 @@
+// ==================== 13. StatementCache.java ====================
+/**
+ * PreparedStatement快取
+ * 每個連接池連接各有一份，以SQL字串為鍵並依LRU淘汰，
+ * 讓固定的SQL常數不必每次呼叫都重新解析與編譯
+ */
+package service;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+class StatementCache {
+
+    // ============ 常數定義 ============
+    private static final Logger LOGGER = Logger.getLogger(StatementCache.class.getName());
+
+    private final Connection physical;
+    private final int maxSize;
+    private final Map<String, CachedStatement> statements;
+
+    // 整個連接池共用的統計計數器
+    private final AtomicLong hitCounter;
+    private final AtomicLong missCounter;
+    private final AtomicLong evictionCounter;
+
+    // ============ 建構子 ============
+
+    /**
+     * 建構子
+     * @param physical 實體連接
+     * @param maxSize 最多快取的Statement數量
+     * @param hitCounter 命中計數器
+     * @param missCounter 未命中計數器
+     * @param evictionCounter 淘汰計數器
+     */
+    StatementCache(Connection physical, int maxSize,
+                   AtomicLong hitCounter, AtomicLong missCounter, AtomicLong evictionCounter) {
+        this.physical = physical;
+        this.maxSize = maxSize;
+        this.hitCounter = hitCounter;
+        this.missCounter = missCounter;
+        this.evictionCounter = evictionCounter;
+
+        // accessOrder=true 即為LRU順序
+        this.statements = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() > StatementCache.this.maxSize) {
+                    evictionCounter.incrementAndGet();
+                    eldest.getValue().evict();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    // ============ 快取操作 ============
+
+    /**
+     * 取得SQL對應的PreparedStatement，快取中有閒置的即直接重用
+     * @param sql SQL字串
+     * @param owner 呼叫端持有的連接代理物件
+     * @return 包裝後的PreparedStatement，close()時放回快取
+     * @throws SQLException 如果準備語句失敗
+     */
+    PreparedStatement prepare(String sql, Connection owner) throws SQLException {
+        CachedStatement cached = statements.get(sql);
+
+        if (cached != null && !cached.inUse) {
+            hitCounter.incrementAndGet();
+            return cached.checkout(owner);
+        }
+
+        missCounter.incrementAndGet();
+        if (cached != null) {
+            // 同一條SQL已被使用中 (巢狀使用)，另外準備一個不快取的
+            return physical.prepareStatement(sql);
+        }
+
+        cached = new CachedStatement(physical.prepareStatement(sql));
+        statements.put(sql, cached);
+        return cached.checkout(owner);
+    }
+
+    /**
+     * 關閉所有快取的Statement
+     */
+    void clear() {
+        List<CachedStatement> all = new ArrayList<>(statements.values());
+        statements.clear();
+        for (CachedStatement cached : all) {
+            cached.evict();
+        }
+    }
+
+    int size() {
+        return statements.size();
+    }
+
+    // ============ 快取項目 ============
+
+    /**
+     * 快取中的一個實體PreparedStatement
+     */
+    private static final class CachedStatement {
+        final PreparedStatement statement;
+        boolean inUse;
+        boolean evicted;
+
+        CachedStatement(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        /**
+         * 借出，每次借出產生新的代理物件，避免歸還後仍被舊參考使用
+         */
+        PreparedStatement checkout(Connection owner) {
+            inUse = true;
+            return (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(),
+                new Class<?>[] { PreparedStatement.class },
+                new Handle(this, owner));
+        }
+
+        /**
+         * 放回快取，清除參數與未關閉的結果集
+         */
+        void checkin() {
+            inUse = false;
+            if (evicted) {
+                closeQuietly();
+                return;
+            }
+            try {
+                ResultSet rs = statement.getResultSet();
+                if (rs != null) {
+                    rs.close();
+                }
+                statement.clearParameters();
+            } catch (SQLException e) {
+                LOGGER.log(Level.FINE, "重設快取Statement失敗", e);
+                evicted = true;
+                closeQuietly();
+            }
+        }
+
+        /**
+         * 自快取移除，使用中的會在歸還時關閉
+         */
+        void evict() {
+            evicted = true;
+            if (!inUse) {
+                closeQuietly();
+            }
+        }
+
+        private void closeQuietly() {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                LOGGER.log(Level.FINE, "關閉快取Statement失敗", e);
+            }
+        }
+    }
+
+    /**
+     * Statement代理：攔截close()改為放回快取
+     */
+    private static final class Handle implements InvocationHandler {
+        private final CachedStatement cached;
+        private final Connection owner;
+        private boolean closed;
+
+        Handle(CachedStatement cached, Connection owner) {
+            this.cached = cached;
+            this.owner = owner;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+
+            if ("close".equals(name)) {
+                if (!closed) {
+                    closed = true;
+                    cached.checkin();
+                }
+                return null;
+            }
+            if ("isClosed".equals(name)) {
+                return closed || cached.statement.isClosed();
+            }
+            if ("getConnection".equals(name)) {
+                return owner;
+            }
+            if ("equals".equals(name)) {
+                return proxy == args[0];
+            }
+            if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            }
+            if ("toString".equals(name)) {
+                return "CachedStatement[" + cached.statement + "]";
+            }
+            if (closed) {
+                throw new SQLException("Statement已關閉");
+            }
+
+            try {
+                return method.invoke(cached.statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
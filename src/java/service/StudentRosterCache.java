@@ -0,0 +1,213 @@
+// ==================== 40. StudentRosterCache.java ====================
+/**
+ * 學生已選課程快取
+ * 同一個頁面會多次讀取學生的已選課程與學分 (JSF getter 每次渲染可能被呼叫好幾次)，
+ * 快取每位學生的已選課程與學分統計，讓一次渲染最多只查詢一次資料庫
+ *
+ * 每位學生有一個版本號，選課、退選、遞補寫入後遞增；查詢開始後版本號改變時結果不保存，
+ * 因此寫入前開始的查詢不會把舊資料放回快取。存活時間只用來限制其他伺服器或
+ * 直接修改資料庫造成的過時資料
+ */
+package service;
+
+import entity.Course;
+import entity.WeeklySlots;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+public class StudentRosterCache {
+
+    // ============ 常數定義 ============
+
+    // 每載入這麼多次清理一次已過期的學生
+    private static final int SWEEP_INTERVAL = 10000;
+
+    // ============ 屬性定義 ============
+    private final long ttlNanos;
+    private final ConcurrentHashMap<Integer, Slot> slots = new ConcurrentHashMap<>();
+    private final AtomicLong loads = new AtomicLong();
+
+    // 統計：命中 / 查詢資料庫
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    // ============ 建構子 ============
+
+    /**
+     * 建構子
+     * @param ttlMillis 快取存活時間 (毫秒)，0 表示不快取
+     */
+    public StudentRosterCache(long ttlMillis) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, ttlMillis));
+    }
+
+    // ============ 快取方法 ============
+
+    /**
+     * 取得學生的已選課程，快取沒有或已過期時以 loader 查詢
+     * 查無課程 (尚未選課) 也會保存；查詢失敗時 loader 丟出例外，不保存，下次再查
+     *
+     * @param studentId 學生ID
+     * @param loader 查詢資料庫的函式
+     * @return 已選課程與學分統計
+     * @throws SQLException 查詢失敗
+     */
+    public Roster get(int studentId, Loader loader) throws SQLException {
+        if (ttlNanos == 0) {
+            misses.increment();
+            return new Roster(loader.load(studentId));
+        }
+        long now = System.nanoTime();
+        Slot slot = slots.computeIfAbsent(studentId, id -> new Slot());
+        Entry entry = slot.entry;
+        if (entry != null && now - entry.loadedAt < ttlNanos) {
+            hits.increment();
+            return entry.roster;
+        }
+
+        misses.increment();
+        long version = slot.version.get();
+        Roster roster = new Roster(loader.load(studentId));
+        synchronized (slot) {
+            if (slot.version.get() == version) {
+                slot.entry = new Entry(roster, now);
+            }
+        }
+        if (loads.incrementAndGet() % SWEEP_INTERVAL == 0) {
+            long sweepAt = System.nanoTime();
+            slots.values().removeIf(s -> s.isStale(sweepAt, ttlNanos));
+        }
+        return roster;
+    }
+
+    /**
+     * 學生的已選課程已改變，捨棄快取並讓進行中的查詢結果不被保存
+     * @param studentId 學生ID
+     */
+    public void invalidate(int studentId) {
+        Slot slot = slots.get(studentId);
+        if (slot != null) {
+            synchronized (slot) {
+                slot.version.incrementAndGet();
+                slot.entry = null;
+            }
+        }
+    }
+
+    /**
+     * 捨棄所有學生的快取 (大量匯入後使用)，進行中的查詢結果同樣不被保存
+     */
+    public void invalidateAll() {
+        for (Integer studentId : slots.keySet()) {
+            invalidate(studentId);
+        }
+    }
+
+    // ============ 狀態 ============
+
+    public long getHits() { return hits.sum(); }
+    public long getMisses() { return misses.sum(); }
+
+    /**
+     * 取得快取狀態 (用於監控)
+     * @return 狀態描述
+     */
+    public String getStatus() {
+        if (ttlNanos == 0) {
+            return "已選課程快取已停用";
+        }
+        return String.format("已選課程快取 (學生: %d, 命中: %d, 查詢: %d)", slots.size(), hits.sum(), misses.sum());
+    }
+
+    // ============ 內部類別 ============
+
+    /**
+     * 查詢學生已選課程 (失敗時丟出例外，不可以空列表代替)
+     */
+    @FunctionalInterface
+    public interface Loader {
+        List<Course> load(int studentId) throws SQLException;
+    }
+
+    /**
+     * 學生的已選課程與學分統計 (不可修改，可在執行緒間共用)
+     */
+    public static final class Roster {
+        private final List<Course> courses;
+        private final int totalCredits;
+        private final Map<String, Integer> creditsByType;
+        private final WeeklySlots occupiedSlots;
+
+        Roster(List<Course> loaded) {
+            List<Course> copies = new ArrayList<>(loaded.size());
+            Map<String, Integer> byType = new TreeMap<>();
+            int total = 0;
+            WeeklySlots occupied = WeeklySlots.EMPTY;
+            for (Course course : loaded) {
+                copies.add(new Course(course));
+                total += course.getCredits();
+                occupied = occupied.union(course.getTimeSlots());
+                if (course.getType() != null) {
+                    byType.merge(course.getType(), course.getCredits(), Integer::sum);
+                }
+            }
+            this.courses = Collections.unmodifiableList(copies);
+            this.totalCredits = total;
+            this.creditsByType = Collections.unmodifiableMap(byType);
+            this.occupiedSlots = occupied;
+        }
+
+        /**
+         * 取得已選課程的複本 (呼叫端可以修改列表與課程物件)
+         * @return 已選課程列表
+         */
+        public List<Course> copyCourses() {
+            List<Course> result = new ArrayList<>(courses.size());
+            for (Course course : courses) {
+                result.add(new Course(course));
+            }
+            return result;
+        }
+
+        public int getCourseCount() { return courses.size(); }
+        public int getTotalCredits() { return totalCredits; }
+        public WeeklySlots getOccupiedSlots() { return occupiedSlots; }
+
+        /**
+         * 取得某一類型課程的學分
+         * @param type 課程類型 (必修/選修/通識)
+         * @return 學分數
+         */
+        public int getCredits(String type) {
+            return creditsByType.getOrDefault(type, 0);
+        }
+    }
+
+    private static final class Entry {
+        final Roster roster;
+        final long loadedAt;  // 查詢開始的時間 (System.nanoTime)
+
+        Entry(Roster roster, long loadedAt) {
+            this.roster = roster;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    private static final class Slot {
+        final AtomicLong version = new AtomicLong();
+        volatile Entry entry;
+
+        boolean isStale(long now, long ttlNanos) {
+            Entry current = entry;
+            return current == null || now - current.loadedAt >= ttlNanos;
+        }
+    }
+}
@@ -0,0 +1,467 @@
+// ==================== 38. TracingConnectionProvider.java ====================
+/**
+ * SQL追蹤連接來源 (慢查詢日誌)
+ * 包裝實際的連接來源，記錄每個陳述式的執行時間、讀取結果的時間、列數與參數；
+ * 超過門檻的陳述式與整段連接使用過程寫到獨立的慢查詢日誌，
+ * 可看出一次選課的時間花在等待連接、哪一個查詢，或是寫入與觸發器
+ *
+ * 以系統屬性 coursedb.trace.slowQueryMillis 設定門檻才會啟用；
+ * coursedb.trace.runtimeStatistics=true 時另外附上 Derby 的執行統計 (執行計畫與各步驟耗時)
+ */
+package service;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.FileHandler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+
+public class TracingConnectionProvider implements ConnectionProvider {
+
+    // ============ 常數定義 ============
+    private static final Logger LOGGER = Logger.getLogger(TracingConnectionProvider.class.getName());
+    private static final Logger SLOW_LOG = Logger.getLogger("coursedb.slowquery");
+
+    // 以下設定皆可用系統屬性覆寫；門檻為負數時不啟用追蹤
+    private static final long THRESHOLD_MILLIS = Long.getLong("coursedb.trace.slowQueryMillis", -1L);
+    private static final String LOG_FILE = System.getProperty("coursedb.trace.file", "slow_queries.log");
+    private static final boolean RUNTIME_STATISTICS = Boolean.parseBoolean(
+        System.getProperty("coursedb.trace.runtimeStatistics", "false"));
+
+    private static final int MAX_TRACES_PER_CONNECTION = 50;  // 連接摘要最多列出的陳述式數
+    private static final int MAX_SQL_LENGTH = 120;            // 連接摘要中SQL的顯示長度
+    private static final int MAX_PARAM_LENGTH = 100;          // 單一參數的顯示長度
+
+    private static final String ENABLE_RUNTIME_STATISTICS = "CALL SYSCS_UTIL.SYSCS_SET_RUNTIMESTATISTICS(1)";
+    private static final String ENABLE_STATISTICS_TIMING = "CALL SYSCS_UTIL.SYSCS_SET_STATISTICS_TIMING(1)";
+    private static final String GET_RUNTIME_STATISTICS = "VALUES SYSCS_UTIL.SYSCS_GET_RUNTIMESTATISTICS()";
+
+    private static boolean logFileOpened;
+
+    // ============ 屬性定義 ============
+    private final ConnectionProvider delegate;
+    private final long thresholdNanos;
+    private volatile boolean runtimeStatistics = RUNTIME_STATISTICS;
+
+    private final AtomicLong connectionIds = new AtomicLong();
+    private final AtomicLong slowStatements = new AtomicLong();
+    private final AtomicLong slowConnections = new AtomicLong();
+
+    // ============ 建構子 ============
+
+    /**
+     * 建構子
+     * @param delegate 實際的連接來源
+     * @param thresholdMillis 慢查詢門檻 (毫秒)，0 表示記錄所有陳述式
+     */
+    public TracingConnectionProvider(ConnectionProvider delegate, long thresholdMillis) {
+        this.delegate = delegate;
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        openLogFile();
+        LOGGER.info(String.format("SQL追蹤已啟用：門檻 %d 毫秒，日誌 %s，Derby執行統計 %s",
+            thresholdMillis, LOG_FILE, runtimeStatistics ? "開啟" : "關閉"));
+    }
+
+    /**
+     * 依系統屬性決定是否包裝連接來源
+     * @param provider 實際的連接來源
+     * @return 有設定門檻時為追蹤包裝，否則原樣返回
+     */
+    public static ConnectionProvider wrapIfEnabled(ConnectionProvider provider) {
+        if (THRESHOLD_MILLIS < 0 || provider instanceof TracingConnectionProvider) {
+            return provider;
+        }
+        return new TracingConnectionProvider(provider, THRESHOLD_MILLIS);
+    }
+
+    /**
+     * 慢查詢寫到獨立的檔案，不混入一般的伺服器日誌
+     */
+    private static synchronized void openLogFile() {
+        if (logFileOpened) {
+            return;
+        }
+        logFileOpened = true;
+        try {
+            FileHandler handler = new FileHandler(LOG_FILE, true);
+            handler.setEncoding("UTF-8");
+            handler.setFormatter(new SimpleFormatter());
+            SLOW_LOG.addHandler(handler);
+            SLOW_LOG.setUseParentHandlers(false);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "無法開啟慢查詢日誌 " + LOG_FILE + "，改寫到一般日誌", e);
+        }
+    }
+
+    // ============ ConnectionProvider 實作 ============
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        Connection connection = delegate.getConnection();
+        long waitNanos = System.nanoTime() - start;
+        if (runtimeStatistics) {
+            enableRuntimeStatistics(connection);
+        }
+        return (Connection) Proxy.newProxyInstance(
+            Connection.class.getClassLoader(),
+            new Class<?>[] { Connection.class },
+            new ConnectionTrace(connectionIds.incrementAndGet(), connection, start, waitNanos));
+    }
+
+    @Override
+    public String getStatus() {
+        return delegate.getStatus() + String.format("，SQL追蹤 (門檻 %d 毫秒，慢陳述式: %d，慢連接: %d)",
+            TimeUnit.NANOSECONDS.toMillis(thresholdNanos), slowStatements.get(), slowConnections.get());
+    }
+
+    @Override
+    public void shutdown() {
+        delegate.shutdown();
+    }
+
+    /**
+     * 取得被包裝的連接來源
+     * @return 實際的連接來源
+     */
+    public ConnectionProvider getDelegate() {
+        return delegate;
+    }
+
+    // ============ Derby 執行統計 ============
+
+    /**
+     * 在連接上開啟執行統計與計時 (Derby 會保留連接上最後一個陳述式的執行計畫與各步驟耗時)
+     * 每次借用都要多一次往返，只適合排查問題時開啟
+     */
+    private void enableRuntimeStatistics(Connection connection) {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(ENABLE_RUNTIME_STATISTICS);
+            stmt.execute(ENABLE_STATISTICS_TIMING);
+        } catch (SQLException e) {
+            runtimeStatistics = false;
+            LOGGER.log(Level.WARNING, "無法開啟Derby執行統計，之後不再附上執行計畫", e);
+        }
+    }
+
+    /**
+     * 取得連接上最後一個陳述式的執行統計
+     */
+    private String fetchRuntimeStatistics(Connection connection) {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(GET_RUNTIME_STATISTICS)) {
+            return rs.next() ? rs.getString(1) : null;
+        } catch (SQLException e) {
+            LOGGER.log(Level.FINE, "取得Derby執行統計失敗", e);
+            return null;
+        }
+    }
+
+    // ============ 內部方法 ============
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.1f ms", nanos / 1e6);
+    }
+
+    private static String abbreviate(String text, int maxLength) {
+        String singleLine = text.replaceAll("\\s+", " ").trim();
+        return singleLine.length() <= maxLength ? singleLine : singleLine.substring(0, maxLength) + "...";
+    }
+
+    // ============ 內部類別 ============
+
+    /**
+     * 一次連接借用的追蹤：記錄其中執行過的陳述式，歸還時若總時間超過門檻則輸出摘要
+     */
+    private final class ConnectionTrace implements InvocationHandler {
+        private final long id;
+        private final Connection target;
+        private final long borrowedAt;
+        private final long waitNanos;
+        private final List<StatementTrace> statements = new ArrayList<>();
+        private int omitted;
+        private boolean closed;
+
+        ConnectionTrace(long id, Connection target, long borrowedAt, long waitNanos) {
+            this.id = id;
+            this.target = target;
+            this.borrowedAt = borrowedAt;
+            this.waitNanos = waitNanos;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("close".equals(name)) {
+                Object result = TracingConnectionProvider.invoke(target, method, args);
+                if (!closed) {
+                    closed = true;
+                    finish();
+                }
+                return result;
+            }
+            Object result = TracingConnectionProvider.invoke(target, method, args);
+            if (result instanceof Statement
+                    && ("prepareStatement".equals(name) || "prepareCall".equals(name) || "createStatement".equals(name))) {
+                String sql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+                return Proxy.newProxyInstance(
+                    Statement.class.getClassLoader(),
+                    new Class<?>[] { method.getReturnType() },
+                    new StatementHandler(this, (Statement) result, sql));
+            }
+            return result;
+        }
+
+        void record(StatementTrace trace) {
+            if (statements.size() < MAX_TRACES_PER_CONNECTION) {
+                statements.add(trace);
+            } else {
+                omitted++;
+            }
+            if (trace.totalNanos() >= thresholdNanos) {
+                slowStatements.incrementAndGet();
+                String statistics = runtimeStatistics && !closed ? fetchRuntimeStatistics(target) : null;
+                SLOW_LOG.warning(trace.describe(id, statistics));
+            }
+        }
+
+        private void finish() {
+            long heldNanos = System.nanoTime() - borrowedAt;
+            if (heldNanos < thresholdNanos) {
+                return;
+            }
+            slowConnections.incrementAndGet();
+            StringBuilder summary = new StringBuilder();
+            summary.append(String.format("[慢連接] 連接#%d 使用 %s (等待連接 %s)，%d 個陳述式：",
+                id, millis(heldNanos), millis(waitNanos), statements.size() + omitted));
+            for (StatementTrace trace : statements) {
+                summary.append(String.format("%n  %10s %8s  %s", millis(trace.totalNanos()),
+                    trace.rows >= 0 ? trace.rows + " 列" : "", abbreviate(trace.sql, MAX_SQL_LENGTH)));
+            }
+            if (omitted > 0) {
+                summary.append(String.format("%n  ... 另有 %d 個陳述式", omitted));
+            }
+            SLOW_LOG.warning(summary.toString());
+        }
+    }
+
+    /**
+     * 陳述式代理：記下參數，量測執行時間；查詢結果交給 ResultSetHandler 量測讀取時間
+     */
+    private static final class StatementHandler implements InvocationHandler {
+        private final ConnectionTrace connection;
+        private final Statement target;
+        private final String sql;
+        private final Map<Integer, Object> params = new TreeMap<>();
+        private int batchSize;
+        private StatementTrace open;  // 結果集尚未關閉的查詢
+
+        StatementHandler(ConnectionTrace connection, Statement target, String sql) {
+            this.connection = connection;
+            this.target = target;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("setNull".equals(name) && args != null && args[0] instanceof Integer) {
+                // setNull 的第二個參數是SQL型別代碼，不是參數值
+                params.put((Integer) args[0], null);
+            } else if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                params.put((Integer) args[0], args[1]);
+            } else if ("clearParameters".equals(name)) {
+                params.clear();
+            } else if ("addBatch".equals(name)) {
+                batchSize++;
+            } else if (name.startsWith("execute")) {
+                return execute(method, args);
+            } else if ("close".equals(name)) {
+                finishOpen();
+            }
+            return TracingConnectionProvider.invoke(target, method, args);
+        }
+
+        private Object execute(Method method, Object[] args) throws Throwable {
+            finishOpen();
+            String text = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : sql;
+            StatementTrace trace = new StatementTrace(text != null ? text : "(未知SQL)", params, batchSize);
+            batchSize = 0;
+
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = TracingConnectionProvider.invoke(target, method, args);
+            } catch (Throwable e) {
+                trace.execNanos = System.nanoTime() - start;
+                trace.error = e.toString();
+                trace.finish(connection);
+                throw e;
+            }
+            trace.execNanos = System.nanoTime() - start;
+
+            if (result instanceof ResultSet) {
+                trace.rows = 0;
+                open = trace;
+                return Proxy.newProxyInstance(
+                    ResultSet.class.getClassLoader(),
+                    new Class<?>[] { ResultSet.class },
+                    new ResultSetHandler(connection, (ResultSet) result, trace));
+            }
+            if (result instanceof Integer || result instanceof Long) {
+                trace.rows = ((Number) result).longValue();
+            } else if (result instanceof int[]) {
+                trace.rows = 0;
+                for (int count : (int[]) result) {
+                    trace.rows += Math.max(0, count);
+                }
+            } else if (Boolean.FALSE.equals(result)) {
+                trace.rows = target.getUpdateCount();
+            }
+            trace.finish(connection);
+            return result;
+        }
+
+        private void finishOpen() {
+            if (open != null) {
+                open.finish(connection);
+                open = null;
+            }
+        }
+    }
+
+    /**
+     * 結果集代理：累計 next() 花費的時間 (向資料庫取資料) 與讀到的列數
+     */
+    private static final class ResultSetHandler implements InvocationHandler {
+        private final ConnectionTrace connection;
+        private final ResultSet target;
+        private final StatementTrace trace;
+
+        ResultSetHandler(ConnectionTrace connection, ResultSet target, StatementTrace trace) {
+            this.connection = connection;
+            this.target = target;
+            this.trace = trace;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("next".equals(name)) {
+                long start = System.nanoTime();
+                Object result = TracingConnectionProvider.invoke(target, method, args);
+                trace.fetchNanos += System.nanoTime() - start;
+                if (Boolean.TRUE.equals(result)) {
+                    trace.rows++;
+                }
+                return result;
+            }
+            Object result = TracingConnectionProvider.invoke(target, method, args);
+            if ("close".equals(name)) {
+                // 關閉結果集後Derby的執行統計才完整
+                trace.finish(connection);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 單一陳述式的執行記錄
+     */
+    private static final class StatementTrace {
+        final String sql;
+        final String params;
+        final int batchSize;
+        long execNanos;
+        long fetchNanos;
+        long rows = -1;
+        String error;
+        private boolean finished;
+
+        StatementTrace(String sql, Map<Integer, Object> params, int batchSize) {
+            this.sql = sql;
+            this.params = formatParams(sql, params);
+            this.batchSize = batchSize;
+        }
+
+        long totalNanos() {
+            return execNanos + fetchNanos;
+        }
+
+        void finish(ConnectionTrace connection) {
+            if (!finished) {
+                finished = true;
+                connection.record(this);
+            }
+        }
+
+        String describe(long connectionId, String statistics) {
+            StringBuilder text = new StringBuilder();
+            text.append(String.format("[慢查詢] 連接#%d 執行 %s，讀取 %s，共 %s",
+                connectionId, millis(execNanos), millis(fetchNanos), millis(totalNanos())));
+            if (rows >= 0) {
+                text.append("，").append(rows).append(" 列");
+            }
+            if (batchSize > 0) {
+                text.append("，批次 ").append(batchSize).append(" 筆");
+            }
+            text.append(String.format("%n  SQL: %s", abbreviate(sql, Integer.MAX_VALUE)));
+            if (!params.isEmpty()) {
+                text.append(String.format("%n  參數: %s", params));
+            }
+            if (error != null) {
+                text.append(String.format("%n  錯誤: %s", error));
+            }
+            if (statistics != null) {
+                text.append(String.format("%n  執行統計:%n%s", statistics));
+            }
+            return text.toString();
+        }
+
+        /**
+         * 參數轉成文字；含密碼的陳述式不記錄參數值
+         */
+        private static String formatParams(String sql, Map<Integer, Object> params) {
+            if (params.isEmpty()) {
+                return "";
+            }
+            if (sql.toLowerCase().contains("password")) {
+                return "(含密碼，不記錄)";
+            }
+            StringBuilder text = new StringBuilder("[");
+            for (Map.Entry<Integer, Object> entry : params.entrySet()) {
+                if (text.length() > 1) {
+                    text.append(", ");
+                }
+                String value = String.valueOf(entry.getValue());
+                if (value.length() > MAX_PARAM_LENGTH) {
+                    value = value.substring(0, MAX_PARAM_LENGTH) + "...";
+                }
+                text.append(entry.getKey()).append('=').append(value);
+            }
+            return text.append(']').toString();
+        }
+    }
+}
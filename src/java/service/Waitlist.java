@@ -0,0 +1,236 @@
+// ==================== 32. Waitlist.java ====================
+/**
+ * 課程候補名單
+ * 每門課程一個先進先出的並行佇列，以 waitlist 資料表保存；
+ * 已在候補中的學生重按選課時只需查詢順位，不必再跑一次完整的選課流程
+ */
+package service;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class Waitlist {
+
+    // ============ 常數定義 ============
+    private static final Logger LOGGER = Logger.getLogger(Waitlist.class.getName());
+
+    // 每門課程的候補人數上限 (可用系統屬性覆寫)
+    private static final int MAX_SIZE = Integer.getInteger("coursedb.waitlist.maxSize", 50);
+
+    // SQLState：資料表不存在 (尚未執行升級腳本)
+    private static final String SQLSTATE_TABLE_NOT_FOUND = "42X05";
+
+    // ============ 單例模式實作 ============
+    private static Waitlist instance;
+
+    private final DatabaseManager dbManager;
+
+    // 課程ID → 候補學生ID (依候補先後順序)
+    private final ConcurrentHashMap<Integer, Queue<Integer>> queues = new ConcurrentHashMap<>();
+    // 已遞補但本人尚未得知的選課：學生ID → 課程ID
+    private final ConcurrentHashMap<Integer, Queue<Integer>> promotions = new ConcurrentHashMap<>();
+
+    private volatile boolean loaded;
+    private volatile boolean available = true;
+
+    /**
+     * 私有建構子
+     */
+    private Waitlist(DatabaseManager dbManager) {
+        this.dbManager = dbManager;
+    }
+
+    /**
+     * 取得Waitlist的唯一實例
+     * @return Waitlist實例
+     */
+    public static synchronized Waitlist getInstance() {
+        if (instance == null) {
+            instance = new Waitlist(DatabaseManager.getInstance());
+        }
+        return instance;
+    }
+
+    // ============ 查詢方法 ============
+
+    /**
+     * 查詢學生在候補名單中的順位 (只讀記憶體)
+     * @param studentId 學生ID
+     * @param courseId 課程ID
+     * @return 順位 (由1開始)，不在候補名單中時返回0
+     */
+    public int getPosition(int studentId, int courseId) {
+        Queue<Integer> queue = queue(courseId);
+        if (queue == null) {
+            return 0;
+        }
+        int position = 0;
+        for (Integer waiting : queue) {
+            position++;
+            if (waiting == studentId) {
+                return position;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 取得課程的候補人數
+     * @param courseId 課程ID
+     * @return 候補人數
+     */
+    public int size(int courseId) {
+        Queue<Integer> queue = queue(courseId);
+        return queue != null ? queue.size() : 0;
+    }
+
+    /**
+     * 候補人數統計 (用於監控)
+     * @return 課程ID → 候補人數
+     */
+    public Map<Integer, Integer> getSizes() {
+        ensureLoaded();
+        Map<Integer, Integer> sizes = new ConcurrentHashMap<>();
+        queues.forEach((courseId, queue) -> {
+            if (!queue.isEmpty()) {
+                sizes.put(courseId, queue.size());
+            }
+        });
+        return sizes;
+    }
+
+    // ============ 異動方法 ============
+
+    /**
+     * 加入候補名單 (已在名單中時回傳原本的順位)
+     * @param studentId 學生ID
+     * @param courseId 課程ID
+     * @return 順位 (由1開始)；候補名單已滿返回-1；候補功能無法使用時返回0
+     * @throws SQLException 寫入失敗
+     */
+    public int join(int studentId, int courseId) throws SQLException {
+        ensureLoaded();
+        if (!available) {
+            return 0;
+        }
+        Queue<Integer> queue = queues.computeIfAbsent(courseId, id -> new ConcurrentLinkedQueue<>());
+        // 同一門課程的加入要依序寫入資料表與佇列，兩邊的先後順序才會一致
+        synchronized (queue) {
+            int position = getPosition(studentId, courseId);
+            if (position > 0) {
+                return position;
+            }
+            if (queue.size() >= MAX_SIZE) {
+                return -1;
+            }
+            if (dbManager.insertWaitlistEntry(courseId, studentId)) {
+                queue.add(studentId);
+            }
+        }
+        return getPosition(studentId, courseId);
+    }
+
+    /**
+     * 退出候補名單
+     * @param studentId 學生ID
+     * @param courseId 課程ID
+     * @return 是否有退出
+     * @throws SQLException 刪除失敗
+     */
+    public boolean leave(int studentId, int courseId) throws SQLException {
+        Queue<Integer> queue = queue(courseId);
+        if (queue == null || !queue.contains(studentId)) {
+            return false;
+        }
+        dbManager.deleteWaitlistEntry(courseId, studentId);
+        return queue.remove(studentId);
+    }
+
+    /**
+     * 查看排在最前面的候補學生 (不移除，確定遞補或不符合條件後再以 leave 移除)
+     * @param courseId 課程ID
+     * @return 學生ID，沒有人候補時返回0
+     */
+    public int peekHead(int courseId) {
+        Queue<Integer> queue = queue(courseId);
+        Integer head = queue != null ? queue.peek() : null;
+        return head != null ? head : 0;
+    }
+
+    /**
+     * 資料庫交易已將這些學生移出候補名單後，同步移除記憶體中的記錄
+     * @param courseId 課程ID
+     * @param studentIds 已移出的學生ID
+     */
+    public void removeAll(int courseId, Collection<Integer> studentIds) {
+        Queue<Integer> queue = queue(courseId);
+        if (queue != null && !studentIds.isEmpty()) {
+            queue.removeAll(studentIds);
+        }
+    }
+
+    // ============ 遞補通知 ============
+
+    /**
+     * 記錄學生已由候補遞補選上課程，等本人下次操作時更新他的學分與時段
+     * @param studentId 學生ID
+     * @param courseId 課程ID
+     */
+    public void recordPromotion(int studentId, int courseId) {
+        promotions.computeIfAbsent(studentId, id -> new ConcurrentLinkedQueue<>()).add(courseId);
+    }
+
+    /**
+     * 取出學生尚未得知的遞補課程
+     * @param studentId 學生ID
+     * @return 課程ID列表，沒有時為空列表
+     */
+    public List<Integer> takePromotions(int studentId) {
+        Queue<Integer> pending = promotions.remove(studentId);
+        return pending != null ? new ArrayList<>(pending) : new ArrayList<>();
+    }
+
+    // ============ 內部方法 ============
+
+    private Queue<Integer> queue(int courseId) {
+        ensureLoaded();
+        return queues.get(courseId);
+    }
+
+    /**
+     * 第一次使用時由資料表載入所有候補記錄
+     */
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (loaded) {
+                return;
+            }
+            try {
+                int count = 0;
+                for (int[] entry : dbManager.getWaitlistEntries()) {
+                    queues.computeIfAbsent(entry[0], id -> new ConcurrentLinkedQueue<>()).add(entry[1]);
+                    count++;
+                }
+                LOGGER.info("候補名單載入完成：" + count + " 筆");
+            } catch (SQLException e) {
+                if (!SQLSTATE_TABLE_NOT_FOUND.equals(e.getSQLState())) {
+                    throw new IllegalStateException("無法載入候補名單", e);
+                }
+                available = false;
+                LOGGER.log(Level.WARNING, "找不到 waitlist 資料表，候補功能停用 (請執行資料庫升級腳本)");
+            }
+            loaded = true;
+        }
+    }
+}